@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+/**
+ * Generates synthetic HCL documents of a given shape and approximate size for the benchmarks.
+ * The output is deterministic so results stay comparable across commits.
+ *
+ * @author jstockall
+ */
+public final class HCLCorpus {
+
+    public enum Shape {
+        /** Root blocks holding only scalar attributes */
+        FLAT,
+        /** Blocks nested several levels deep */
+        NESTED,
+        /** Attributes holding large arrays and maps */
+        COLLECTIONS,
+        /** Multi line heredoc strings */
+        HEREDOC,
+        /** Strings dominated by interpolation expressions */
+        INTERPOLATION
+    }
+
+    private static final int NESTING_DEPTH = 8;
+    private static final int COLLECTION_SIZE = 64;
+
+    private HCLCorpus() {
+    }
+
+    /**
+     * Parses a size such as {@code 1KB}, {@code 64KB} or {@code 50MB} into a number of bytes
+     *
+     * @param size the size with an optional KB or MB suffix
+     * @return the number of bytes
+     */
+    public static int parseSize(String size) {
+        String upper = size.trim().toUpperCase();
+        if (upper.endsWith("MB")) {
+            return Integer.parseInt(upper.substring(0, upper.length() - 2)) * 1024 * 1024;
+        } else if (upper.endsWith("KB")) {
+            return Integer.parseInt(upper.substring(0, upper.length() - 2)) * 1024;
+        }
+        return Integer.parseInt(upper);
+    }
+
+    /**
+     * Generates a document by repeating units of the given shape until it reaches the target size
+     *
+     * @param shape the kind of content to generate
+     * @param targetSize the approximate size of the document in characters
+     * @return the HCL document
+     */
+    public static String generate(Shape shape, int targetSize) {
+        StringBuilder sb = new StringBuilder(targetSize + 4096);
+        int unit = 0;
+        while (sb.length() < targetSize) {
+            switch (shape) {
+            case FLAT:
+                flat(sb, unit);
+                break;
+            case NESTED:
+                nested(sb, unit);
+                break;
+            case COLLECTIONS:
+                collections(sb, unit);
+                break;
+            case HEREDOC:
+                heredoc(sb, unit);
+                break;
+            case INTERPOLATION:
+                interpolation(sb, unit);
+                break;
+            }
+            unit++;
+        }
+        return sb.toString();
+    }
+
+    private static void flat(StringBuilder sb, int unit) {
+        sb.append("resource \"aws_instance\" \"web").append(unit).append("\" {\n");
+        sb.append("  ami = \"ami-").append(unit).append("\"\n");
+        sb.append("  instance_type = \"t2.micro\"\n");
+        sb.append("  count = ").append(unit % 10).append('\n');
+        sb.append("  ebs_optimized = true\n");
+        sb.append("  cpu_credits = 0.5\n");
+        sb.append("}\n\n");
+    }
+
+    private static void nested(StringBuilder sb, int unit) {
+        sb.append("module \"m").append(unit).append("\" {\n");
+        for (int depth = 1; depth <= NESTING_DEPTH; depth++) {
+            indent(sb, depth);
+            sb.append("level").append(depth).append(" {\n");
+            indent(sb, depth + 1);
+            sb.append("name = \"level-").append(depth).append("\"\n");
+        }
+        for (int depth = NESTING_DEPTH; depth >= 1; depth--) {
+            indent(sb, depth);
+            sb.append("}\n");
+        }
+        sb.append("}\n\n");
+    }
+
+    private static void collections(StringBuilder sb, int unit) {
+        sb.append("variable \"v").append(unit).append("\" {\n");
+        sb.append("  cidrs = [");
+        for (int i = 0; i < COLLECTION_SIZE; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("\"10.").append(i).append(".0.0/16\"");
+        }
+        sb.append("]\n");
+        sb.append("  ports = [");
+        for (int i = 0; i < COLLECTION_SIZE; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(8000 + i);
+        }
+        sb.append(", [1, 2, 3]]\n");
+        sb.append("  tags = {");
+        for (int i = 0; i < COLLECTION_SIZE; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("key").append(i).append(": \"value-").append(i).append('"');
+        }
+        sb.append(", nested: {enabled: true, weight: 0.5}}\n");
+        sb.append("}\n\n");
+    }
+
+    private static void heredoc(StringBuilder sb, int unit) {
+        sb.append("resource \"aws_instance\" \"script").append(unit).append("\" {\n");
+        sb.append("  user_data = <<EOF\n");
+        for (int i = 0; i < 16; i++) {
+            sb.append("#!/bin/bash line ").append(i).append(" echo \"Hello world\" > index.html\n");
+        }
+        sb.append("EOF\n");
+        sb.append("  policy = <<-POLICY\n");
+        for (int i = 0; i < 8; i++) {
+            sb.append("    { \"Effect\": \"Allow\", \"Sid\": \"").append(i).append("\" }\n");
+        }
+        sb.append("    POLICY\n");
+        sb.append("}\n\n");
+    }
+
+    private static void interpolation(StringBuilder sb, int unit) {
+        sb.append("resource \"aws_instance\" \"i").append(unit).append("\" {\n");
+        sb.append("  name = \"${var.prefix}-${count.index + 1}-").append(unit).append("\"\n");
+        sb.append("  subnet_id = \"${element(split(\",\", var.subnets), count.index % length(var.subnets))}\"\n");
+        sb.append("  image = \"${var.images[var.region]}\"\n");
+        sb.append("  user_data = \"${base64encode(file(\"${path.module}/files/bootstrap.sh\"))}\"\n");
+        sb.append("  escaped = \"$${not.interpolated}\"\n");
+        sb.append("}\n\n");
+    }
+
+    private static void indent(StringBuilder sb, int depth) {
+        for (int i = 0; i < depth; i++) {
+            sb.append("  ");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bertramlabs.plugins.hcl4j.expressions.HCLContext;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLEvaluator;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLFunction;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+
+/**
+ * Evaluating every attribute of the interpolation corpus against a new set of variables, with the
+ * values compiled once against compiling them on every evaluation, and evaluating the corpus as a
+ * whole on the shared pool of {@link HCLEvaluator}.
+ *
+ * @author jstockall
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HCLExpressionBenchmark {
+
+    @Param({ "64KB", "1MB" })
+    public String size;
+
+    private final List<HCLValue> values = new ArrayList<>();
+    private final HCLEvaluator evaluator = new HCLEvaluator();
+    private HCLObject configuration;
+    private HCLContext shared;
+    private int evaluation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws HCLParserException, IOException {
+        String source = HCLCorpus.generate(HCLCorpus.Shape.INTERPOLATION, HCLCorpus.parseSize(size));
+        configuration = new HCLParser().parse(source);
+        for (Object value : HCLQuery.compile("resource.*.*.*").select(configuration)) {
+            values.add((HCLValue) value);
+        }
+        HCLFunction identity = new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                return arguments.get(0);
+            }
+        };
+        shared = new HCLContext().setFunction("base64encode", identity).setFunction("file", identity)
+                .setVariable("path", Collections.singletonMap("module", "/modules/web"));
+        for (HCLValue value : values) {
+            value.getExpression();
+        }
+    }
+
+    @Benchmark
+    public int evaluateCompiled() throws HCLParserException {
+        HCLContext context = nextContext();
+        int hash = 0;
+        for (HCLValue value : values) {
+            hash += value.evaluate(context).hashCode();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public int compileAndEvaluate() throws HCLParserException {
+        HCLContext context = nextContext();
+        int hash = 0;
+        for (HCLValue value : values) {
+            hash += HCLExpression.compile(value).evaluate(context).hashCode();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> evaluateConfiguration() throws HCLParserException {
+        HCLContext context = nextContext();
+        return evaluator.evaluate(configuration, (Map<String, Object>) context.getVariable("var"), context);
+    }
+
+    /**
+     * @return a context with the variables of the next evaluation
+     */
+    private HCLContext nextContext() {
+        int index = evaluation++;
+        Map<String, Object> var = new HashMap<>();
+        var.put("prefix", "web" + index % 100);
+        var.put("region", "eu-west-1");
+        var.put("images", Collections.singletonMap("eu-west-1", "ami-" + index % 100));
+        var.put("subnets", "a,b,c");
+        return new HCLContext(shared).setVariable("var", var).setVariable("count",
+                Collections.singletonMap("index", index % 10));
+    }
+}
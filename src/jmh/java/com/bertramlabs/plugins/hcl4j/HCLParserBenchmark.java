@@ -0,0 +1,388 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Throughput of parsing and exporting synthetic documents. Run with {@code gradle jmh}; the gc
+ * profiler and JSON result file are configured in build.gradle.
+ *
+ * <p>
+ * The fixtures are split by feature into states that build only what their benchmarks read, so
+ * that running a subset does not parse, serialize and diff the document for benchmarks that are
+ * not run. Every state builds on the generated {@link Source}.
+ * </p>
+ *
+ * @author jstockall
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HCLParserBenchmark {
+
+    private final HCLParser parser = new HCLParser();
+    private final HCLValuePool pool = new HCLValuePool();
+    private HCLQuery query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws HCLParserException {
+        query = HCLQuery.compile("resource.aws_instance.web1.ami");
+    }
+
+    /**
+     * The generated document
+     */
+    @State(Scope.Benchmark)
+    public static class Source {
+        @Param({ "FLAT", "NESTED", "COLLECTIONS", "HEREDOC", "INTERPOLATION" })
+        public HCLCorpus.Shape shape;
+
+        @Param({ "1KB", "64KB", "1MB", "50MB" })
+        public String size;
+
+        String text;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            text = HCLCorpus.generate(shape, HCLCorpus.parseSize(size));
+        }
+    }
+
+    /**
+     * The document written to a temporary file
+     */
+    @State(Scope.Benchmark)
+    public static class SourceFile {
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp(Source source) throws IOException {
+            file = File.createTempFile("hcl4j-" + source.shape + "-" + source.size, ".tf");
+            OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(source.text.getBytes("UTF-8"));
+            } finally {
+                os.close();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * The document parsed, and not frozen
+     */
+    @State(Scope.Benchmark)
+    public static class Parsed {
+        HCLObject configuration;
+
+        @Setup(Level.Trial)
+        public void setUp(Source source) throws HCLParserException, IOException {
+            configuration = new HCLParser().parse(source.text);
+        }
+    }
+
+    /**
+     * The parsed document in the binary form of {@link HCLBinary}
+     */
+    @State(Scope.Benchmark)
+    public static class Binary {
+        byte[] bytes;
+
+        @Setup(Level.Trial)
+        public void setUp(Parsed parsed) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HCLBinary.write(parsed.configuration, Channels.newChannel(out));
+            bytes = out.toByteArray();
+        }
+    }
+
+    /**
+     * The parsed document exported as JSON
+     */
+    @State(Scope.Benchmark)
+    public static class Json {
+        String text;
+
+        @Setup(Level.Trial)
+        public void setUp(Parsed parsed) throws HCLParserException, IOException {
+            text = new HCL2Json().toJson(parsed.configuration);
+        }
+    }
+
+    /**
+     * The document parsed separately and frozen, and a copy of it with one attribute changed
+     */
+    @State(Scope.Benchmark)
+    public static class Frozen {
+        final HCLValue patchValue = new HCLValue(HCLValue.Type.STRING, "patched");
+        final HCLDiff diff = new HCLDiff();
+        HCLObject configuration;
+        String patchPath;
+        HCLObject patched;
+
+        @Setup(Level.Trial)
+        public void setUp(Source source) throws HCLParserException, IOException {
+            configuration = new HCLParser().parse(source.text).freeze();
+            // the first attribute of the last block, at whatever depth
+            for (Symbol root : configuration.getRootBlocks()) {
+                if (root instanceof HCLBlock) {
+                    String path = attributePath((HCLBlock) root, "");
+                    patchPath = path != null ? path : patchPath;
+                }
+            }
+            patched = configuration.with(patchPath, patchValue);
+        }
+    }
+
+    /**
+     * The changed copy of the frozen document read back from its binary form, so that nothing is
+     * shared with the parsed document
+     */
+    @State(Scope.Benchmark)
+    public static class Revision {
+        HCLObject configuration;
+
+        @Setup(Level.Trial)
+        public void setUp(Frozen frozen) throws HCLParserException, IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            HCLBinary.write(frozen.patched, Channels.newChannel(bytes));
+            configuration = HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+    }
+
+    private static String attributePath(HCLBlock block, String prefix) {
+        for (String name : block.blockNames) {
+            prefix += (prefix.isEmpty() ? "" : ".") + name;
+        }
+        for (Symbol child : block.getChildren()) {
+            String path = child instanceof HCLBlock ? attributePath((HCLBlock) child, prefix) : prefix + "." + child.getName();
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public HCLObject parseString(Source source) throws HCLParserException, IOException {
+        return new HCLParser().parse(source.text);
+    }
+
+    @Benchmark
+    public HCLObject parseStringReused(Source source) throws HCLParserException, IOException {
+        // the parser's lexer, its buffers and symbol table are reused
+        return parser.parse(source.text);
+    }
+
+    @Benchmark
+    public HCLObject parseInterned(Source source) throws HCLParserException, IOException {
+        // the configurations of earlier invocations are dropped, only the pool lookups are measured
+        return pool.intern(parser.parse(source.text));
+    }
+
+    @Benchmark
+    public HCLObject parseLazy(Source source) throws HCLParserException, IOException {
+        return new HCLParser().parseLazy(source.text);
+    }
+
+    @Benchmark
+    public HCLObject readBinary(Binary binary) throws HCLParserException, IOException {
+        return HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(binary.bytes)));
+    }
+
+    @Benchmark
+    public HCLObject parseJson(Json json) throws HCLParserException, IOException {
+        return parser.parseJson(new StringReader(json.text));
+    }
+
+    @Benchmark
+    public Object slurpJson(Json json) {
+        // the JSON of the same configuration read in to maps, without the symbol tree
+        return new JsonSlurper().parseText(json.text);
+    }
+
+    @Benchmark
+    public HCLObject parseReader(Source source) throws HCLParserException, IOException {
+        return new HCLParser().parse(new StringReader(source.text));
+    }
+
+    @Benchmark
+    public HCLObject parseFile(SourceFile sourceFile) throws HCLParserException, IOException {
+        return new HCLParser().parse(sourceFile.file);
+    }
+
+    @Benchmark
+    public HCLObject parseStream(SourceFile sourceFile) throws HCLParserException, IOException {
+        InputStream is = new FileInputStream(sourceFile.file);
+        try {
+            return new HCLParser().parse(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Benchmark
+    public int scanWithReader(Source source) throws HCLParserException, IOException {
+        HCLReader reader = new HCLReader(source.text);
+        int blocks = 0;
+        while (reader.next() != HCLReader.Token.END_DOCUMENT) {
+            if (reader.getToken() == HCLReader.Token.BLOCK_START) {
+                blocks++;
+                reader.skipChildren();
+            }
+        }
+        return blocks;
+    }
+
+    @Benchmark
+    public Map<String, Object> toMap(Parsed parsed) throws HCLParserException, IOException {
+        return new HCL2Map().toMap(parsed.configuration);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseThenToMap(Source source) throws HCLParserException, IOException {
+        return new HCL2Map().toMap(new HCLParser().parse(source.text));
+    }
+
+    @Benchmark
+    public Map<String, Object> parseToMap(Source source) throws HCLParserException, IOException {
+        return new HCLParser().parseToMap(new StringReader(source.text));
+    }
+
+    @Benchmark
+    public String toHcl(Parsed parsed) throws HCLParserException {
+        return new HCL2String().toHcl(parsed.configuration);
+    }
+
+    @Benchmark
+    public Writer toJson(Parsed parsed) throws HCLParserException, IOException {
+        new HCL2Json().toJson(parsed.configuration, NullWriter.INSTANCE);
+        return NullWriter.INSTANCE;
+    }
+
+    @Benchmark
+    public String toMapThenJson(Parsed parsed) throws HCLParserException, IOException {
+        return JsonOutput.toJson(new HCL2Map().toMap(parsed.configuration));
+    }
+
+    @Benchmark
+    public HCLObject withValue(Frozen frozen) throws HCLParserException {
+        return frozen.configuration.with(frozen.patchPath, frozen.patchValue);
+    }
+
+    @Benchmark
+    public List<HCLDiff.Change> diffRevision(Parsed parsed, Revision revision) {
+        return new HCLDiff().diff(parsed.configuration, revision.configuration);
+    }
+
+    @Benchmark
+    public List<HCLDiff.Change> diffFrozen(Frozen frozen) {
+        // hashes of the frozen configurations are kept by the diff between invocations
+        return frozen.diff.diff(frozen.configuration, frozen.patched);
+    }
+
+    @Benchmark
+    public boolean diffMaps(Parsed parsed, Revision revision) throws HCLParserException, IOException {
+        return new HCL2Map().toMap(parsed.configuration).equals(new HCL2Map().toMap(revision.configuration));
+    }
+
+    @Benchmark
+    public List<Object> query(Frozen frozen) {
+        // only frozen configurations keep an index of their root elements
+        return query.select(frozen.configuration);
+    }
+
+    @Benchmark
+    public List<Object> queryFirstUse(Frozen frozen) {
+        // a new configuration over the same elements has to build its index again
+        return query.select(new HCLObject(frozen.configuration.getRootBlocks()).freeze());
+    }
+
+    @Benchmark
+    public List<Object> queryUnfrozen(Parsed parsed) {
+        return query.select(parsed.configuration);
+    }
+
+    @Benchmark
+    public HCLWriter writeHcl(Parsed parsed) throws HCLParserException, IOException {
+        HCLWriter writer = new HCLWriter(NullWriter.INSTANCE);
+        writer.write(parsed.configuration).flush();
+        return writer;
+    }
+
+    /**
+     * Discards the text, so that only the cost of producing it is measured
+     */
+    private static final class NullWriter extends Writer {
+        static final NullWriter INSTANCE = new NullWriter();
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
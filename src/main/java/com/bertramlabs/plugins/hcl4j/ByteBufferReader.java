@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes a (typically memory mapped) byte buffer directly into the char arrays it is asked to
+ * fill, so the lexer buffer is the only copy of the text. Runs of ASCII are widened without a
+ * {@link CharsetDecoder} for the charsets where ASCII bytes always stand for themselves.
+ *
+ * @author jstockall
+ */
+class ByteBufferReader extends Reader {
+
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+    private final boolean asciiFastPath;
+    private final boolean latin1;
+    private final CharBuffer pair = CharBuffer.allocate(2);
+    private boolean pendingLowSurrogate;
+    private boolean decoded;
+    private boolean flushed;
+
+    ByteBufferReader(ByteBuffer bytes, Charset cs) {
+        this.bytes = bytes;
+        // same behaviour as the InputStreamReader used for streams
+        this.decoder = cs.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        String name = cs.name();
+        this.latin1 = name.equals("ISO-8859-1");
+        this.asciiFastPath = latin1 || name.equals("UTF-8") || name.equals("US-ASCII");
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int start = off;
+        int end = off + len;
+        if (pendingLowSurrogate) {
+            cbuf[off++] = pair.get(1);
+            pendingLowSurrogate = false;
+        }
+
+        if (asciiFastPath) {
+            int pos = bytes.position();
+            int limit = Math.min(bytes.limit(), pos + end - off);
+            if (latin1) {
+                for (; pos < limit; pos++) {
+                    cbuf[off++] = (char) (bytes.get(pos) & 0xff);
+                }
+            } else {
+                for (byte b; pos < limit && (b = bytes.get(pos)) >= 0; pos++) {
+                    cbuf[off++] = (char) b;
+                }
+            }
+            bytes.position(pos);
+        }
+
+        if (off < end && bytes.hasRemaining()) {
+            CharBuffer out = CharBuffer.wrap(cbuf, off, end - off);
+            CoderResult result = decoder.decode(bytes, out, true);
+            decoded = true;
+            if (out.position() == off && result.isOverflow()) {
+                // a surrogate pair does not fit in the single char left, hand out its first half
+                pair.clear();
+                decoder.decode(bytes, pair, true);
+                cbuf[off] = pair.get(0);
+                pendingLowSurrogate = pair.position() > 1;
+                out.position(off + 1);
+            }
+            off = out.position();
+        }
+
+        if (decoded && !flushed && !bytes.hasRemaining() && off < end) {
+            CharBuffer out = CharBuffer.wrap(cbuf, off, end - off);
+            flushed = decoder.flush(out).isUnderflow();
+            off = out.position();
+        }
+        return off == start ? -1 : off - start;
+    }
+
+    @Override
+    public void close() {
+        // the buffer is released with the channel it came from
+    }
+}
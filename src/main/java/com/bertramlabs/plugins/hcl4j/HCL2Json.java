@@ -0,0 +1,334 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Utility class writing the HCL configuration as JSON, with the structure {@link HCL2Map} gives
+ * it: blocks are merged in to nested objects by their names, and blocks repeating the names of
+ * an earlier block become an array of objects.
+ *
+ * <p>
+ * The JSON is written straight from the attribute values of the configuration, through a fixed
+ * size buffer. Only the objects the blocks merge in to are built before writing, as their keys
+ * are not all known until the last block was seen.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     try (Writer out = Files.newBufferedWriter(Paths.get("main.tf.json"), StandardCharsets.UTF_8)) {
+ *         new HCL2Json().toJson(configuration, out);
+ *     }
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+@SuppressWarnings("unchecked")
+public class HCL2Json extends HCLExport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public HCL2Json() {
+        super(false);
+    }
+
+    /**
+     * Converts the symbols to a JSON document
+     *
+     * @param configuration HCL block tree
+     * @return the configuration as JSON text
+     *
+     * @throws HCLParserException
+     *             If blocks cannot be merged or a value cannot be exported, as with
+     *             {@link HCL2Map#toMap(HCLObject)}
+     */
+    public String toJson(HCLObject configuration) throws HCLParserException {
+        StringBuilder sb = new StringBuilder();
+        try {
+            toJson(configuration, sb);
+        } catch (IOException ex) {
+            // a StringBuilder does not throw
+            throw new HCLParserException("Unable to write JSON configuration", ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the configuration as UTF-8 encoded JSON. The stream is flushed but not closed.
+     *
+     * @param configuration HCL block tree
+     * @param out receives the JSON
+     *
+     * @throws HCLParserException
+     *             If blocks cannot be merged or a value cannot be exported
+     * @throws IOException
+     *             If the stream cannot be written
+     */
+    public void toJson(HCLObject configuration, OutputStream out) throws HCLParserException, IOException {
+        Writer writer = new OutputStreamWriter(out, UTF_8);
+        toJson(configuration, writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes the configuration as JSON. The output is neither flushed nor closed.
+     *
+     * @param configuration HCL block tree
+     * @param out receives the JSON, e.g. a {@link Writer} or {@link StringBuilder}
+     *
+     * @throws HCLParserException
+     *             If blocks cannot be merged or a value cannot be exported
+     * @throws IOException
+     *             If the output cannot be written
+     */
+    public void toJson(HCLObject configuration, Appendable out) throws HCLParserException, IOException {
+        boolean measured = getMetricsListener() != HCLMetricsListener.NONE;
+        long start = measured ? System.nanoTime() : 0;
+        Output output = new Output(out);
+        output.writeNode(merge(configuration.getRootBlocks()));
+        output.drain();
+        if (measured) {
+            exported(HCLMetrics.Operation.TO_JSON, configuration.getSource(), configuration.getRootBlocks().size(),
+                    output.written, start);
+        }
+    }
+
+    /*
+     * Merges the blocks in to the objects HCL2Map would create, holding the HCLValue of each
+     * attribute rather than its converted value
+     */
+    private Map<String, Object> merge(Collection<Symbol> rootBlocks) throws HCLParserException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Symbol currentElement : rootBlocks) {
+            if (currentElement instanceof HCLBlock) {
+                mergeBlock((HCLBlock) currentElement, result);
+            } else if (currentElement instanceof HCLAttribute) {
+                result.put(currentElement.getName(), currentElement.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void mergeBlock(HCLBlock block, Map<String, Object> mapPosition) throws HCLParserException {
+        expandPath(block.blockNames, mapPosition);
+        mapPosition = HCL2Map.blockMap(block.blockNames, mapPosition);
+        for (Symbol child : block.getChildren()) {
+            if (child instanceof HCLAttribute) {
+                mapPosition.put(child.getName(), child.getValue());
+            } else if (child instanceof HCLBlock) {
+                mergeBlock((HCLBlock) child, mapPosition);
+            }
+        }
+    }
+
+    /*
+     * HCL2Map holds attribute maps and arrays as Map and List, so a block named like an attribute
+     * merges in to its value. Converts the map and array values along the block names the same way
+     * before HCL2Map.blockMap walks them.
+     */
+    private static void expandPath(List<String> blockNames, Map<String, Object> mapPosition) {
+        for (String blockName : blockNames) {
+            Object existing = mapPosition.get(blockName);
+            if (existing instanceof HCLValue) {
+                HCLValue value = (HCLValue) existing;
+                if (value.getType() == HCLValue.Type.MAP) {
+                    existing = new LinkedHashMap<String, Object>((Map<String, HCLValue>) value.value);
+                    mapPosition.put(blockName, existing);
+                } else if (value.getType() == HCLValue.Type.ARRAY) {
+                    existing = new ArrayList<Object>((List<HCLValue>) value.value);
+                    mapPosition.put(blockName, existing);
+                }
+            }
+            if (!(existing instanceof Map)) {
+                return;
+            }
+            mapPosition = (Map<String, Object>) existing;
+        }
+    }
+
+    /**
+     * Buffers the JSON text on its way to the output
+     */
+    private static final class Output {
+        private final Appendable out;
+        private final char[] buffer = new char[HCLWriter.DEFAULT_BUFFER_SIZE];
+        private int count;
+        private long written;
+
+        Output(Appendable out) {
+            this.out = out;
+        }
+
+        /* a merged object, a list of them or an attribute value */
+        void writeNode(Object node) throws HCLParserException, IOException {
+            if (node instanceof HCLValue) {
+                writeValue((HCLValue) node);
+            } else if (node instanceof Map) {
+                write('{');
+                boolean first = true;
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) node).entrySet()) {
+                    if (!first) {
+                        write(',');
+                    }
+                    first = false;
+                    writeString(entry.getKey());
+                    write(':');
+                    writeNode(entry.getValue());
+                }
+                write('}');
+            } else if (node instanceof List) {
+                write('[');
+                boolean first = true;
+                for (Object element : (List<Object>) node) {
+                    if (!first) {
+                        write(',');
+                    }
+                    first = false;
+                    writeNode(element);
+                }
+                write(']');
+            } else {
+                write("null");
+            }
+        }
+
+        void writeValue(HCLValue value) throws HCLParserException, IOException {
+            if (value.getType() == null) {
+                throw new HCLParserException("HCL Attribute value not recognized by parser (not implemented yet).");
+            }
+            switch (value.getType()) {
+            case STRING:
+                if (value.value == null) {
+                    write("null");
+                } else {
+                    writeString((String) value.value);
+                }
+                break;
+            case BOOLEAN:
+                if (value instanceof HCLBoolean) {
+                    write(((HCLBoolean) value).booleanValue() ? "true" : "false");
+                } else {
+                    write("true".equals(value.value) ? "true" : "false");
+                }
+                break;
+            case NUMBER:
+                write(value.numberValue().toString());
+                break;
+            case ARRAY:
+            case MAP:
+                // the values of a collection are HCLValues, nested objects are written the same way
+                writeNode(value.value);
+                break;
+            }
+        }
+
+        void writeString(String s) throws IOException {
+            write('"');
+            int length = s.length();
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c >= ' ' && c != '"' && c != '\\') {
+                    continue;
+                }
+                write(s, start, i);
+                start = i + 1;
+                switch (c) {
+                case '"':
+                    write("\\\"");
+                    break;
+                case '\\':
+                    write("\\\\");
+                    break;
+                case '\n':
+                    write("\\n");
+                    break;
+                case '\r':
+                    write("\\r");
+                    break;
+                case '\t':
+                    write("\\t");
+                    break;
+                default:
+                    write("\\u00");
+                    write(HEX[c >> 4]);
+                    write(HEX[c & 0xF]);
+                }
+            }
+            write(s, start, length);
+            write('"');
+        }
+
+        private void write(char c) throws IOException {
+            if (count == buffer.length) {
+                drain();
+            }
+            buffer[count++] = c;
+        }
+
+        private void write(String s) throws IOException {
+            write(s, 0, s.length());
+        }
+
+        private void write(String s, int start, int end) throws IOException {
+            int length = end - start;
+            if (count + length > buffer.length) {
+                drain();
+                if (length > buffer.length) {
+                    out.append(s, start, end);
+                    written += length;
+                    return;
+                }
+            }
+            s.getChars(start, end, buffer, count);
+            count += length;
+        }
+
+        void drain() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (out instanceof Writer) {
+                ((Writer) out).write(buffer, 0, count);
+            } else if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(buffer, 0, count);
+            } else {
+                out.append(CharBuffer.wrap(buffer, 0, count));
+            }
+            written += count;
+            count = 0;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.bertramlabs.plugins.hcl4j;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -48,7 +49,7 @@ public class HCL2Map extends HCLExport {
      * @throws IOException In the event the reader is unable to pull from the input source this exception is thrown.
      */
     public Map<String,Object> toMap(HCLObject configuation) throws HCLParserException, IOException {
-        return toMap(configuation.getRootBlocks());
+        return toMap(configuation.getRootBlocks(), configuation.getSource());
     }
     
     /**
@@ -60,6 +61,12 @@ public class HCL2Map extends HCLExport {
      * @throws IOException In the event the reader is unable to pull from the input source this exception is thrown.
      */
     public Map<String,Object> toMap(Collection<Symbol> rootBlocks) throws HCLParserException, IOException {
+        return toMap(rootBlocks, null);
+    }
+
+    private Map<String,Object> toMap(Collection<Symbol> rootBlocks, Path source) throws HCLParserException, IOException {
+        boolean measured = getMetricsListener() != HCLMetricsListener.NONE;
+        long start = measured ? System.nanoTime() : 0;
         //Time to parse the AST Tree into a Map
         Map<String,Object> result = new LinkedHashMap<>();
 
@@ -74,14 +81,42 @@ public class HCL2Map extends HCLExport {
                 mapPosition.put(attr.getName(),processValue(attr.getValue()));
             }
         }
+        if(measured) {
+            exported(HCLMetrics.Operation.TO_MAP, source, rootBlocks.size(), -1, start);
+        }
         return result;
     }
 
     private void processBlock(HCLBlock block, Map<String,Object> mapPosition) throws HCLParserException {
-        for(int counter = 0 ; counter < block.blockNames.size() ; counter++) {
-            String blockName = block.blockNames.get(counter);
+        mapPosition = blockMap(block.blockNames, mapPosition);
+
+        if(block.getChildren() != null) {
+            for(Symbol child : block.getChildren()) {
+                if(child instanceof HCLAttribute) {
+                    HCLAttribute attr = (HCLAttribute)child;
+                    HCLValue value = attr.getValue();
+                    mapPosition.put(attr.getName(), processValue(value));
+                } else if (child instanceof HCLBlock) {
+                    processBlock((HCLBlock)child,mapPosition);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds or creates the map a block's attributes go into, descending one level per block name.
+     * A block repeating the names of an earlier one turns the last level in to a list of maps.
+     *
+     * @param blockNames the block type followed by its labels
+     * @param mapPosition the map of the enclosing block or document
+     * @return the map of the block
+     * @throws HCLParserException if the names traverse a value that is not a map
+     */
+    static Map<String,Object> blockMap(List<String> blockNames, Map<String,Object> mapPosition) throws HCLParserException {
+        for(int counter = 0 ; counter < blockNames.size() ; counter++) {
+            String blockName = blockNames.get(counter);
             if(mapPosition.containsKey(blockName)) {
-                if(counter == block.blockNames.size() - 1 && mapPosition.get(blockName) instanceof Map) {
+                if(counter == blockNames.size() - 1 && mapPosition.get(blockName) instanceof Map) {
                     List<Map<String,Object>> objectList = new ArrayList<>();
                     Map<String,Object> addedObject = new LinkedHashMap<String,Object>();
                     objectList.add((Map)mapPosition.get(blockName));
@@ -90,7 +125,7 @@ public class HCL2Map extends HCLExport {
                     mapPosition = addedObject;
                 } else if(mapPosition.get(blockName) instanceof Map) {
                     mapPosition = (Map<String,Object>) mapPosition.get(blockName);
-                } else if(counter == block.blockNames.size() - 1 && mapPosition.get(blockName) instanceof List) {
+                } else if(counter == blockNames.size() - 1 && mapPosition.get(blockName) instanceof List) {
                     Map<String,Object> addedObject = new LinkedHashMap<String,Object>();
                     ((List<Map>)mapPosition.get(blockName)).add(addedObject);
                     mapPosition = addedObject;
@@ -106,17 +141,6 @@ public class HCL2Map extends HCLExport {
                 mapPosition = (Map<String,Object>) mapPosition.get(blockName);
             }
         }
-
-        if(block.getChildren() != null) {
-            for(Symbol child : block.getChildren()) {
-                if(child instanceof HCLAttribute) {
-                    HCLAttribute attr = (HCLAttribute)child;
-                    HCLValue value = attr.getValue();
-                    mapPosition.put(attr.getName(), processValue(value));
-                } else if (child instanceof HCLBlock) {
-                    processBlock((HCLBlock)child,mapPosition);
-                }
-            }
-        }
+        return mapPosition;
     }
 }
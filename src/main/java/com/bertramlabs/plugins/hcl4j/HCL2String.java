@@ -15,12 +15,11 @@
  */
 package com.bertramlabs.plugins.hcl4j;
 
-import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
-import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
-import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+import java.io.IOException;
 
 /**
- * Utility class to create a string from the HCL configuration
+ * Utility class to create a string from the HCL configuration. Use {@link HCLWriter} to write
+ * large configurations to a file or stream without holding the text in memory.
  * 
  * @author jstockall
  */
@@ -42,53 +41,21 @@ public class HCL2String extends HCLExport {
      *             the syntax is invalid.
      */
     public String toHcl(HCLObject configuration) throws HCLParserException {
+        boolean measured = getMetricsListener() != HCLMetricsListener.NONE;
+        long start = measured ? System.nanoTime() : 0;
         StringBuilder sb = new StringBuilder();
-        for (Symbol hcl : configuration.getRootBlocks()) {
-            if (hcl instanceof HCLBlock) {
-                printBlock((HCLBlock) hcl, sb, 0);
-            } else if (hcl instanceof HCLAttribute) {
-                HCLAttribute attr = (HCLAttribute) hcl;
-                sb.append('\t').append(attr.getName()).append(" = ").append(processValue(attr.getValue())).append('\n');
-            }
+        HCLWriter writer = new HCLWriter(sb);
+        try {
+            writer.write(configuration).flush();
+        } catch (IOException ex) {
+            // a StringBuilder does not throw
+            throw new HCLParserException("Unable to write HCL configuration", ex);
         }
-        return sb.toString();
-    }
-
-    private void printBlock(HCLBlock block, StringBuilder sb, int indent) throws HCLParserException {
-        for (int counter = 0, size = block.blockNames.size(); counter < size; counter++) {
-            String blockName = block.blockNames.get(counter);
-            if (counter == 0) {
-                for (int i = 0; i < indent; i++) {
-                    sb.append('\t');
-                }
-                sb.append(blockName).append(" ");
-                if (size == 1) {
-                    sb.append(" {\n");
-                }
-                indent++;
-            } else if (counter == size - 1) {
-                sb.append("\"").append(blockName).append("\" {\n");
-            } else {
-                sb.append("\"").append(blockName).append("\" ");
-            }
+        if (measured) {
+            exported(HCLMetrics.Operation.TO_HCL, configuration.getSource(), configuration.getRootBlocks().size(),
+                    sb.length(), start);
         }
-
-        for (Symbol child : block.getChildren()) {
-            if (child instanceof HCLAttribute) {
-                HCLAttribute attr = (HCLAttribute) child;
-                for (int i = 0; i < indent; i++) {
-                    sb.append('\t');
-                }
-                sb.append(attr.getName()).append(" = ").append(processValue(attr.getValue())).append('\n');
-            } else if (child instanceof HCLBlock) {
-                printBlock((HCLBlock) child, sb, indent);
-            }
-        }
-        indent--;
-        for (int i = 0; i < indent; i++) {
-            sb.append('\t');
-        }
-        sb.append("}\n\n");
+        return sb.toString();
     }
 
 }
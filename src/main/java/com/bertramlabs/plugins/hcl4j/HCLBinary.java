@@ -0,0 +1,686 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLArray;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLMap;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLNumber;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Compact binary form of a parsed configuration, for storing parse results and loading them again
+ * without lexing the text. Reading a configuration back gives the same blocks, attributes and
+ * values, with the same lines, columns, positions and lengths, and the same source files.
+ *
+ * <p>
+ * The data starts with the bytes {@code HCLB} and a format version. All names, labels, map keys
+ * and string values follow as a table of distinct UTF-8 strings, then the symbols in document
+ * order, each a one byte tag followed by variable length integers. Lines and positions are stored
+ * as the difference to those of the symbol before, so they usually take a single byte. Numbers are
+ * stored as a varint or the bits of a double when that gives back the text they were written
+ * with, as their text otherwise.
+ * </p>
+ *
+ * <p>
+ * Blocks, attributes and values may be nested at most {@link #MAX_DEPTH} levels deep, deeper
+ * configurations are neither written nor read.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     HCLBinary.write(configuration, Paths.get("main.tf.bin"));
+ *     HCLObject cached = HCLBinary.read(Paths.get("main.tf.bin"));
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public final class HCLBinary {
+
+    /** The version written, data of other versions is rejected */
+    public static final int VERSION = 1;
+
+    /** The deepest nesting of blocks, attributes and values written and read */
+    public static final int MAX_DEPTH = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] MAGIC = { 'H', 'C', 'L', 'B' };
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // small, so that small configurations are cheap to load; grown for longer strings
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private static final int BLOCK = 1;
+    private static final int ATTRIBUTE = 2;
+
+    private static final int NO_VALUE = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int DECIMAL = 3;
+    private static final int NUMBER_TEXT = 4;
+    private static final int TRUE = 5;
+    private static final int FALSE = 6;
+    private static final int ARRAY = 7;
+    private static final int MAP = 8;
+
+    private HCLBinary() {
+    }
+
+    /**
+     * @param configuration the configuration to write
+     * @param channel receives the binary form, it is not closed
+     *
+     * @throws IOException
+     *             If the channel cannot be written
+     * @throws IllegalArgumentException
+     *             If the configuration is nested deeper than {@link #MAX_DEPTH}
+     */
+    public static void write(HCLObject configuration, WritableByteChannel channel) throws IOException {
+        new Encoder(channel).write(configuration);
+    }
+
+    /**
+     * @param configuration the configuration to write
+     * @param file the file to create or replace
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     * @throws IllegalArgumentException
+     *             If the configuration is nested deeper than {@link #MAX_DEPTH}
+     */
+    public static void write(HCLObject configuration, Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            write(configuration, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param channel the binary form written by {@link #write(HCLObject, WritableByteChannel)}, it
+     *            is not closed and may have been read beyond the end of the configuration
+     * @return the configuration
+     *
+     * @throws HCLParserException
+     *             If the data is not in the binary form, of another version, or corrupt
+     * @throws IOException
+     *             If the channel cannot be read or ends before the configuration does
+     */
+    public static HCLObject read(ReadableByteChannel channel) throws HCLParserException, IOException {
+        return new Decoder(channel).read();
+    }
+
+    /**
+     * @param file a file written by {@link #write(HCLObject, Path)}
+     * @return the configuration
+     *
+     * @throws HCLParserException
+     *             If the data is not in the binary form, of another version, or corrupt
+     * @throws IOException
+     *             If the file cannot be read or is truncated
+     */
+    public static HCLObject read(Path file) throws HCLParserException, IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return read(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static final class Encoder {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        // the index of each string in the table plus one, zero stands for null
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+        private int previousLine;
+        private int previousPosition;
+        private int depth;
+
+        Encoder(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(HCLObject configuration) throws IOException {
+            List<HCLObject> files = configuration.getFiles();
+            for (HCLObject file : files) {
+                collect(file.getSource() != null ? file.getSource().toString() : null);
+                for (Symbol root : file.getRootBlocks()) {
+                    collect(root);
+                }
+            }
+
+            buffer.put(MAGIC);
+            writeVarint(VERSION);
+            writeVarint(table.size());
+            for (String string : table) {
+                writeString(string);
+            }
+            writeVarint(files.size());
+            for (HCLObject file : files) {
+                writeVarint(indexOf(file.getSource() != null ? file.getSource().toString() : null));
+                writeSymbols(file.getRootBlocks());
+            }
+            flush();
+        }
+
+        private void collect(Symbol symbol) {
+            if (symbol instanceof HCLBlock) {
+                for (String label : ((HCLBlock) symbol).blockNames) {
+                    collect(label);
+                }
+            } else {
+                collect(symbol.getName());
+                collect(symbol.getValue());
+            }
+            for (Symbol child : symbol.getChildren()) {
+                collect(child);
+            }
+            for (Symbol attribute : symbol.getAttributes()) {
+                collect(attribute);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void collect(HCLValue value) {
+            if (value instanceof HCLNumber) {
+                if (!canonical((HCLNumber) value)) {
+                    collect((String) value.value);
+                }
+                return;
+            }
+            if (value == null || value instanceof HCLBoolean) {
+                return;
+            }
+            if (value.getType() == HCLValue.Type.ARRAY) {
+                for (HCLValue element : (List<HCLValue>) value.value) {
+                    collect(element);
+                }
+            } else if (value.getType() == HCLValue.Type.MAP) {
+                for (Map.Entry<String, HCLValue> entry : ((Map<String, HCLValue>) value.value).entrySet()) {
+                    collect(entry.getKey());
+                    collect(entry.getValue());
+                }
+            } else if (value.getType() != HCLValue.Type.BOOLEAN) {
+                collect((String) value.value);
+            }
+        }
+
+        private void collect(String string) {
+            if (string != null && !strings.containsKey(string)) {
+                table.add(string);
+                strings.put(string, table.size());
+            }
+        }
+
+        private int indexOf(String string) {
+            return string == null ? 0 : strings.get(string);
+        }
+
+        private void writeSymbols(Collection<Symbol> symbols) throws IOException {
+            writeVarint(symbols.size());
+            for (Symbol symbol : symbols) {
+                writeSymbol(symbol);
+            }
+        }
+
+        private void writeSymbol(Symbol symbol) throws IOException {
+            enter();
+            ensure(1);
+            if (symbol instanceof HCLBlock) {
+                buffer.put((byte) BLOCK);
+                List<String> labels = ((HCLBlock) symbol).blockNames;
+                writeVarint(labels.size());
+                for (String label : labels) {
+                    writeVarint(indexOf(label));
+                }
+            } else {
+                buffer.put((byte) ATTRIBUTE);
+                writeVarint(indexOf(symbol.getName()));
+            }
+            // unknown locations are stored as 0, known ones one higher than they are
+            int line = plusOne(symbol.getLine());
+            int position = plusOne(symbol.getPosition());
+            writeSignedVarint(line - previousLine);
+            writeVarint(plusOne(symbol.getColumn()));
+            writeSignedVarint(position - previousPosition);
+            writeVarint(plusOne(symbol.getLength()));
+            previousLine = line;
+            previousPosition = position;
+            if (symbol instanceof HCLBlock) {
+                writeSymbols(symbol.getChildren());
+            } else {
+                writeValue(symbol.getValue());
+            }
+            writeSymbols(symbol.getAttributes());
+            depth--;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void writeValue(HCLValue value) throws IOException {
+            enter();
+            ensure(1);
+            if (value == null) {
+                buffer.put((byte) NO_VALUE);
+            } else if (value instanceof HCLNumber && canonical((HCLNumber) value)) {
+                HCLNumber number = (HCLNumber) value;
+                if (number.isIntegral()) {
+                    buffer.put((byte) INTEGER);
+                    writeSignedVarint(number.longValue());
+                } else {
+                    buffer.put((byte) DECIMAL);
+                    ensure(8);
+                    buffer.putLong(Double.doubleToRawLongBits(number.doubleValue()));
+                }
+            } else if (value.getType() == HCLValue.Type.BOOLEAN) {
+                buffer.put((byte) ("true".equals(value.value) ? TRUE : FALSE));
+            } else if (value.getType() == HCLValue.Type.ARRAY) {
+                buffer.put((byte) ARRAY);
+                List<HCLValue> elements = (List<HCLValue>) value.value;
+                writeVarint(elements.size());
+                for (HCLValue element : elements) {
+                    writeValue(element);
+                }
+            } else if (value.getType() == HCLValue.Type.MAP) {
+                buffer.put((byte) MAP);
+                Map<String, HCLValue> entries = (Map<String, HCLValue>) value.value;
+                writeVarint(entries.size());
+                for (Map.Entry<String, HCLValue> entry : entries.entrySet()) {
+                    writeVarint(indexOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            } else {
+                buffer.put((byte) (value.getType() == HCLValue.Type.NUMBER ? NUMBER_TEXT : STRING));
+                writeVarint(indexOf((String) value.value));
+            }
+            depth--;
+        }
+
+        private void enter() {
+            if (++depth > MAX_DEPTH) {
+                throw new IllegalArgumentException("Configuration nested deeper than " + MAX_DEPTH + " levels");
+            }
+        }
+
+        /* whether the number reads back with the text it was written with, e.g. not 1.50, 007 or -0 */
+        private static boolean canonical(HCLNumber number) {
+            Object text = number.value;
+            return text == null || text.equals(number.isIntegral() ? Long.toString(number.longValue())
+                    : Double.toString(number.doubleValue()));
+        }
+
+        private void writeString(String string) throws IOException {
+            int length = string.length();
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = string.charAt(i) < 0x80;
+            }
+            if (!ascii) {
+                byte[] bytes = string.getBytes(UTF_8);
+                writeVarint(bytes.length);
+                for (int offset = 0; offset < bytes.length; offset += buffer.capacity()) {
+                    int count = Math.min(buffer.capacity(), bytes.length - offset);
+                    ensure(count);
+                    buffer.put(bytes, offset, count);
+                }
+                return;
+            }
+            writeVarint(length);
+            for (int i = 0; i < length; i++) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put((byte) string.charAt(i));
+            }
+        }
+
+        private void writeSignedVarint(long value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarint(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private static int plusOne(Integer value) {
+            return value == null ? 0 : value + 1;
+        }
+    }
+
+    private static final class Decoder {
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private String[] table;
+        private int previousLine;
+        private int previousPosition;
+        private int depth;
+
+        Decoder(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        HCLObject read() throws HCLParserException, IOException {
+            ensure(MAGIC.length);
+            for (byte expected : MAGIC) {
+                if (buffer.get() != expected) {
+                    throw new HCLParserException("Not an HCL binary configuration");
+                }
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new HCLParserException("Unsupported HCL binary version " + version + ", expected " + VERSION);
+            }
+            // counts are not trusted to size anything, corrupt data ends before a large count is reached
+            int count = readInt();
+            List<String> strings = new ArrayList<>();
+            strings.add(null);
+            for (int i = 0; i < count; i++) {
+                strings.add(readString());
+            }
+            table = strings.toArray(new String[strings.size()]);
+
+            int fileCount = readInt();
+            List<HCLObject> files = new ArrayList<>();
+            for (int i = 0; i < fileCount; i++) {
+                String source = string();
+                files.add(new HCLObject(readSymbols(null), source != null ? Paths.get(source) : null));
+            }
+            return files.size() == 1 ? files.get(0) : HCLObject.merge(files);
+        }
+
+        private List<Symbol> readSymbols(HCLBlock parent) throws HCLParserException, IOException {
+            int count = readInt();
+            List<Symbol> symbols = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Symbol symbol = readSymbol(parent);
+                if (parent != null) {
+                    parent.appendChild(symbol);
+                } else {
+                    symbols.add(symbol);
+                }
+            }
+            return symbols;
+        }
+
+        private Symbol readSymbol(HCLBlock parent) throws HCLParserException, IOException {
+            enter();
+            ensure(1);
+            int tag = buffer.get();
+            List<String> labels = null;
+            String name = null;
+            if (tag == BLOCK) {
+                int count = readInt();
+                labels = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    labels.add(string());
+                }
+                if (labels.isEmpty()) {
+                    throw corrupt("block without names");
+                }
+            } else if (tag == ATTRIBUTE) {
+                name = string();
+            } else {
+                throw corrupt("unknown symbol tag " + tag);
+            }
+            int line = previousLine + (int) readSignedLong();
+            int column = readInt();
+            int position = previousPosition + (int) readSignedLong();
+            int length = readInt();
+            previousLine = line;
+            previousPosition = position;
+
+            Symbol symbol;
+            if (tag == BLOCK) {
+                HCLBlock block = new HCLBlock(labels, parent, line - 1, column - 1, position - 1);
+                readSymbols(block);
+                symbol = block;
+            } else {
+                symbol = new HCLAttribute(name, readValue(), line - 1, column - 1, position - 1);
+                symbol.setParent(parent);
+            }
+            if (length > 0) {
+                symbol.setLength(length - 1);
+            }
+            int attributes = readInt();
+            for (int i = 0; i < attributes; i++) {
+                symbol.appendAttribute(readSymbol(null));
+            }
+            depth--;
+            return symbol;
+        }
+
+        private HCLValue readValue() throws HCLParserException, IOException {
+            ensure(1);
+            int tag = buffer.get();
+            switch (tag) {
+            case NO_VALUE:
+                return null;
+            case STRING:
+                return new HCLValue(HCLValue.Type.STRING, string());
+            case INTEGER:
+                return new HCLNumber(readSignedLong());
+            case DECIMAL:
+                ensure(8);
+                return new HCLNumber(Double.longBitsToDouble(buffer.getLong()));
+            case NUMBER_TEXT:
+                String text = string();
+                return text != null ? HCLNumber.parse(text) : new HCLValue(HCLValue.Type.NUMBER, null);
+            case TRUE:
+                return HCLBoolean.TRUE;
+            case FALSE:
+                return HCLBoolean.FALSE;
+            case ARRAY:
+                return readArray(null);
+            case MAP:
+                return readMap(null);
+            default:
+                throw corrupt("unknown value tag " + tag);
+            }
+        }
+
+        // nested collections are linked to their parents as HCLTreeBuilder does
+        private HCLValue readArray(String parentKey) throws HCLParserException, IOException {
+            int count = readInt();
+            if (count == 0) {
+                return HCLArray.EMPTY;
+            }
+            enter();
+            HCLArray array = new HCLArray();
+            array.parentKey = parentKey;
+            List<HCLValue> elements = new ArrayList<>();
+            array.value = elements;
+            for (int i = 0; i < count; i++) {
+                elements.add(child(array, null));
+            }
+            depth--;
+            return array;
+        }
+
+        private HCLValue readMap(String parentKey) throws HCLParserException, IOException {
+            int count = readInt();
+            if (count == 0) {
+                return HCLMap.EMPTY;
+            }
+            enter();
+            HCLMap map = new HCLMap();
+            map.parentKey = parentKey;
+            for (int i = 0; i < count; i++) {
+                String key = string();
+                map.add(key, child(map, key));
+            }
+            depth--;
+            return map;
+        }
+
+        /* crafted data nested without end is rejected before it exhausts the stack */
+        private void enter() throws HCLParserException {
+            if (++depth > MAX_DEPTH) {
+                throw corrupt("nested deeper than " + MAX_DEPTH + " levels");
+            }
+        }
+
+        private HCLValue child(HCLValue parent, String key) throws HCLParserException, IOException {
+            ensure(1);
+            int tag = buffer.get(buffer.position());
+            HCLValue value;
+            if (tag == ARRAY || tag == MAP) {
+                buffer.get();
+                value = tag == ARRAY ? readArray(key) : readMap(key);
+                if (value != HCLArray.EMPTY && value != HCLMap.EMPTY) {
+                    value.parent = parent;
+                }
+            } else {
+                value = readValue();
+            }
+            return value;
+        }
+
+        private String string() throws HCLParserException, IOException {
+            int index = readInt();
+            if (index >= table.length) {
+                throw corrupt("string " + index + " of " + (table.length - 1));
+            }
+            return table[index];
+        }
+
+        private String readString() throws HCLParserException, IOException {
+            int length = readInt();
+            if (length > buffer.capacity()) {
+                return readLongString(length);
+            }
+            ensure(length);
+            byte[] bytes = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            boolean ascii = true;
+            for (int i = offset; i < offset + length && ascii; i++) {
+                ascii = bytes[i] >= 0;
+            }
+            String result = new String(bytes, offset, length, ascii ? ISO_8859_1 : UTF_8);
+            buffer.position(buffer.position() + length);
+            return result;
+        }
+
+        /* a string longer than the buffer is copied out as it arrives, rather than buffered at its stated length */
+        private String readLongString(int length) throws IOException {
+            byte[] bytes = new byte[buffer.capacity()];
+            int read = 0;
+            while (read < length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), length - read);
+                if (read + chunk > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(length, Math.max(read + chunk, 2L * bytes.length)));
+                }
+                buffer.get(bytes, read, chunk);
+                read += chunk;
+            }
+            return new String(bytes, 0, length, UTF_8);
+        }
+
+        private int readInt() throws HCLParserException, IOException {
+            long value = readLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw corrupt("count out of range");
+            }
+            return (int) value;
+        }
+
+        private long readSignedLong() throws HCLParserException, IOException {
+            long value = readLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readLong() throws HCLParserException, IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                ensure(1);
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw corrupt("malformed number");
+        }
+
+        /* makes at least the given number of bytes available in the buffer */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (bytes > buffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("HCL binary configuration is truncated");
+                }
+            }
+            buffer.flip();
+        }
+
+        private static HCLParserException corrupt(String reason) {
+            return new HCLParserException("Corrupt HCL binary configuration: " + reason);
+        }
+    }
+}
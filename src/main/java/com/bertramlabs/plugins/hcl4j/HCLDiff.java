@@ -0,0 +1,548 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.bertramlabs.plugins.hcl4j.symbols.GenericSymbol;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLNumber;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Structural diff of two configurations. Every block, attribute and value is summarized by a 128
+ * bit hash of its content and the content below it, so that the two configurations are only
+ * searched for changes where the hashes of the same element differ. Elements of equal hashes are
+ * taken to be equal without comparing them: the hash mixes every character and child through two
+ * 64 bit lanes as MurmurHash3 does, too wide for the elements of two revisions to collide in
+ * practice, though unlike a cryptographic hash it does not resist text crafted to collide.
+ * Elements shared between the configurations, as by {@link HCLObject#with(String, HCLValue)}, are
+ * skipped without hashing.
+ *
+ * <p>
+ * Elements are matched by their names: blocks by all of their names, attributes by name and map
+ * entries by key, repeated blocks of the same names in the order they appear. Arrays of the same
+ * length are compared element by element, any other change to an array changes it as a whole.
+ * Moving blocks, attributes or map entries is not a change, and numbers are equal if their values
+ * are, as with {@link HCL2Map}.
+ * </p>
+ *
+ * <p>
+ * Each element is hashed once per diff, bottom up, keeping the hashes of its children with its
+ * own so that descending in to a change does not hash them again. The hashes of frozen symbols
+ * ({@link HCLObject#freeze()}) are also kept for as long as the symbols are, so that diffing a
+ * frozen configuration against its next revision with the same {@code HCLDiff} only hashes what
+ * was not hashed before and costs in proportion to the change. Two separately parsed revisions are
+ * hashed in full once. A diff may be shared between threads.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     for (HCLDiff.Change change : new HCLDiff().diff(before, after)) {
+ *         System.out.println(change.getKind() + " " + change.getPath() + " at line " + change.getLine());
+ *     }
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public final class HCLDiff {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    // hashes of frozen symbols and values, which cannot change
+    private final Map<Object, Hash> frozenHashes = Collections.synchronizedMap(new WeakHashMap<Object, Hash>());
+
+    /**
+     * @param before the earlier revision
+     * @param after the later revision
+     * @return the added, removed and changed elements, in the order of the later revision with
+     *         the removed elements of a block after the others
+     */
+    public List<Change> diff(HCLObject before, HCLObject after) {
+        Run run = new Run();
+        run.symbols(before.getRootBlocks(), null, after.getRootBlocks(), null, "");
+        return run.changes;
+    }
+
+    /**
+     * @param symbol a block or attribute
+     * @return 64 bits of the hash of the content of the symbol and everything below it,
+     *         independent of its position in the text
+     */
+    public long hash(Symbol symbol) {
+        Hash hash = new Run().hash(symbol);
+        return hash.high ^ hash.low;
+    }
+
+    /**
+     * An element that differs between the revisions
+     */
+    public static final class Change {
+
+        public enum Kind {
+            ADDED, REMOVED, CHANGED
+        }
+
+        private final Kind kind;
+        private final String path;
+        private final Object before;
+        private final Object after;
+        private final Symbol symbol;
+
+        Change(Kind kind, String path, Object before, Object after, Symbol symbol) {
+            this.kind = kind;
+            this.path = path;
+            this.before = before;
+            this.after = after;
+            this.symbol = symbol;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the path of the element in the syntax of {@link HCLQuery}, e.g.
+         *         {@code resource.aws_instance.web.tags.Name}
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the {@link Symbol} or {@link HCLValue} of the earlier revision, null if it was
+         *         added
+         */
+        public Object getBefore() {
+            return before;
+        }
+
+        /**
+         * @return the {@link Symbol} or {@link HCLValue} of the later revision, null if it was
+         *         removed
+         */
+        public Object getAfter() {
+            return after;
+        }
+
+        /**
+         * @return the line of the block or attribute of the change in the later revision, or in the
+         *         earlier one if it was removed. Null if it is not known.
+         */
+        public Integer getLine() {
+            return symbol.getLine();
+        }
+
+        /**
+         * @return the column of the block or attribute of the change, see {@link #getLine()}
+         */
+        public Integer getColumn() {
+            return symbol.getColumn();
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + path + " [line=" + getLine() + ", column=" + getColumn() + "]";
+        }
+    }
+
+    /**
+     * The changes found by one diff
+     */
+    private final class Run {
+        final List<Change> changes = new ArrayList<Change>();
+        // the hashes of the names, which repeat across the blocks of a configuration
+        private final Map<String, Hash> names = new HashMap<String, Hash>();
+
+        /* the hashes of the symbols, when known, are those their parents were hashed with */
+        void symbols(Collection<Symbol> before, Hash[] beforeHashes, Collection<Symbol> after, Hash[] afterHashes,
+                String path) {
+            // revisions mostly keep the order of their elements, which are matched pairwise until they do not
+            List<Symbol> previous = before instanceof List ? (List<Symbol>) before : new ArrayList<Symbol>(before);
+            List<Symbol> next = after instanceof List ? (List<Symbol>) after : new ArrayList<Symbol>(after);
+            int matched = 0;
+            int count = Math.min(previous.size(), next.size());
+            while (matched < count && sameNames(previous.get(matched), next.get(matched))) {
+                symbol(previous.get(matched), beforeHashes, matched, next.get(matched), afterHashes, matched, path);
+                matched++;
+            }
+            if (matched == previous.size() && matched == next.size()) {
+                return;
+            }
+            Map<Key, Integer> unmatched = new LinkedHashMap<Key, Integer>();
+            Map<Object, Integer> occurrences = new HashMap<Object, Integer>();
+            for (int index = matched; index < previous.size(); index++) {
+                unmatched.put(Key.of(previous.get(index), occurrences), index);
+            }
+            occurrences.clear();
+            for (int index = matched; index < next.size(); index++) {
+                Symbol symbol = next.get(index);
+                Integer match = unmatched.remove(Key.of(symbol, occurrences));
+                if (match == null) {
+                    changes.add(new Change(Change.Kind.ADDED, join(path, symbol), null, symbol, symbol));
+                } else {
+                    symbol(previous.get(match), beforeHashes, match, symbol, afterHashes, index, path);
+                }
+            }
+            for (Integer index : unmatched.values()) {
+                Symbol symbol = previous.get(index);
+                changes.add(new Change(Change.Kind.REMOVED, join(path, symbol), symbol, null, symbol));
+            }
+        }
+
+        private void symbol(Symbol before, Hash[] beforeHashes, int beforeIndex, Symbol after, Hash[] afterHashes,
+                int afterIndex, String path) {
+            if (before == after) {
+                return;
+            }
+            Hash previous = hash(before, beforeHashes, beforeIndex);
+            Hash next = hash(after, afterHashes, afterIndex);
+            if (previous.equals(next)) {
+                return;
+            }
+            if (after instanceof HCLBlock && before instanceof HCLBlock) {
+                symbols(before.getChildren(), previous.parts, after.getChildren(), next.parts, join(path, after));
+            } else {
+                value(before.getValue(), previous.parts, 0, after.getValue(), next.parts, 0, join(path, after), after);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void value(HCLValue before, Hash[] beforeHashes, int beforeIndex, HCLValue after, Hash[] afterHashes,
+                int afterIndex, String path, Symbol symbol) {
+            if (before == after) {
+                return;
+            }
+            Hash previous = before != null ? hash(before, beforeHashes, beforeIndex) : null;
+            Hash next = after != null ? hash(after, afterHashes, afterIndex) : null;
+            if (previous != null && previous.equals(next)) {
+                return;
+            }
+            if (before != null && after != null && before.getType() == HCLValue.Type.MAP
+                    && after.getType() == HCLValue.Type.MAP) {
+                List<HCLValue> values = new ArrayList<HCLValue>();
+                Map<String, Integer> unmatched = new LinkedHashMap<String, Integer>();
+                for (Map.Entry<String, HCLValue> entry : ((Map<String, HCLValue>) before.value).entrySet()) {
+                    unmatched.put(entry.getKey(), values.size());
+                    values.add(entry.getValue());
+                }
+                int index = 0;
+                for (Map.Entry<String, HCLValue> entry : ((Map<String, HCLValue>) after.value).entrySet()) {
+                    String entryPath = join(path, entry.getKey());
+                    Integer match = unmatched.remove(entry.getKey());
+                    if (match == null) {
+                        changes.add(new Change(Change.Kind.ADDED, entryPath, null, entry.getValue(), symbol));
+                    } else {
+                        value(values.get(match), previous.parts, match, entry.getValue(), next.parts, index, entryPath,
+                                symbol);
+                    }
+                    index++;
+                }
+                for (Map.Entry<String, Integer> entry : unmatched.entrySet()) {
+                    changes.add(new Change(Change.Kind.REMOVED, join(path, entry.getKey()), values.get(entry.getValue()),
+                            null, symbol));
+                }
+            } else if (before != null && after != null && before.getType() == HCLValue.Type.ARRAY
+                    && after.getType() == HCLValue.Type.ARRAY
+                    && ((List<HCLValue>) before.value).size() == ((List<HCLValue>) after.value).size()) {
+                Iterator<HCLValue> elements = ((List<HCLValue>) before.value).iterator();
+                int index = 0;
+                for (HCLValue element : (List<HCLValue>) after.value) {
+                    value(elements.next(), previous.parts, index, element, next.parts, index, path + "[" + index + "]",
+                            symbol);
+                    index++;
+                }
+            } else {
+                changes.add(new Change(Change.Kind.CHANGED, path, before, after, symbol));
+            }
+        }
+
+        /* the hash the parent was hashed with, if it was, so that every element is hashed once per run */
+        private Hash hash(Object element, Hash[] hashes, int index) {
+            return hashes != null && hashes[index] != null ? hashes[index] : hash(element);
+        }
+
+        Hash hash(Object element) {
+            boolean frozen = element instanceof GenericSymbol ? ((GenericSymbol) element).isFrozen()
+                    : element instanceof HCLValue && ((HCLValue) element).isFrozen();
+            if (!frozen) {
+                return element instanceof Symbol ? symbolHash((Symbol) element) : valueHash((HCLValue) element);
+            }
+            Hash hash = frozenHashes.get(element);
+            if (hash == null) {
+                hash = element instanceof Symbol ? symbolHash((Symbol) element) : valueHash((HCLValue) element);
+                frozenHashes.put(element, hash);
+            }
+            return hash;
+        }
+
+        private Hash symbolHash(Symbol symbol) {
+            Hash hash = new Hash();
+            if (symbol instanceof HCLBlock) {
+                hash.word('B');
+                for (String name : ((HCLBlock) symbol).blockNames) {
+                    name(hash, name);
+                }
+                Collection<Symbol> children = symbol.getChildren();
+                hash.parts = new Hash[children.size()];
+                int index = 0;
+                for (Symbol child : children) {
+                    hash.hash(hash.parts[index++] = hash(child));
+                }
+            } else {
+                name(hash.word('A'), symbol.getName());
+                if (symbol.getValue() != null) {
+                    element(hash, 0, 1, symbol.getValue());
+                }
+            }
+            return hash.finish();
+        }
+
+        private Hash name(Hash hash, String name) {
+            Hash text = names.get(name);
+            if (text == null) {
+                text = new Hash().text(name).finish();
+                names.put(name, text);
+            }
+            return hash.hash(text);
+        }
+
+        /*
+         * Plain values are mixed in to the element holding them, only the hashes of collections are
+         * kept. A changed plain value is found without its own hash.
+         */
+        private void element(Hash hash, int index, int count, HCLValue value) {
+            if (value != null && (value.value instanceof List || value.value instanceof Map)) {
+                if (hash.parts == null) {
+                    hash.parts = new Hash[count];
+                }
+                hash.hash(hash.parts[index] = hash(value));
+            } else if (value != null) {
+                scalar(hash.word(1), value);
+            } else {
+                hash.word(0);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Hash valueHash(HCLValue value) {
+            Hash hash = new Hash();
+            if (value.value instanceof List) {
+                hash.word(value.getType() == null ? -1 : value.getType().ordinal());
+                List<HCLValue> elements = (List<HCLValue>) value.value;
+                int index = 0;
+                for (HCLValue element : elements) {
+                    element(hash, index++, elements.size(), element);
+                }
+            } else if (value.value instanceof Map) {
+                hash.word(value.getType() == null ? -1 : value.getType().ordinal());
+                Map<String, HCLValue> entries = (Map<String, HCLValue>) value.value;
+                int index = 0;
+                for (Map.Entry<String, HCLValue> entry : entries.entrySet()) {
+                    element(name(hash, entry.getKey()), index++, entries.size(), entry.getValue());
+                }
+            } else {
+                scalar(hash, value);
+            }
+            return hash.finish();
+        }
+
+        private void scalar(Hash hash, HCLValue value) {
+            hash.word(value.getType() == null ? -1 : value.getType().ordinal());
+            if (value instanceof HCLNumber) {
+                hash.word(Double.doubleToLongBits(((HCLNumber) value).doubleValue()));
+            } else if (value.getType() == HCLValue.Type.NUMBER) {
+                Object number = number(value);
+                if (number instanceof Double) {
+                    hash.word(Double.doubleToLongBits((Double) number));
+                } else {
+                    hash.text(String.valueOf(number));
+                }
+            } else if (value instanceof HCLBoolean) {
+                hash.word(((HCLBoolean) value).booleanValue() ? 1 : 2);
+            } else if (value.value != null) {
+                hash.text(value.value.toString());
+            }
+        }
+    }
+
+    /**
+     * The 128 bit hash of an element, mixing pairs of 64 bit words in to two lanes as the body of
+     * MurmurHash3 x64 128 does and finalized with the number of rounds. Strings are followed by their
+     * length, so that consecutive strings and children stay apart.
+     */
+    private static final class Hash {
+        private long high = 0x9368e53c2f6af274L;
+        private long low = 0x586dcd208f7cd3fdL;
+        private long rounds;
+        // the hashes of the children, elements, entries or value, in their order, null for plain values
+        Hash[] parts;
+
+        Hash word(long k) {
+            return mix(k, 0);
+        }
+
+        /* eight characters to a round, four to each lane, followed by the length */
+        Hash text(String text) {
+            int length = text.length();
+            int i = 0;
+            for (; i + 8 <= length; i += 8) {
+                mix(chars(text, i, i + 4), chars(text, i + 4, i + 8));
+            }
+            if (i < length) {
+                mix(chars(text, i, Math.min(i + 4, length)), chars(text, Math.min(i + 4, length), length));
+            }
+            return word(length);
+        }
+
+        Hash hash(Hash child) {
+            return mix(child.high, child.low);
+        }
+
+        /* one round of the body of MurmurHash3 x64 128, one word to each lane */
+        private Hash mix(long k1, long k2) {
+            high ^= Long.rotateLeft(k1 * C1, 31) * C2;
+            high = (Long.rotateLeft(high, 27) + low) * 5 + 0x52dce729;
+            low ^= Long.rotateLeft(k2 * C2, 33) * C1;
+            low = (Long.rotateLeft(low, 31) + high) * 5 + 0x38495ab5;
+            rounds++;
+            return this;
+        }
+
+        private static long chars(String text, int from, int to) {
+            long k = 0;
+            for (int i = from; i < to; i++) {
+                k = k << 16 | text.charAt(i);
+            }
+            return k;
+        }
+
+        Hash finish() {
+            high ^= rounds;
+            low ^= rounds;
+            high += low;
+            low += high;
+            high = fmix(high);
+            low = fmix(low);
+            high += low;
+            low += high;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Hash && ((Hash) other).high == high && ((Hash) other).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) low;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+    /**
+     * Matches the blocks and attributes of both revisions, the n-th of several blocks with the same
+     * names with the n-th of the other revision
+     */
+    private static final class Key {
+        private final Object names;
+        private final int occurrence;
+
+        private Key(Object names, int occurrence) {
+            this.names = names;
+            this.occurrence = occurrence;
+        }
+
+        /* counts the occurrences of the names of the symbol so far */
+        static Key of(Symbol symbol, Map<Object, Integer> occurrences) {
+            Object names = symbol instanceof HCLBlock ? ((HCLBlock) symbol).blockNames : symbol.getName();
+            Integer count = occurrences.get(names);
+            int occurrence = count == null ? 0 : count;
+            occurrences.put(names, occurrence + 1);
+            return new Key(names, occurrence);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).occurrence == occurrence && ((Key) other).names.equals(names);
+        }
+
+        @Override
+        public int hashCode() {
+            return names.hashCode() * 31 + occurrence;
+        }
+    }
+
+    /* numbers are equal if their values are, malformed numbers if their texts are */
+    private static Object number(HCLValue value) {
+        try {
+            return value.numberValue().doubleValue();
+        } catch (HCLParserException ex) {
+            return value.value;
+        }
+    }
+
+    private static boolean sameNames(Symbol before, Symbol after) {
+        if (before instanceof HCLBlock) {
+            return after instanceof HCLBlock && ((HCLBlock) before).blockNames.equals(((HCLBlock) after).blockNames);
+        }
+        return !(after instanceof HCLBlock) && before.getName().equals(after.getName());
+    }
+
+    private static String join(String path, Symbol symbol) {
+        if (symbol instanceof HCLBlock) {
+            for (String name : ((HCLBlock) symbol).blockNames) {
+                path = join(path, name);
+            }
+            return path;
+        }
+        return join(path, symbol.getName());
+    }
+
+    /* appends a name, quoting it where it would not read back as one segment of a query */
+    private static String join(String path, String name) {
+        boolean plain = !name.isEmpty() && !"*".equals(name);
+        for (int i = 0; i < name.length() && plain; i++) {
+            char c = name.charAt(i);
+            plain = c != '.' && c != '[' && c != ']' && c != '"';
+        }
+        if (!plain) {
+            return path + "[\"" + name + "\"]";
+        }
+        return path.isEmpty() ? name : path + "." + name;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import com.bertramlabs.plugins.hcl4j.symbols.GenericSymbol;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * The text of a HCL document together with its parsed configuration, kept in sync through
+ * incremental edits as made by an editor or language server. An edit only re-lexes the top level
+ * blocks and attributes it touches: lexing restarts at the end of the last unaffected top level
+ * symbol and stops as soon as it completes a symbol ending where an old one ended after the edit.
+ * The symbols that follow are reused and moved in place, so the cost of an edit depends on the
+ * size of the edited block rather than on the size of the document.
+ *
+ * <pre>
+ *     {@code
+ *     HCLDocument document = new HCLDocument(text);
+ *     HCLObject configuration = document.applyEdit(offset, removedLength, insertedText);
+ *     }
+ * </pre>
+ *
+ * <p>
+ * Reused symbols are shared with the configurations returned before, whose positions therefore
+ * only stay valid until the next edit. A document is not thread safe.
+ * </p>
+ *
+ * @author jstockall
+ */
+public class HCLDocument {
+
+    private final StringBuilder text;
+    private ArrayList<Symbol> roots;
+    private HCLObject configuration;
+    // set when an edit left the text unparseable, the next edit then parses it from scratch
+    private boolean stale;
+    private boolean openComment;
+    private int relexedLength;
+
+    /**
+     * @param input String input containing HCL syntax
+     *
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public HCLDocument(String input) throws HCLParserException, IOException {
+        text = new StringBuilder(input);
+        openComment = hasOpenComment(text);
+        parseAll();
+    }
+
+    /**
+     * Replaces part of the text and updates the configuration accordingly. The text is changed
+     * even if the result fails to parse, so that the document keeps following its editor.
+     *
+     * @param offset the character offset at which the edit starts
+     * @param removedLength the number of characters removed at the offset
+     * @param insertedText the text inserted at the offset, may be empty
+     * @return the updated configuration, with positions, lines and columns of the new text
+     *
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the edited syntax is invalid.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public HCLObject applyEdit(int offset, int removedLength, String insertedText)
+            throws HCLParserException, IOException {
+        int removedEnd = offset + removedLength;
+        if (offset < 0 || removedLength < 0 || removedEnd > text.length()) {
+            throw new IndexOutOfBoundsException(
+                    "Edit " + offset + "+" + removedLength + " outside of document of length " + text.length());
+        }
+        boolean commentMarkers = touchesCommentMarkers(offset, removedEnd, insertedText);
+        if (stale || openComment) {
+            text.replace(offset, removedEnd, insertedText);
+            if (commentMarkers) {
+                openComment = hasOpenComment(text);
+            }
+            parseAll();
+            return configuration;
+        }
+        int delta = insertedText.length() - removedLength;
+        int lineDelta = countLines(insertedText, 0, insertedText.length()) - countLines(text, offset, removedEnd);
+
+        // lexing restarts where the last top level symbol ending before the edit ends
+        int first = firstEndingAtOrAfter(offset);
+        int start = 0;
+        int line = 0;
+        if (first > 0) {
+            Symbol previous = roots.get(first - 1);
+            start = end(previous);
+            line = previous.getLine() + countLines(text, previous.getPosition(), start);
+        }
+        int column = start - lineStart(text, start);
+        text.replace(offset, removedEnd, insertedText);
+        if (commentMarkers && (openComment = hasOpenComment(text))) {
+            parseAll();
+            return configuration;
+        }
+
+        int editEnd = offset + insertedText.length();
+        ArrayList<Symbol> relexed = new ArrayList<Symbol>();
+        int next = first;
+        boolean resynchronized = false;
+        HCLLexer lexer = new HCLLexer(new TextReader(text, start));
+        lexer.setLocation(line, column, start);
+        try {
+            Symbol root;
+            while (!resynchronized && (root = lexer.yylex()) != null) {
+                relexed.add(root);
+                int end = end(root);
+                relexedLength = end - start;
+                if (end < editEnd) {
+                    continue;
+                }
+                // the old symbols overlapping this one are replaced by it
+                int oldEnd = end - delta;
+                while (next < roots.size() && roots.get(next).getPosition() < oldEnd) {
+                    next++;
+                }
+                resynchronized = next > first && end(roots.get(next - 1)) == oldEnd
+                        && (next == roots.size() || startsOnLaterLine(roots.get(next).getPosition() + delta, editEnd));
+            }
+        } catch (HCLParserException ex) {
+            stale = true;
+            throw ex;
+        }
+        if (!resynchronized) {
+            next = roots.size();
+            relexedLength = text.length() - start;
+        }
+
+        ArrayList<Symbol> updated = new ArrayList<Symbol>(first + relexed.size() + roots.size() - next);
+        updated.addAll(roots.subList(0, first));
+        updated.addAll(relexed);
+        for (Symbol root : roots.subList(next, roots.size())) {
+            ((GenericSymbol) root).shift(delta, lineDelta);
+            updated.add(root);
+        }
+        setRoots(updated);
+        return configuration;
+    }
+
+    public HCLObject getConfiguration() {
+        return configuration;
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * @return the number of characters lexed by the last parse or edit
+     */
+    public int getRelexedLength() {
+        return relexedLength;
+    }
+
+    private void parseAll() throws HCLParserException, IOException {
+        ArrayList<Symbol> parsed = new ArrayList<Symbol>();
+        HCLLexer lexer = new HCLLexer(new TextReader(text, 0));
+        Symbol root;
+        stale = true;
+        while ((root = lexer.yylex()) != null) {
+            parsed.add(root);
+        }
+        stale = false;
+        relexedLength = text.length();
+        setRoots(parsed);
+    }
+
+    private void setRoots(ArrayList<Symbol> roots) {
+        this.roots = roots;
+        this.configuration = new HCLObject(Collections.unmodifiableList(roots));
+    }
+
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = roots.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (end(roots.get(middle)) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private boolean startsOnLaterLine(int position, int from) {
+        for (int i = from; i < position; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the edit may create or break a "/*" or "*&#47;" sequence
+     */
+    private boolean touchesCommentMarkers(int offset, int removedEnd, String insertedText) {
+        for (int i = Math.max(0, offset - 1); i < Math.min(text.length(), removedEnd + 1); i++) {
+            if (text.charAt(i) == '/' || text.charAt(i) == '*') {
+                return true;
+            }
+        }
+        return insertedText.indexOf('/') >= 0 || insertedText.indexOf('*') >= 0;
+    }
+
+    /**
+     * An unterminated block comment is lexed as stray characters until some later edit terminates
+     * it, which changes the meaning of text far ahead of the edit. Documents that may contain one
+     * are parsed from scratch. As this scans the whole text it is only repeated for edits touching
+     * comment markers. Strings, interpolations and heredocs are skipped as the lexer skips them,
+     * so that a "/*" within a value such as {@code "arn:aws:s3:::bucket/*"} is not taken for a
+     * comment.
+     */
+    static boolean hasOpenComment(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            char next = i + 1 < length ? text.charAt(i + 1) : 0;
+            if (c == '#' || (c == '/' && next == '/')) {
+                i = lineEnd(text, i);
+            } else if (c == '/' && next == '*') {
+                i = indexOf(text, "*/", i + 2);
+                if (i < 0) {
+                    return true;
+                }
+                i += 2;
+            } else if (c == '"') {
+                i = doubleQuotedEnd(text, i + 1);
+            } else if (c == '\'') {
+                i = indexOf(text, "'", i + 1);
+                i = i < 0 ? length : i + 1;
+            } else if (c == '<' && next == '<') {
+                i = heredocEnd(text, i + 2);
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    /* the position after a double quoted string, whose interpolations count their braces as the lexer does */
+    private static int doubleQuotedEnd(CharSequence text, int i) {
+        int braces = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (braces > 0) {
+                braces += c == '{' ? 1 : c == '}' ? -1 : 0;
+            } else if (c == '\\') {
+                i++;
+            } else if (c == '$' && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                braces = 1;
+                i++;
+            } else if (c == '"') {
+                return i + 1;
+            } else if (c == '\n' || c == '\r') {
+                // the lexer does not continue a quoted string past the end of its line
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /* the position after a heredoc started by "<<", "<<-" or "<<~", up to the line holding only its marker */
+    private static int heredocEnd(CharSequence text, int i) {
+        if (i < text.length() && (text.charAt(i) == '-' || text.charAt(i) == '~' || text.charAt(i) == ' ')) {
+            i++;
+        }
+        int start = i;
+        while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_'
+                || text.charAt(i) == '-')) {
+            i++;
+        }
+        if (i == start) {
+            return i;
+        }
+        String marker = text.subSequence(start, i).toString();
+        i = lineEnd(text, i);
+        while (i < text.length()) {
+            int end = lineEnd(text, i);
+            if (text.subSequence(i, end).toString().trim().equals(marker)) {
+                return end;
+            }
+            i = end;
+        }
+        return i;
+    }
+
+    /* the position after the line terminator of the line at i */
+    private static int lineEnd(CharSequence text, int i) {
+        while (i < text.length() && text.charAt(i) != '\n' && text.charAt(i) != '\r') {
+            i++;
+        }
+        return i < text.length() ? i + 1 : i;
+    }
+
+    private static int indexOf(CharSequence text, String target, int from) {
+        if (text instanceof StringBuilder) {
+            return ((StringBuilder) text).indexOf(target, from);
+        }
+        return text.toString().indexOf(target, from);
+    }
+
+    private static int end(Symbol root) {
+        return root.getPosition() + root.getLength();
+    }
+
+    private static int countLines(CharSequence chars, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            char c = chars.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == chars.length() || chars.charAt(i + 1) != '\n'))) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static int lineStart(CharSequence chars, int position) {
+        int i = position;
+        while (i > 0 && chars.charAt(i - 1) != '\n' && chars.charAt(i - 1) != '\r') {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Reads the text from a position on, without copying it
+     */
+    private static final class TextReader extends Reader {
+        private final StringBuilder text;
+        private int next;
+
+        TextReader(StringBuilder text, int start) {
+            this.text = text;
+            this.next = start;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (next >= text.length()) {
+                return -1;
+            }
+            int count = Math.min(len, text.length() - next);
+            text.getChars(next, next + count, cbuf, off);
+            next += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
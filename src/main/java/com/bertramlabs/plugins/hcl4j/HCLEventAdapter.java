@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.List;
+
+/**
+ * Empty implementation of {@link HCLEventHandler} so handlers only need to override the events
+ * they are interested in.
+ *
+ * @author jstockall
+ */
+public class HCLEventAdapter implements HCLEventHandler {
+
+    @Override
+    public void startBlock(List<String> labels, int line, int column, int position) throws HCLParserException {
+    }
+
+    @Override
+    public void endBlock() throws HCLParserException {
+    }
+
+    @Override
+    public void startAttribute(String name, int line, int column, int position) throws HCLParserException {
+    }
+
+    @Override
+    public void endAttribute() throws HCLParserException {
+    }
+
+    @Override
+    public void startArray() throws HCLParserException {
+    }
+
+    @Override
+    public void endArray() throws HCLParserException {
+    }
+
+    @Override
+    public void startMap() throws HCLParserException {
+    }
+
+    @Override
+    public void mapKey(String key) throws HCLParserException {
+    }
+
+    @Override
+    public void endMap() throws HCLParserException {
+    }
+
+    @Override
+    public void scalar(String type, String value) throws HCLParserException {
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.List;
+
+/**
+ * Callback interface receiving the structure of a HCL document as it is lexed (SAX style). Events
+ * are delivered straight from the {@link HCLLexer} actions, so a handler that does not retain
+ * them parses in constant memory regardless of the size of the input.
+ *
+ * <p>
+ * Events arrive properly nested. An attribute is reported as {@code startAttribute}, followed by
+ * exactly one value ({@code scalar}, or a {@code startArray}/{@code startMap} ...
+ * {@code endArray}/{@code endMap} pair) and then {@code endAttribute}. Inside a map every value is
+ * preceded by a {@code mapKey} event.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     new HCLParser().parse(reader, new HCLEventAdapter() {
+ *         public void startBlock(List<String> labels, int line, int column, int position) {
+ *             System.out.println(labels);
+ *         }
+ *     });
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ * @see HCLEventAdapter
+ * @see HCLTreeBuilder
+ */
+public interface HCLEventHandler {
+
+    /**
+     * The header and opening brace of a block were read, e.g. {@code resource "aws_instance" "web"}
+     *
+     * @param labels the block type followed by its labels
+     * @param line the line the block header starts on
+     * @param column the column of the block type
+     * @param position the character offset of the block type
+     * @throws HCLParserException to abort the parse
+     */
+    void startBlock(List<String> labels, int line, int column, int position) throws HCLParserException;
+
+    /**
+     * The closing brace of the innermost open block was read
+     *
+     * @throws HCLParserException to abort the parse
+     */
+    void endBlock() throws HCLParserException;
+
+    /**
+     * An attribute assignment was read, its value follows
+     *
+     * @param name the attribute name
+     * @param line the line of the attribute name
+     * @param column the column of the attribute name
+     * @param position the character offset of the attribute name
+     * @throws HCLParserException to abort the parse
+     */
+    void startAttribute(String name, int line, int column, int position) throws HCLParserException;
+
+    /**
+     * The value of the current attribute is complete
+     *
+     * @throws HCLParserException to abort the parse
+     */
+    void endAttribute() throws HCLParserException;
+
+    void startArray() throws HCLParserException;
+
+    void endArray() throws HCLParserException;
+
+    void startMap() throws HCLParserException;
+
+    /**
+     * The key of the next value in the current map
+     *
+     * @param key the map key
+     * @throws HCLParserException to abort the parse
+     */
+    void mapKey(String key) throws HCLParserException;
+
+    void endMap() throws HCLParserException;
+
+    /**
+     * A scalar value of an attribute, array element or map entry
+     *
+     * @param type one of "string", "number" or "boolean"
+     * @param value the text of the value, with escapes resolved for strings
+     * @throws HCLParserException to abort the parse
+     */
+    void scalar(String type, String value) throws HCLParserException;
+}
@@ -1,22 +1,46 @@
 package com.bertramlabs.plugins.hcl4j;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
 import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
 
 public abstract class HCLExport {
 
     private final boolean quoteStrings;
+    private HCLMetricsListener metricsListener = HCLMetricsListener.NONE;
     
     protected HCLExport(boolean quoteStrings) {
         this.quoteStrings = quoteStrings;
     }
 
+    /**
+     * @param listener receives the {@link HCLMetrics} of every export from now on, or
+     *            {@link HCLMetricsListener#NONE} to stop measuring
+     */
+    public void setMetricsListener(HCLMetricsListener listener) {
+        this.metricsListener = listener == null ? HCLMetricsListener.NONE : listener;
+    }
+
+    public HCLMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /* reports an export that started at the given System.nanoTime() */
+    void exported(HCLMetrics.Operation operation, Path source, int symbols, long chars, long start) {
+        HCLMetrics metrics = new HCLMetrics(operation, source);
+        metrics.symbols = symbols;
+        metrics.chars = chars;
+        metrics.exportNanos = System.nanoTime() - start;
+        metricsListener.exported(metrics);
+    }
+
     protected List<Object> processArray(List<HCLValue> values) throws HCLParserException {
-        List<Object> results = new ArrayList<Object>();
+        List<Object> results = new ArrayList<Object>(values.size());
         for (HCLValue value : values) {
             results.add(processValue(value));
         }
@@ -26,35 +50,31 @@ public abstract class HCLExport {
     protected Map<String, Object> processMap(Map<String, HCLValue> values) throws HCLParserException {
         Map<String, Object> results = new LinkedHashMap<>();
 
-        for (String key : values.keySet()) {
-            results.put(key, processValue(values.get(key)));
+        for (Map.Entry<String, HCLValue> entry : values.entrySet()) {
+            results.put(entry.getKey(), processValue(entry.getValue()));
         }
         return results;
     }
 
     @SuppressWarnings("unchecked")
     protected Object processValue(HCLValue value) throws HCLParserException {
-        if (value.type.equals("string")) {
-            return quoteStrings ? String.format("\"%s\"", value.value) : value.value;
-        } else if (value.type.equals("boolean")) {
-            if (value.value.equals("true")) {
-                return new Boolean(true);
-            } else {
-                return new Boolean(false);
-            }
-        } else if (value.type.equals("number")) {
-            try {
-                Double numericalValue = Double.parseDouble((String) (value.value));
-                return numericalValue;
-            } catch (NumberFormatException ex) {
-                throw new HCLParserException("Error Parsing Numerical Value in HCL Attribute ", ex);
+        if (value.getType() == null) {
+            throw new HCLParserException("HCL Attribute value not recognized by parser (not implemented yet).");
+        }
+        switch (value.getType()) {
+        case STRING:
+            return quoteStrings ? "\"" + value.value + "\"" : value.value;
+        case BOOLEAN:
+            if (value instanceof HCLBoolean) {
+                return ((HCLBoolean) value).booleanValue();
             }
-        } else if (value.type.equals("array")) {
+            return Boolean.valueOf("true".equals(value.value));
+        case NUMBER:
+            return value.numberValue().doubleValue();
+        case ARRAY:
             return processArray((List<HCLValue>) value.value);
-        } else if (value.type.equals("map")) {
+        default:
             return processMap((Map<String, HCLValue>) value.value);
-        } else {
-            throw new HCLParserException("HCL Attribute value not recognized by parser (not implemented yet).");
         }
     }
 }
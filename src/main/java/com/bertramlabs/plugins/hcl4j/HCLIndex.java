@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Index of the root elements of a configuration by their labels, the block names of a block or
+ * the name of an attribute. Built by {@link HCLObject} on the first query.
+ *
+ * @author jstockall
+ */
+final class HCLIndex {
+
+    // roots whose labels start with the key, including those equal to it
+    private final Map<List<String>, List<Symbol>> byPrefix = new HashMap<>();
+    // roots whose labels equal the key
+    private final Map<List<String>, List<Symbol>> byLabels = new HashMap<>();
+    private final Map<Symbol, Integer> ordinals = new IdentityHashMap<>();
+    private final Comparator<Symbol> documentOrder = new Comparator<Symbol>() {
+        @Override
+        public int compare(Symbol first, Symbol second) {
+            return ordinals.get(first).compareTo(ordinals.get(second));
+        }
+    };
+
+    HCLIndex(Collection<Symbol> rootBlocks) {
+        for (Symbol root : rootBlocks) {
+            ordinals.put(root, ordinals.size());
+            List<String> labels;
+            if (root instanceof HCLBlock) {
+                labels = ((HCLBlock) root).blockNames;
+            } else if (root instanceof HCLAttribute) {
+                labels = Collections.singletonList(root.getName());
+            } else {
+                continue;
+            }
+            for (int length = 1; length <= labels.size(); length++) {
+                add(byPrefix, labels.subList(0, length), root);
+            }
+            add(byLabels, labels, root);
+        }
+    }
+
+    /**
+     * @param labels the leading labels of a query
+     * @return in document order, the roots whose labels start with the given ones and those whose
+     *         labels are shorter and start the given ones
+     */
+    List<Symbol> candidates(List<String> labels) {
+        List<Symbol> candidates = lookup(byPrefix, labels);
+        boolean sorted = true;
+        for (int length = 1; length < labels.size(); length++) {
+            List<Symbol> shorter = lookup(byLabels, labels.subList(0, length));
+            if (!shorter.isEmpty()) {
+                if (sorted) {
+                    candidates = new ArrayList<>(candidates);
+                    sorted = false;
+                }
+                candidates.addAll(shorter);
+            }
+        }
+        if (!sorted) {
+            Collections.sort(candidates, documentOrder);
+        }
+        return candidates;
+    }
+
+    private static List<Symbol> lookup(Map<List<String>, List<Symbol>> index, List<String> key) {
+        List<Symbol> roots = index.get(key);
+        return roots != null ? roots : Collections.<Symbol> emptyList();
+    }
+
+    private static void add(Map<List<String>, List<Symbol>> index, List<String> key, Symbol root) {
+        List<Symbol> roots = index.get(key);
+        if (roots == null) {
+            roots = new ArrayList<>(2);
+            index.put(key, roots);
+        }
+        roots.add(root);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event handler building the same Map/List/String/Double/Boolean structure as {@link HCL2Map}
+ * straight from the lexer, without the intermediate symbol tree. Blocks are merged exactly as
+ * {@link HCL2Map} merges them.
+ *
+ * @author jstockall
+ * @see HCLParser#parseToMap(java.io.Reader)
+ */
+@SuppressWarnings("unchecked")
+public class HCLMapBuilder implements HCLEventHandler {
+
+    private final Map<String, Object> result = new LinkedHashMap<>();
+    // the maps of the open blocks, the document itself at the bottom
+    private final ArrayList<Map<String, Object>> blocks = new ArrayList<>();
+    // the open arrays and maps of the current attribute value
+    private final ArrayList<Object> containers = new ArrayList<>();
+    private String attributeName;
+    private String mapKey;
+
+    public HCLMapBuilder() {
+        blocks.add(result);
+    }
+
+    /**
+     * @return the document parsed so far
+     */
+    public Map<String, Object> getResult() {
+        return result;
+    }
+
+    @Override
+    public void startBlock(List<String> labels, int line, int column, int position) throws HCLParserException {
+        blocks.add(HCL2Map.blockMap(labels, blocks.get(blocks.size() - 1)));
+    }
+
+    @Override
+    public void endBlock() {
+        blocks.remove(blocks.size() - 1);
+    }
+
+    @Override
+    public void startAttribute(String name, int line, int column, int position) {
+        attributeName = name;
+    }
+
+    @Override
+    public void endAttribute() {
+        attributeName = null;
+    }
+
+    @Override
+    public void startArray() {
+        open(new ArrayList<Object>());
+    }
+
+    @Override
+    public void endArray() {
+        containers.remove(containers.size() - 1);
+    }
+
+    @Override
+    public void startMap() {
+        open(new LinkedHashMap<String, Object>());
+    }
+
+    @Override
+    public void mapKey(String key) {
+        mapKey = key;
+    }
+
+    @Override
+    public void endMap() {
+        containers.remove(containers.size() - 1);
+    }
+
+    @Override
+    public void scalar(String type, String value) throws HCLParserException {
+        if ("number".equals(type)) {
+            try {
+                add(Double.parseDouble(value));
+            } catch (NumberFormatException ex) {
+                throw new HCLParserException("Error Parsing Numerical Value in HCL Attribute ", ex);
+            }
+        } else if ("boolean".equals(type)) {
+            add(Boolean.valueOf("true".equals(value)));
+        } else {
+            add(value);
+        }
+    }
+
+    private void open(Object container) {
+        add(container);
+        containers.add(container);
+    }
+
+    private void add(Object value) {
+        if (containers.isEmpty()) {
+            blocks.get(blocks.size() - 1).put(attributeName, value);
+            return;
+        }
+        Object container = containers.get(containers.size() - 1);
+        if (container instanceof Map) {
+            ((Map<String, Object>) container).put(mapKey, value);
+            mapKey = null;
+        } else {
+            ((List<Object>) container).add(value);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.nio.file.Path;
+
+/**
+ * Measurements of one parse or export, handed to a {@link HCLMetricsListener}. Counts that do not
+ * apply to the operation are 0, sizes that are not known are -1.
+ *
+ * @author jstockall
+ */
+public final class HCLMetrics {
+
+    /**
+     * What was measured
+     */
+    public enum Operation {
+        /** {@link HCLParser#parse(java.io.Reader)} and the other methods building the tree */
+        PARSE,
+        /** {@link HCLParser#parseLazy(String)}, only the top level is built */
+        PARSE_LAZY,
+        /** {@link HCLParser#parse(java.io.Reader, HCLEventHandler)}, building is done by the handler */
+        PARSE_EVENTS,
+        /** {@link HCLParser#parseJson(java.io.Reader)} and the parse of {@code .json} files */
+        PARSE_JSON,
+        /** {@link HCL2Map#toMap(HCLObject)} */
+        TO_MAP,
+        /** {@link HCL2String#toHcl(HCLObject)} */
+        TO_HCL,
+        /** {@link HCL2Json#toJson(HCLObject, Appendable)} */
+        TO_JSON
+    }
+
+    final Operation operation;
+    final Path source;
+    long bytes = -1;
+    long chars = -1;
+    long tokens;
+    long stateTransitions;
+    long symbols;
+    int maxDepth;
+    long lexNanos;
+    long buildNanos;
+    long exportNanos;
+    Exception error;
+
+    HCLMetrics(Operation operation, Path source) {
+        this.operation = operation;
+        this.source = source;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the file parsed or exported, null if it was not a single file
+     */
+    public Path getSource() {
+        return source;
+    }
+
+    /**
+     * @return the number of bytes parsed, -1 when the input was characters or a stream
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of characters lexed, or of text written by an export to HCL or JSON
+     */
+    public long getChars() {
+        return chars;
+    }
+
+    /**
+     * @return the number of events the lexer delivered: block and attribute starts and ends, map
+     *         keys, collection starts and ends and scalar values
+     */
+    public long getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the number of times the lexer changed its lexical state, 0 for the JSON syntax
+     */
+    public long getStateTransitions() {
+        return stateTransitions;
+    }
+
+    /**
+     * @return the number of blocks, attributes and values read, or of root elements exported
+     */
+    public long getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the deepest nesting of blocks, arrays and maps read
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the time spent lexing the input, not counting the time spent building. It includes
+     *         the cost of measuring the parse, which adds about 5% to its time.
+     */
+    public long getLexNanos() {
+        return lexNanos;
+    }
+
+    /**
+     * The handler is timed for a random sample of about one lexer event in 32, as timing every
+     * event would cost more than most events take. The estimate is unbiased but varies by about
+     * 20% between parses of the same 1MB input, and more for inputs of a few hundred events.
+     *
+     * @return an estimate of the time spent building the symbol tree or in the event handler of a
+     *         parse
+     */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * @return the time an export took
+     */
+    public long getExportNanos() {
+        return exportNanos;
+    }
+
+    /**
+     * @return why the parse failed, null if it succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("HCLMetrics [").append(operation);
+        if (source != null) {
+            sb.append(", source=").append(source);
+        }
+        if (operation == Operation.TO_MAP || operation == Operation.TO_HCL || operation == Operation.TO_JSON) {
+            sb.append(", symbols=").append(symbols).append(", chars=").append(chars)
+                    .append(", exportNanos=").append(exportNanos);
+        } else {
+            sb.append(", bytes=").append(bytes).append(", chars=").append(chars).append(", tokens=").append(tokens)
+                    .append(", stateTransitions=").append(stateTransitions).append(", symbols=").append(symbols)
+                    .append(", maxDepth=").append(maxDepth).append(", lexNanos=").append(lexNanos)
+                    .append(", buildNanos=").append(buildNanos);
+        }
+        if (error != null) {
+            sb.append(", error=").append(error.getMessage());
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+/**
+ * Receives the {@link HCLMetrics} of every parse and export, e.g. to feed a metrics registry or
+ * to log inputs that are slow to lex. Parses of several files may run concurrently, so
+ * implementations must be thread safe.
+ *
+ * <p>
+ * Nothing is measured while the listener is {@link #NONE}, the default of {@link HCLParser},
+ * {@link HCL2Map} and {@link HCL2String}.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     parser.setMetricsListener(new HCLMetricsListener() {
+ *         public void parsed(HCLMetrics metrics) {
+ *             if (metrics.getLexNanos() > 100000000L) {
+ *                 log.warn("Slow to lex: " + metrics);
+ *             }
+ *         }
+ *
+ *         public void exported(HCLMetrics metrics) {
+ *         }
+ *     });
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public interface HCLMetricsListener {
+
+    /** Ignores all metrics, so that none are collected */
+    HCLMetricsListener NONE = new HCLMetricsListener() {
+        @Override
+        public void parsed(HCLMetrics metrics) {
+        }
+
+        @Override
+        public void exported(HCLMetrics metrics) {
+        }
+    };
+
+    /**
+     * A parse ended, successfully or with {@link HCLMetrics#getError()}
+     *
+     * @param metrics what was read and how long it took
+     */
+    void parsed(HCLMetrics metrics);
+
+    /**
+     * A configuration was converted to a map or to HCL text
+     *
+     * @param metrics what was exported and how long it took
+     */
+    void exported(HCLMetrics metrics);
+}
@@ -15,20 +15,472 @@
  */
 package com.bertramlabs.plugins.hcl4j;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.bertramlabs.plugins.hcl4j.symbols.GenericSymbol;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
 import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
 
+/**
+ * The top level elements of a configuration, and the file(s) they were parsed from.
+ *
+ * <p>
+ * A configuration can be made read only with {@link #freeze()}, after which it may be shared
+ * between threads without copying or locking. The {@code with} and {@code without} methods of a
+ * frozen configuration return a changed copy of it. Only the blocks on the path to the change are
+ * copied, all other symbols are shared between the configurations, so patching one attribute
+ * costs the depth of the attribute rather than the size of the configuration. A shared symbol
+ * keeps the parent it had in the configuration it was first frozen in.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     HCLObject shared = new HCLParser().parse(file).freeze();
+ *     HCLObject patched = shared.with("resource.aws_instance.web.ami", new HCLValue("string", "ami-2"));
+ *     }
+ * </pre>
+ */
 public class HCLObject {
     
     private final Collection<Symbol> rootBlocks;
+    private final Path source;
+    private final List<HCLObject> files;
+    private final Map<Symbol, HCLObject> fileOfRoot;
+    private final boolean frozen;
+    private volatile HCLIndex index;
 
     public HCLObject(Collection<Symbol> rootElements) {
+        this(rootElements, null);
+    }
+
+    /**
+     * @param rootElements the top level elements of the configuration
+     * @param source the file the elements were parsed from
+     */
+    public HCLObject(Collection<Symbol> rootElements, Path source) {
+        this.rootBlocks = rootElements;
+        this.source = source;
+        this.files = Collections.singletonList(this);
+        this.fileOfRoot = null;
+        this.frozen = false;
+    }
+
+    private HCLObject(Collection<Symbol> rootElements, List<HCLObject> files, Map<Symbol, HCLObject> fileOfRoot) {
         this.rootBlocks = rootElements;
+        this.source = null;
+        this.files = files;
+        this.fileOfRoot = fileOfRoot;
+        this.frozen = false;
+    }
+
+    /* a frozen configuration over frozen root elements */
+    private HCLObject(List<Symbol> rootElements, Path source, List<HCLObject> files, Map<Symbol, HCLObject> fileOfRoot) {
+        this.rootBlocks = Collections.unmodifiableList(rootElements);
+        this.source = source;
+        this.files = fileOfRoot == null ? Collections.<HCLObject>singletonList(this) : files;
+        this.fileOfRoot = fileOfRoot;
+        this.frozen = true;
+    }
+
+    /**
+     * Combines separately parsed files into one configuration. The root elements keep the order
+     * of the files and the order within each file.
+     * 
+     * @param files the per file configurations in the order they should be merged
+     * @return a configuration holding the root elements of all files
+     */
+    public static HCLObject merge(List<HCLObject> files) {
+        List<Symbol> rootElements = new ArrayList<Symbol>();
+        Map<Symbol, HCLObject> fileOfRoot = new IdentityHashMap<Symbol, HCLObject>();
+        for (HCLObject file : files) {
+            for (Symbol root : file.getRootBlocks()) {
+                rootElements.add(root);
+                fileOfRoot.put(root, file);
+            }
+        }
+        return new HCLObject(rootElements, Collections.unmodifiableList(new ArrayList<HCLObject>(files)), fileOfRoot);
+    }
+
+    /**
+     * Makes the symbols of this configuration read only, see {@link GenericSymbol#freeze()}. The
+     * symbols are frozen in place rather than copied, so they can no longer be changed through
+     * this configuration either, nor through the {@link HCLDocument} they came from.
+     *
+     * @return a read only configuration of the same root elements, this configuration if it is
+     *         frozen already
+     */
+    public HCLObject freeze() {
+        if (frozen) {
+            return this;
+        }
+        for (Symbol root : rootBlocks) {
+            freeze(root);
+        }
+        return new HCLObject(new ArrayList<Symbol>(rootBlocks), source, files, fileOfRoot);
+    }
+
+    /**
+     * @return whether this configuration and its symbols are read only, see {@link #freeze()}
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Sets the value of an attribute in a frozen copy of this configuration, adding the attribute
+     * to the end of its block if it is missing. Note that unless this configuration is frozen
+     * already, its symbols are frozen in place, as by {@link #freeze()}, and cannot be changed
+     * afterwards through this configuration or anything else holding them. Its root element
+     * collection is left unchanged.
+     *
+     * @param path the names of the blocks and the attribute, e.g.
+     *            {@code resource.aws_instance.web.ami}. Where several blocks have the same names,
+     *            the first one is changed.
+     * @param value the new value, which is frozen
+     * @return the changed configuration
+     *
+     * @throws HCLParserException
+     *             If the path is malformed or has wildcards, or the block it names does not exist
+     */
+    public HCLObject with(String path, HCLValue value) throws HCLParserException {
+        HCLObject base = freeze();
+        List<String> names = names(path);
+        String name = names.get(names.size() - 1);
+        int[] steps = base.locate(names, names.size(), true);
+        HCLAttribute attribute;
+        if (steps != null) {
+            Symbol existing = base.symbolAt(steps);
+            attribute = new HCLAttribute(name, value, location(existing.getLine()), location(existing.getColumn()),
+                    location(existing.getPosition()));
+            attribute.setLength(existing.getLength());
+        } else {
+            steps = names.size() == 1 ? new int[0] : base.locate(names, names.size() - 1, false);
+            if (steps == null) {
+                throw new HCLParserException("No block " + names.subList(0, names.size() - 1) + " to set " + path + " in");
+            }
+            // appended after the last child of the block
+            Collection<Symbol> siblings = steps.length == 0 ? base.rootBlocks : base.symbolAt(steps).getChildren();
+            steps = Arrays.copyOf(steps, steps.length + 1);
+            steps[steps.length - 1] = siblings.size();
+            attribute = new HCLAttribute(name, value, -1, -1, -1);
+        }
+        return base.rewrite(steps, attribute);
+    }
+
+    /**
+     * Removes an attribute or block from a frozen copy of this configuration. Like
+     * {@link #with(String, HCLValue)}, this freezes the symbols of this configuration in place
+     * unless it is frozen already.
+     *
+     * @param path the names of the blocks and the attribute, or of the block to remove. Where
+     *            several blocks have the same names, the first one is removed.
+     * @return the changed configuration, or the frozen configuration if there is nothing to remove
+     *
+     * @throws HCLParserException
+     *             If the path is malformed or has wildcards
+     */
+    public HCLObject without(String path) throws HCLParserException {
+        HCLObject base = freeze();
+        List<String> names = names(path);
+        int[] steps = base.locate(names, names.size(), true);
+        if (steps == null) {
+            steps = base.locate(names, names.size(), false);
+        }
+        return steps == null ? base : base.rewrite(steps, null);
+    }
+
+    /**
+     * Applies a terraform override file to a frozen copy of this configuration. Like
+     * {@link #with(String, HCLValue)}, this freezes the symbols of this configuration in place
+     * unless it is frozen already, and it freezes those of the overrides too, which are shared
+     * with the result rather than copied.
+     *
+     * <ul>
+     * <li>a top level block of the overrides is merged in to the first block with the same names,
+     * or added if there is none</li>
+     * <li>the attributes of a merged block replace those of the same name, or are added</li>
+     * <li>the nested blocks of a merged block replace all nested blocks of the same type, in the
+     * place of the first of them</li>
+     * <li>top level attributes replace those of the same name, or are added</li>
+     * </ul>
+     *
+     * @param overrides the configuration of the override file
+     * @return the changed configuration
+     */
+    public HCLObject withOverrides(HCLObject overrides) {
+        HCLObject base = freeze();
+        List<Symbol> roots = new ArrayList<Symbol>(base.rootBlocks);
+        Map<Symbol, HCLObject> fileOfRoots = base.fileOfRoot == null ? null
+                : new IdentityHashMap<Symbol, HCLObject>(base.fileOfRoot);
+        for (Symbol override : overrides.getRootBlocks()) {
+            int index = indexOf(roots, override);
+            Symbol replacement = override;
+            if (index < 0) {
+                roots.add(override);
+            } else {
+                Symbol existing = roots.get(index);
+                if (existing instanceof HCLBlock && override instanceof HCLBlock) {
+                    replacement = merge((HCLBlock) existing, (HCLBlock) override);
+                }
+                roots.set(index, replacement);
+                if (fileOfRoots != null) {
+                    fileOfRoots.put(replacement, fileOfRoots.remove(existing));
+                }
+            }
+            freeze(replacement);
+        }
+        return new HCLObject(roots, base.source, base.files, fileOfRoots);
     }
 
     public Collection<Symbol> getRootBlocks() {
         return rootBlocks;
     }
 
+    /**
+     * @return the file this configuration was parsed from, null if it was not parsed from a single
+     *         file
+     */
+    public Path getSource() {
+        return source;
+    }
+
+    /**
+     * @return the per file configurations of a merged configuration, or a list holding only this
+     *         configuration
+     */
+    public List<HCLObject> getFiles() {
+        return files;
+    }
+
+    /**
+     * @param root one of the root elements of this configuration
+     * @return the file the root element was parsed from, null if unknown
+     */
+    public Path getSource(Symbol root) {
+        if (fileOfRoot == null) {
+            return source;
+        }
+        HCLObject file = fileOfRoot.get(root);
+        return file != null ? file.getSource() : null;
+    }
+
+    /**
+     * @return the index of the root elements by their labels, built on first use, null if this
+     *         configuration is not frozen and its root elements may still change
+     */
+    HCLIndex getIndex() {
+        if (!frozen) {
+            return null;
+        }
+        HCLIndex result = index;
+        if (result == null) {
+            index = result = new HCLIndex(rootBlocks);
+        }
+        return result;
+    }
+
+    private static List<String> names(String path) throws HCLParserException {
+        List<String> names = HCLQuery.compile(path).getNames();
+        if (names == null) {
+            throw new HCLParserException("Wildcards cannot be used to change '" + path + "'");
+        }
+        return names;
+    }
+
+    /*
+     * The index taken at each level to reach the first attribute or block named by the first
+     * count names, null if there is none
+     */
+    private int[] locate(List<String> names, int count, boolean attribute) {
+        int[] steps = new int[count];
+        int depth = locate(rootBlocks, names, 0, count, attribute, steps, 0);
+        return depth < 0 ? null : Arrays.copyOf(steps, depth);
+    }
+
+    private static int locate(Collection<Symbol> symbols, List<String> names, int offset, int count,
+            boolean attribute, int[] steps, int depth) {
+        int index = 0;
+        for (Symbol symbol : symbols) {
+            steps[depth] = index++;
+            if (symbol instanceof HCLBlock) {
+                List<String> labels = ((HCLBlock) symbol).blockNames;
+                int end = offset + labels.size();
+                if (end > count || !labels.equals(names.subList(offset, end))) {
+                    continue;
+                }
+                if (end < count) {
+                    int found = locate(symbol.getChildren(), names, end, count, attribute, steps, depth + 1);
+                    if (found >= 0) {
+                        return found;
+                    }
+                } else if (!attribute) {
+                    return depth + 1;
+                }
+            } else if (attribute && symbol instanceof HCLAttribute && offset == count - 1
+                    && names.get(offset).equals(symbol.getName())) {
+                return depth + 1;
+            }
+        }
+        return -1;
+    }
+
+    private Symbol symbolAt(int[] steps) {
+        Collection<Symbol> symbols = rootBlocks;
+        Symbol symbol = null;
+        for (int step : steps) {
+            symbol = ((List<Symbol>) symbols).get(step);
+            symbols = symbol.getChildren();
+        }
+        return symbol;
+    }
+
+    /*
+     * Copies the root elements and the blocks along the steps, replacing the symbol the last step
+     * leads to. A last step past the end of its block appends the replacement, a null replacement
+     * removes the symbol.
+     */
+    private HCLObject rewrite(int[] steps, Symbol replacement) {
+        List<Symbol> roots = new ArrayList<Symbol>(rootBlocks);
+        Symbol existing = steps[0] < roots.size() ? roots.get(steps[0]) : null;
+        Symbol root = rewrite(roots, steps, 0, null, replacement);
+        Map<Symbol, HCLObject> fileOfRoots = null;
+        if (fileOfRoot != null) {
+            fileOfRoots = new IdentityHashMap<Symbol, HCLObject>(fileOfRoot);
+            HCLObject file = existing != null ? fileOfRoots.remove(existing) : null;
+            if (root != null && file != null) {
+                fileOfRoots.put(root, file);
+            }
+        }
+        if (root != null) {
+            freeze(root);
+        }
+        return new HCLObject(roots, source, files, fileOfRoots);
+    }
+
+    private static Symbol rewrite(List<Symbol> symbols, int[] steps, int depth, HCLBlock parent, Symbol replacement) {
+        int index = steps[depth];
+        Symbol result = replacement;
+        if (depth < steps.length - 1) {
+            HCLBlock block = (HCLBlock) symbols.get(index);
+            HCLBlock copy = copyOf(block, parent);
+            List<Symbol> children = new ArrayList<Symbol>(block.getChildren());
+            rewrite(children, steps, depth + 1, copy, replacement);
+            for (Symbol child : children) {
+                copy.appendChild(child);
+            }
+            result = copy;
+        } else if (replacement != null) {
+            replacement.setParent(parent);
+        }
+        if (index == symbols.size()) {
+            symbols.add(result);
+        } else if (result == null) {
+            symbols.remove(index);
+        } else {
+            symbols.set(index, result);
+        }
+        return result;
+    }
+
+    /*
+     * The attributes of the override replace those of the block, its nested blocks replace all
+     * nested blocks of the same type
+     */
+    private static HCLBlock merge(HCLBlock block, HCLBlock override) {
+        Map<String, Symbol> attributes = new LinkedHashMap<String, Symbol>();
+        Map<String, List<Symbol>> blocks = new LinkedHashMap<String, List<Symbol>>();
+        for (Symbol child : override.getChildren()) {
+            if (child instanceof HCLBlock) {
+                List<Symbol> ofType = blocks.get(child.getName());
+                if (ofType == null) {
+                    blocks.put(child.getName(), ofType = new ArrayList<Symbol>());
+                }
+                ofType.add(child);
+            } else {
+                attributes.put(child.getName(), child);
+            }
+        }
+        HCLBlock copy = copyOf(block, null);
+        Set<String> replacedBlocks = new HashSet<String>();
+        Set<String> replacedAttributes = new HashSet<String>();
+        for (Symbol child : block.getChildren()) {
+            if (child instanceof HCLBlock) {
+                List<Symbol> ofType = blocks.get(child.getName());
+                if (ofType == null) {
+                    copy.appendChild(child);
+                } else if (replacedBlocks.add(child.getName())) {
+                    appendAll(copy, ofType);
+                }
+            } else {
+                Symbol attribute = attributes.get(child.getName());
+                if (attribute == null) {
+                    copy.appendChild(child);
+                } else if (replacedAttributes.add(child.getName())) {
+                    copy.appendChild(attribute);
+                }
+            }
+        }
+        // what did not replace anything is added at the end
+        for (Symbol child : override.getChildren()) {
+            if (child instanceof HCLBlock) {
+                if (replacedBlocks.add(child.getName())) {
+                    appendAll(copy, blocks.get(child.getName()));
+                }
+            } else if (replacedAttributes.add(child.getName())) {
+                copy.appendChild(child);
+            }
+        }
+        return copy;
+    }
+
+    private static void appendAll(HCLBlock block, List<Symbol> children) {
+        for (Symbol child : children) {
+            block.appendChild(child);
+        }
+    }
+
+    private static HCLBlock copyOf(HCLBlock block, HCLBlock parent) {
+        HCLBlock copy = new HCLBlock(block.blockNames, parent, location(block.getLine()), location(block.getColumn()),
+                location(block.getPosition()));
+        copy.setLength(block.getLength());
+        for (Symbol attribute : block.getAttributes()) {
+            copy.appendAttribute(attribute);
+        }
+        return copy;
+    }
+
+    /* the index of the first root element with the names of the symbol */
+    private static int indexOf(List<Symbol> roots, Symbol symbol) {
+        for (int i = 0; i < roots.size(); i++) {
+            Symbol root = roots.get(i);
+            if (symbol instanceof HCLBlock ? root instanceof HCLBlock
+                    && ((HCLBlock) root).blockNames.equals(((HCLBlock) symbol).blockNames)
+                    : root instanceof HCLAttribute && root.getName().equals(symbol.getName())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int location(Integer value) {
+        return value == null ? -1 : value;
+    }
+
+    private static void freeze(Symbol symbol) {
+        if (symbol instanceof GenericSymbol) {
+            ((GenericSymbol) symbol).freeze();
+        }
+    }
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opt-in cache of parse results, bounded by number of entries and by total weight (the size of
+ * the parsed source), evicting the least recently used entries first. Files are keyed on their
+ * path, modification time and size, strings on a SHA-256 hash of their content.
+ *
+ * <p>
+ * The cache is thread safe and the same {@link HCLObject} is handed to every caller, so cached
+ * configurations are frozen, see {@link HCLObject#freeze()}: neither their root element
+ * collection nor their symbols can be changed, and {@link HCLObject#with(String, HCLValue)} copies
+ * them rather than freezing them from several threads at once. Two threads missing on the same
+ * key at once may both parse it; the first result stored wins. Given an {@link HCLValuePool}, the
+ * cached configurations are interned into it as well, so that the values repeated across files
+ * are held once.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     HCLParseCache cache = new HCLParseCache(1000, 64 * 1024 * 1024);
+ *     HCLObject configuration = cache.parse(Paths.get("main.tf"));
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public class HCLParseCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HCLParser parser;
+    private final HCLValuePool pool;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries the maximum number of cached configurations
+     * @param maxWeight the maximum total size, in bytes or characters, of the cached sources
+     */
+    public HCLParseCache(int maxEntries, long maxWeight) {
+        this(new HCLParser(), maxEntries, maxWeight);
+    }
+
+    /**
+     * @param parser parses the entries that are missing
+     * @param maxEntries the maximum number of cached configurations
+     * @param maxWeight the maximum total size, in bytes or characters, of the cached sources
+     */
+    public HCLParseCache(HCLParser parser, int maxEntries, long maxWeight) {
+        this(parser, null, maxEntries, maxWeight);
+    }
+
+    /**
+     * @param parser parses the entries that are missing
+     * @param pool interns the values of the parsed configurations, null not to intern them
+     * @param maxEntries the maximum number of cached configurations
+     * @param maxWeight the maximum total size, in bytes or characters, of the cached sources
+     */
+    public HCLParseCache(HCLParser parser, HCLValuePool pool, int maxEntries, long maxWeight) {
+        this.parser = parser;
+        this.pool = pool;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached configuration of a file, parsing it (UTF-8) if it is not cached or its
+     * modification time or size changed.
+     *
+     * @param file the file to parse
+     * @return the shared, read only configuration
+     *
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid. Failures are not cached.
+     * @throws IOException
+     *             In the event the file cannot be read this exception is thrown.
+     */
+    public HCLObject parse(Path file) throws HCLParserException, IOException {
+        Path path = file.toAbsolutePath().normalize();
+        long size = Files.size(path);
+        FileKey key = new FileKey(path, Files.getLastModifiedTime(path).toMillis(), size);
+        HCLObject cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return put(key, parser.parse(path), size);
+    }
+
+    /**
+     * Returns the cached configuration of a piece of HCL text, parsing it if no text with the same
+     * content hash was cached.
+     *
+     * @param input String input containing HCL syntax
+     * @return the shared, read only configuration
+     *
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid. Failures are not cached.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public HCLObject parse(String input) throws HCLParserException, IOException {
+        ContentKey key = new ContentKey(sha256(input));
+        HCLObject cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return put(key, parser.parse(input), input.length());
+    }
+
+    /**
+     * Removes the cached configuration of a file, whatever its modification time and size
+     *
+     * @param file the file to forget
+     */
+    public synchronized void invalidate(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, Entry> entry = it.next();
+            if (entry.getKey() instanceof FileKey && ((FileKey) entry.getKey()).path.equals(path)) {
+                weight -= entry.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total weight of the cached entries
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("HCLParseCache [size=%s, weight=%s, hits=%s, misses=%s, evictions=%s]", entries.size(),
+                weight, hitCount, missCount, evictionCount);
+    }
+
+    private synchronized HCLObject get(Object key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.configuration;
+    }
+
+    private HCLObject put(Object key, HCLObject parsed, long entryWeight) {
+        HCLObject configuration = pool != null ? pool.intern(parsed) : parsed.freeze();
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                return existing.configuration;
+            }
+            if (entryWeight > maxWeight || maxEntries <= 0) {
+                return configuration;
+            }
+            if (key instanceof FileKey) {
+                // an older version of the same file can never be hit again
+                invalidate(((FileKey) key).path);
+            }
+            entries.put(key, new Entry(configuration, entryWeight));
+            weight += entryWeight;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || weight > maxWeight) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictionCount++;
+            }
+        }
+        return configuration;
+    }
+
+    private static byte[] sha256(String input) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(input.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is required of every Java platform", ex);
+        }
+    }
+
+    private static final class Entry {
+        final HCLObject configuration;
+        final long weight;
+
+        Entry(HCLObject configuration, long weight) {
+            this.configuration = configuration;
+            this.weight = weight;
+        }
+    }
+
+    private static final class FileKey {
+        final Path path;
+        final long lastModified;
+        final long size;
+
+        FileKey(Path path, long lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileKey)) {
+                return false;
+            }
+            FileKey other = (FileKey) obj;
+            return path.equals(other.path) && lastModified == other.lastModified && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + (int) (lastModified ^ (lastModified >>> 32))) * 31 + (int) size;
+        }
+    }
+
+    private static final class ContentKey {
+        final byte[] hash;
+
+        ContentKey(byte[] hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ContentKey && Arrays.equals(hash, ((ContentKey) obj).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(hash);
+        }
+    }
+}
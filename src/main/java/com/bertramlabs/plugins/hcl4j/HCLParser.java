@@ -23,9 +23,26 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
 
@@ -48,6 +65,12 @@ import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
  *     HCLObject results = new HCLParser().parse(terraformFile);
  *     }
  * </pre>
+ *
+ * <p>
+ * A parser may be used by several threads at once. It keeps the lexers of finished parses for
+ * reuse, so an application parsing many small inputs should keep one parser rather than create one
+ * per input.
+ * </p>
  * 
  * @author David Estes (initial parser from https://github.com/bertramdev/hcl4j)
  * @author jstockall Refactored to expose raw symbols and to export back to HCL
@@ -55,8 +78,53 @@ import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
  */
 public class HCLParser {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Files at least this large are memory mapped rather than read */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
+    /** The most lexers kept for reuse, enough for one parse per processor at a time */
+    private static final int MAX_IDLE_LEXERS = Runtime.getRuntime().availableProcessors();
+
+    private final HCLSymbolTable symbols;
+    private volatile HCLMetricsListener metricsListener = HCLMetricsListener.NONE;
+    private final ArrayDeque<HCLLexer> idleLexers = new ArrayDeque<HCLLexer>();
+
+    /**
+     * Creates a parser with its own {@link HCLSymbolTable}, so the trees it builds share the
+     * strings of repeated names and short values.
+     */
     public HCLParser() {
+        this(new HCLSymbolTable());
+    }
 
+    /**
+     * @param symbols
+     *            The table names and short values are looked up in, it may be shared between
+     *            parsers. When null, every name and value is a new String.
+     */
+    public HCLParser(HCLSymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return the table names and short values are looked up in, null if there is none
+     */
+    public HCLSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * @param listener
+     *            Receives the {@link HCLMetrics} of every parse from now on, or
+     *            {@link HCLMetricsListener#NONE} to stop measuring
+     */
+    public void setMetricsListener(HCLMetricsListener listener) {
+        this.metricsListener = listener == null ? HCLMetricsListener.NONE : listener;
+    }
+
+    public HCLMetricsListener getMetricsListener() {
+        return metricsListener;
     }
 
     /**
@@ -79,7 +147,9 @@ public class HCLParser {
     }
 
     /**
-     * Parses terraform syntax as it comes from a File.
+     * Parses terraform syntax as it comes from a File. Files named {@code *.json}, e.g.
+     * {@code main.tf.json}, are read as the JSON syntax of terraform, see
+     * {@link #parseJson(Reader)}.
      * 
      * @param input
      *            A source file to process with a default charset of UTF-8
@@ -93,7 +163,7 @@ public class HCLParser {
      *             source this exception is thrown.
      */
     public HCLObject parse(File input) throws HCLParserException, IOException {
-        return parse(input, "UTF-8");
+        return parse(input.toPath(), UTF_8);
     }
 
     /**
@@ -114,19 +184,77 @@ public class HCLParser {
      *             source this exception is thrown.
      */
     public HCLObject parse(File input, Charset cs) throws HCLParserException, IOException {
-        InputStream is = null;
+        return parse(input.toPath(), cs);
+    }
+
+    /**
+     * Parses terraform syntax as it comes from a File with a default charset of UTF-8.
+     * 
+     * @param input
+     *            A source file to process
+     * @return Collection of top level elements in the configuration
+     * 
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the file cannot be read this exception is thrown.
+     * @see #parse(Path, Charset)
+     */
+    public HCLObject parse(Path input) throws HCLParserException, IOException {
+        return parse(input, UTF_8);
+    }
+
+    /**
+     * Parses terraform syntax as it comes from a File. Large files are memory mapped and decoded
+     * straight from the mapping into the lexer's buffer, without an intermediate stream or byte
+     * array. ASCII content of UTF-8, US-ASCII and ISO-8859-1 files is widened byte by byte
+     * without going through a {@link java.nio.charset.CharsetDecoder}. Files named
+     * {@code *.json} are read as the JSON syntax of terraform, see {@link #parseJson(Reader)}.
+     * 
+     * @param input
+     *            A source file to process
+     * @param cs
+     *            The charset of the file (default UTF-8)
+     * @return Collection of top level elements in the configuration
+     * 
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the file cannot be read this exception is thrown.
+     */
+    public HCLObject parse(Path input, Charset cs) throws HCLParserException, IOException {
+        if (cs == null) {
+            cs = UTF_8;
+        }
+        FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
         try {
-            is = new FileInputStream(input);
-            return parse(is, cs);
-        } finally {
-            if (is != null) {
-                is.close();
+            long size = channel.size();
+            ByteBuffer bytes;
+            if (size > Integer.MAX_VALUE) {
+                // beyond what a single mapping can hold, stream it instead
+                Reader reader = new InputStreamReader(Channels.newInputStream(channel), cs);
+                return new HCLObject(isJson(input) ? parseJson(reader, input, size) : parse(reader, input, size), input);
+            } else if (size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // the file may shrink while it is read
+                }
+                bytes.flip();
             }
+            Reader reader = new ByteBufferReader(bytes, cs);
+            return new HCLObject(isJson(input) ? parseJson(reader, input, size) : parse(reader, input, size), input);
+        } finally {
+            channel.close();
         }
     }
 
     /**
-     * Parses terraform syntax as it comes from a File.
+     * Parses terraform syntax as it comes from a File. Files named {@code *.json} are read as the
+     * JSON syntax of terraform, see {@link #parseJson(Reader)}.
      * 
      * @param input
      *            A source file to process
@@ -148,7 +276,11 @@ public class HCLParser {
         InputStream is = null;
         try {
             is = new FileInputStream(input);
-            return parse(is, charsetName);
+            if (isJson(input.toPath())) {
+                Reader reader = new InputStreamReader(is, charsetName != null ? charsetName : "UTF-8");
+                return new HCLObject(parseJson(reader, input.toPath(), input.length()), input.toPath());
+            }
+            return new HCLObject(parse(is, charsetName).getRootBlocks(), input.toPath());
         } finally {
             if (is != null) {
                 is.close();
@@ -257,13 +389,420 @@ public class HCLParser {
      *             source this exception is thrown.
      */
     public HCLObject parse(Reader reader) throws HCLParserException, IOException {
-        HCLLexer lexer = new HCLLexer(reader);
-        ArrayList<Symbol> rootBlocks = new ArrayList<Symbol>();
-        Symbol element;
-        while ((element = lexer.yylex()) != null) {
-            rootBlocks.add(element);
+        return new HCLObject(parse(reader, null, -1));
+    }
+
+    private List<Symbol> parse(Reader reader, Path source, long bytes) throws HCLParserException, IOException {
+        HCLLexer lexer = acquireLexer(reader);
+        try {
+            return lex(lexer, HCLMetrics.Operation.PARSE, source, bytes);
+        } finally {
+            releaseLexer(lexer);
+        }
+    }
+
+    /*
+     * Runs the lexer to the end of its input, returning the top level symbols it built. Measures
+     * the parse while a metrics listener is set.
+     */
+    private List<Symbol> lex(HCLLexer lexer, HCLMetrics.Operation operation, Path source, long bytes)
+            throws HCLParserException, IOException {
+        HCLMetricsListener listener = metricsListener;
+        HCLMetrics metrics = null;
+        MeasuringEventHandler measuring = null;
+        long start = 0;
+        if (listener != HCLMetricsListener.NONE) {
+            metrics = new HCLMetrics(operation, source);
+            metrics.bytes = bytes;
+            lexer.handler = measuring = new MeasuringEventHandler(lexer.handler, metrics);
+            start = System.nanoTime();
+        }
+        try {
+            ArrayList<Symbol> rootBlocks = new ArrayList<Symbol>();
+            Symbol element;
+            while ((element = lexer.yylex()) != null) {
+                rootBlocks.add(element);
+            }
+            return rootBlocks;
+        } catch (HCLParserException | IOException | RuntimeException ex) {
+            if (metrics != null) {
+                metrics.error = ex;
+            }
+            throw ex;
+        } finally {
+            if (metrics != null) {
+                long nanos = System.nanoTime() - start;
+                measuring.finish();
+                metrics.lexNanos = Math.max(0, nanos - metrics.buildNanos);
+                metrics.chars = lexer.tokenEnd();
+                metrics.stateTransitions = lexer.stateTransitions;
+                listener.parsed(metrics);
+            }
         }
+    }
+
+    /*
+     * Lexers are reused between parses, so that parsing many small inputs does not allocate a
+     * lexer buffer for each of them
+     */
+    private HCLLexer acquireLexer(Reader reader) {
+        HCLLexer lexer;
+        synchronized (idleLexers) {
+            lexer = idleLexers.poll();
+        }
+        if (lexer == null) {
+            lexer = new HCLLexer(reader);
+        } else {
+            lexer.reset(reader);
+        }
+        lexer.symbols = symbols;
+        return lexer;
+    }
+
+    private void releaseLexer(HCLLexer lexer) {
+        // drops the input and the symbols of the last parse
+        lexer.reset(null);
+        lexer.symbols = null;
+        synchronized (idleLexers) {
+            if (idleLexers.size() < MAX_IDLE_LEXERS) {
+                idleLexers.push(lexer);
+            }
+        }
+    }
+
+    /**
+     * Parses every {@code *.tf} and {@code *.tf.json} file of a directory (not its sub
+     * directories) concurrently, using one thread per available processor.
+     * 
+     * @param directory
+     *            A terraform module directory
+     * @return The files merged in file name order, see {@link #parseAll(Collection, ExecutorService)}
+     * 
+     * @throws HCLParserException
+     *             If any file fails to parse, after all files were attempted
+     * @throws IOException
+     *             If the directory cannot be listed
+     */
+    public HCLObject parseDirectory(Path directory) throws HCLParserException, IOException {
+        return parseAll(listConfigurationFiles(directory));
+    }
+
+    /**
+     * Parses every {@code *.tf} and {@code *.tf.json} file of a directory (not its sub
+     * directories) concurrently.
+     * 
+     * @param directory
+     *            A terraform module directory
+     * @param executor
+     *            Runs one parse task per file, it is not shut down
+     * @return The files merged in file name order, see {@link #parseAll(Collection, ExecutorService)}
+     * 
+     * @throws HCLParserException
+     *             If any file fails to parse, after all files were attempted
+     * @throws IOException
+     *             If the directory cannot be listed
+     */
+    public HCLObject parseDirectory(Path directory, ExecutorService executor) throws HCLParserException, IOException {
+        return parseAll(listConfigurationFiles(directory), executor);
+    }
+
+    /**
+     * Parses files concurrently, using one thread per available processor.
+     * 
+     * @param files
+     *            The files to parse (UTF-8), files named {@code *.json} in the JSON syntax
+     * @return The files merged in the given order, see {@link #parseAll(Collection, ExecutorService)}
+     * 
+     * @throws HCLParserException
+     *             If any file fails to parse, after all files were attempted
+     */
+    public HCLObject parseAll(Collection<Path> files) throws HCLParserException {
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            return parseAll(files, null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return parseAll(files, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses files concurrently, each file with its own lexer. The root elements of all files are
+     * merged in the order the files were given, {@link HCLObject#getSource(Symbol)} and
+     * {@link HCLObject#getFiles()} tell which file each came from.
+     * 
+     * @param files
+     *            The files to parse (UTF-8), files named {@code *.json} in the JSON syntax
+     * @param executor
+     *            Runs one parse task per file, it is not shut down. When null the files are
+     *            parsed on the calling thread.
+     * @return The merged configuration of all files
+     * 
+     * @throws HCLParserException
+     *             If any file fails to parse. Every file is attempted, the exception lists all
+     *             failures and carries each of them as a suppressed exception.
+     */
+    public HCLObject parseAll(Collection<Path> files, ExecutorService executor) throws HCLParserException {
+        List<Future<HCLObject>> results = new ArrayList<Future<HCLObject>>(files.size());
+        for (final Path file : files) {
+            Callable<HCLObject> task = new Callable<HCLObject>() {
+                @Override
+                public HCLObject call() throws Exception {
+                    return parse(file);
+                }
+            };
+            if (executor != null) {
+                results.add(executor.submit(task));
+            } else {
+                FutureTask<HCLObject> inline = new FutureTask<HCLObject>(task);
+                inline.run();
+                results.add(inline);
+            }
+        }
+
+        List<HCLObject> parsed = new ArrayList<HCLObject>(files.size());
+        List<Exception> errors = new ArrayList<Exception>();
+        StringBuilder message = new StringBuilder();
+        int index = 0;
+        for (Path file : files) {
+            try {
+                parsed.add(results.get(index++).get());
+            } catch (ExecutionException ex) {
+                Exception cause = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                errors.add(new HCLParserException(file + ": " + cause.getMessage(), cause));
+                message.append("\n  ").append(file).append(": ").append(cause.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new HCLParserException("Interrupted while parsing " + file, ex);
+            }
+        }
+        if (!errors.isEmpty()) {
+            HCLParserException failure = new HCLParserException(
+                    errors.size() + " of " + files.size() + " files failed to parse:" + message);
+            for (Exception error : errors) {
+                failure.addSuppressed(error);
+            }
+            throw failure;
+        }
+        return HCLObject.merge(parsed);
+    }
+
+    private List<Path> listConfigurationFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.{tf,tf.json}");
+        try {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Parses terraform configuration language from a String, reading only the headers of the top
+     * level blocks. The children of a block are lexed from the retained text when
+     * {@link Symbol#getChildren()} is first called on it, so parsing costs little more than
+     * scanning the text and blocks that are never visited are never built. The syntax of the whole
+     * input is checked as it is scanned.
+     * 
+     * @param input
+     *            String input containing HCL syntax
+     * @return Collection of top level elements in the configuration
+     * 
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public HCLObject parseLazy(String input) throws HCLParserException, IOException {
+        return new HCLObject(parseLazy(input, null, -1));
+    }
+
+    private List<Symbol> parseLazy(String input, Path source, long bytes) throws HCLParserException, IOException {
+        LazyTreeBuilder builder = new LazyTreeBuilder(input);
+        HCLLexer lexer = new HCLLexer(new StringReader(input), builder);
+        lexer.symbols = symbols;
+        builder.setLexer(lexer);
+        // the builder collects the top level elements
+        lex(lexer, HCLMetrics.Operation.PARSE_LAZY, source, bytes);
+        return builder.getRoots();
+    }
+
+    /**
+     * Parses terraform configuration language from a file lazily, see {@link #parseLazy(String)}.
+     * The text of the file is kept in memory until all of its blocks have been visited. Files
+     * named {@code *.json} are parsed in full, as {@link #parse(Path, Charset)} does.
+     * 
+     * @param input
+     *            The file containing HCL syntax
+     * @param cs
+     *            The character set of the file
+     * @return Collection of top level elements in the configuration
+     * 
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public HCLObject parseLazy(Path input, Charset cs) throws HCLParserException, IOException {
+        if (isJson(input)) {
+            return parse(input, cs);
+        }
+        byte[] bytes = Files.readAllBytes(input);
+        return new HCLObject(parseLazy(new String(bytes, cs), input, bytes.length), input);
+    }
+
+    /**
+     * Parses terraform configuration language from a Reader, delivering the structure to a handler
+     * as it is lexed instead of building the symbol tree. Memory use does not depend on the size
+     * of the input unless the handler retains what it is given.
+     * 
+     * @param reader
+     *            A reader object used for absorbing various streams or String
+     *            variables containing the hcl code
+     * @param handler
+     *            Receives the blocks, attributes and values in document order
+     * 
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid, or the handler aborted the parse.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public void parse(Reader reader, HCLEventHandler handler) throws HCLParserException, IOException {
+        HCLLexer lexer = new HCLLexer(reader, handler);
+        lexer.symbols = symbols;
+        // events are delivered to the handler, nothing is returned until the end of input
+        lex(lexer, HCLMetrics.Operation.PARSE_EVENTS, null, -1);
+    }
+
+    /**
+     * Parses terraform configuration language from a Reader straight in to the map
+     * {@code new HCL2Map().toMap(parse(reader))} returns, without building the symbol tree.
+     * 
+     * @param reader
+     *            A reader object used for absorbing various streams or String
+     *            variables containing the hcl code
+     * @return Mapped result of object tree coming from HCL (values of keys can be variable).
+     * 
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public Map<String, Object> parseToMap(Reader reader) throws HCLParserException, IOException {
+        HCLMapBuilder builder = new HCLMapBuilder();
+        parse(reader, builder);
+        return builder.getResult();
+    }
+
+    /**
+     * Parses the JSON syntax of terraform configurations, as found in {@code .tf.json} files,
+     * into the same symbols the equivalent HCL syntax gives. The JSON is read in a single pass
+     * without building a document of it first.
+     * 
+     * <p>
+     * Properties of the root object naming a block type of terraform ({@code resource},
+     * {@code data}, {@code variable}, {@code output}, {@code module}, {@code provider},
+     * {@code locals}, {@code terraform} ...) declare blocks, with one level of nested objects per
+     * label of the block type. An array of objects at any of these levels declares several blocks.
+     * All other properties are read as attributes, including those of block bodies, as nested
+     * blocks cannot be told apart from map values without the schema of the block. Properties
+     * named {@code "//"} are comments and skipped. A JSON {@code null} is read as a string value
+     * of null.
+     * </p>
+     * 
+     * @param reader
+     *            A reader of the JSON text
+     * @return Collection of top level elements in the configuration
+     * 
+     * @throws HCLParserException
+     *             If the input is not a JSON object
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public HCLObject parseJson(Reader reader) throws HCLParserException, IOException {
+        return new HCLObject(parseJson(reader, null, -1));
+    }
+
+    /**
+     * Parses the JSON syntax of terraform configurations, delivering the structure to a handler
+     * as it is read instead of building the symbol tree. See {@link #parseJson(Reader)} and
+     * {@link #parse(Reader, HCLEventHandler)}.
+     * 
+     * @param reader
+     *            A reader of the JSON text
+     * @param handler
+     *            Receives the blocks, attributes and values in document order
+     * 
+     * @throws HCLParserException
+     *             If the input is not a JSON object, or the handler aborted the parse.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public void parseJson(Reader reader, HCLEventHandler handler) throws HCLParserException, IOException {
+        JsonLexer lexer = new JsonLexer(reader, handler);
+        lexer.symbols = symbols;
+        lexJson(lexer, null, -1);
+    }
+
+    private List<Symbol> parseJson(Reader reader, Path source, long bytes) throws HCLParserException, IOException {
+        JsonLexer lexer = new JsonLexer(reader);
+        lexer.symbols = symbols;
+        return lexJson(lexer, source, bytes);
+    }
+
+    /*
+     * Reads the JSON input, measuring it while a metrics listener is set
+     */
+    private List<Symbol> lexJson(JsonLexer lexer, Path source, long bytes) throws HCLParserException, IOException {
+        HCLMetricsListener listener = metricsListener;
+        HCLMetrics metrics = null;
+        MeasuringEventHandler measuring = null;
+        long start = 0;
+        if (listener != HCLMetricsListener.NONE) {
+            metrics = new HCLMetrics(HCLMetrics.Operation.PARSE_JSON, source);
+            metrics.bytes = bytes;
+            lexer.handler = measuring = new MeasuringEventHandler(lexer.handler, metrics);
+            start = System.nanoTime();
+        }
+        try {
+            return lexer.parse();
+        } catch (HCLParserException | IOException | RuntimeException ex) {
+            if (metrics != null) {
+                metrics.error = ex;
+            }
+            throw ex;
+        } finally {
+            if (metrics != null) {
+                long nanos = System.nanoTime() - start;
+                measuring.finish();
+                metrics.lexNanos = Math.max(0, nanos - metrics.buildNanos);
+                metrics.chars = lexer.tokenEnd();
+                listener.parsed(metrics);
+            }
+        }
+    }
 
-        return new HCLObject(rootBlocks);
+    private static boolean isJson(Path file) {
+        Path name = file.getFileName();
+        return name != null && name.toString().endsWith(".json");
     }
 }
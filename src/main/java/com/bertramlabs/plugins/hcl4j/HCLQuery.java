@@ -0,0 +1,274 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * A compiled path selecting blocks and values from a configuration. A path is a list of segments
+ * separated by dots, matched in turn against block names, attribute names, map keys and array
+ * indexes:
+ *
+ * <ul>
+ * <li>{@code name} or {@code ["name"]} matches a block name, attribute name or map key</li>
+ * <li>{@code *} or {@code [*]} matches any block name, map entry or array element</li>
+ * <li>{@code [0]} matches an array element by index</li>
+ * </ul>
+ *
+ * <p>
+ * A path ending within the names of a block selects the block, one ending at an attribute, map
+ * entry or array element selects its {@link HCLValue}.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     HCLQuery amis = HCLQuery.compile("resource.aws_instance[*].ami");
+ *     List<Object> values = amis.select(configuration);
+ *     }
+ * </pre>
+ *
+ * <p>
+ * The root elements of a frozen configuration are looked up through an index of their names
+ * built on the first query against it, so that repeated queries only visit the blocks they match.
+ * Those of a configuration that is not frozen may still change and are scanned on every query.
+ * Queries are immutable and may be shared between threads.
+ * </p>
+ *
+ * @author jstockall
+ */
+public final class HCLQuery {
+
+    private final String path;
+    private final Segment[] segments;
+    // the leading segments naming a single block name or attribute
+    private final List<String> literalPrefix;
+
+    private HCLQuery(String path, List<Segment> segments) {
+        this.path = path;
+        this.segments = segments.toArray(new Segment[segments.size()]);
+        List<String> prefix = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.name == null) {
+                break;
+            }
+            prefix.add(segment.name);
+        }
+        this.literalPrefix = prefix;
+    }
+
+    /**
+     * @param path the path to select, e.g. {@code resource.aws_instance[*].ami}
+     * @return the compiled query
+     *
+     * @throws HCLParserException
+     *             If the path is empty or malformed
+     */
+    public static HCLQuery compile(String path) throws HCLParserException {
+        List<Segment> segments = new ArrayList<>();
+        int i = 0;
+        int length = path.length();
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == '[') {
+                int close = path.indexOf(']', i);
+                if (close < 0) {
+                    throw invalid(path, i, "unterminated [");
+                }
+                segments.add(bracket(path, i + 1, close));
+                i = close + 1;
+            } else {
+                int end = i;
+                while (end < length && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == i) {
+                    throw invalid(path, i, "empty segment");
+                }
+                String name = path.substring(i, end);
+                segments.add("*".equals(name) ? Segment.WILDCARD : new Segment(name, index(name)));
+                i = end;
+            }
+            if (i < length && path.charAt(i) == '.') {
+                if (++i == length) {
+                    throw invalid(path, i, "empty segment");
+                }
+            } else if (i < length && path.charAt(i) != '[') {
+                throw invalid(path, i, "expected . or [");
+            }
+        }
+        if (segments.isEmpty()) {
+            throw invalid(path, 0, "empty segment");
+        }
+        return new HCLQuery(path, segments);
+    }
+
+    /**
+     * @param configuration the configuration to query
+     * @return in document order, the matching {@link HCLBlock}s and attribute {@link HCLValue}s
+     */
+    public List<Object> select(HCLObject configuration) {
+        List<Object> results = new ArrayList<>();
+        HCLIndex index = literalPrefix.isEmpty() ? null : configuration.getIndex();
+        Collection<Symbol> roots = index != null ? index.candidates(literalPrefix)
+                : configuration.getRootBlocks();
+        matchSymbols(roots, 0, results);
+        return results;
+    }
+
+    /**
+     * @param configuration the configuration to query
+     * @return the first match in document order, null if nothing matches
+     */
+    public Object selectFirst(HCLObject configuration) {
+        List<Object> results = select(configuration);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the names the path consists of, null if it has wildcards
+     */
+    List<String> getNames() {
+        return literalPrefix.size() == segments.length ? literalPrefix : null;
+    }
+
+    @Override
+    public String toString() {
+        return "HCLQuery [" + path + "]";
+    }
+
+    private void matchSymbols(Collection<Symbol> symbols, int segment, List<Object> results) {
+        for (Symbol symbol : symbols) {
+            if (symbol instanceof HCLBlock) {
+                matchBlock((HCLBlock) symbol, segment, results);
+            } else if (symbol instanceof HCLAttribute && segments[segment].matches(symbol.getName())) {
+                matchValue(symbol.getValue(), segment + 1, results);
+            }
+        }
+    }
+
+    private void matchBlock(HCLBlock block, int segment, List<Object> results) {
+        for (String name : block.blockNames) {
+            if (segment == segments.length) {
+                break;
+            }
+            if (!segments[segment].matches(name)) {
+                return;
+            }
+            segment++;
+        }
+        if (segment == segments.length) {
+            results.add(block);
+        } else {
+            matchSymbols(block.getChildren(), segment, results);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void matchValue(HCLValue value, int segment, List<Object> results) {
+        if (value == null) {
+            return;
+        }
+        if (segment == segments.length) {
+            results.add(value);
+            return;
+        }
+        Segment current = segments[segment];
+        if (value.getType() == HCLValue.Type.MAP) {
+            Map<String, HCLValue> map = (Map<String, HCLValue>) value.value;
+            if (current.name == null) {
+                for (HCLValue entry : map.values()) {
+                    matchValue(entry, segment + 1, results);
+                }
+            } else {
+                matchValue(map.get(current.name), segment + 1, results);
+            }
+        } else if (value.getType() == HCLValue.Type.ARRAY) {
+            List<HCLValue> array = (List<HCLValue>) value.value;
+            if (current.name == null) {
+                for (HCLValue element : array) {
+                    matchValue(element, segment + 1, results);
+                }
+            } else if (current.index >= 0 && current.index < array.size()) {
+                matchValue(array.get(current.index), segment + 1, results);
+            }
+        }
+    }
+
+    private static Segment bracket(String path, int start, int end) throws HCLParserException {
+        String content = path.substring(start, end).trim();
+        if ("*".equals(content)) {
+            return Segment.WILDCARD;
+        }
+        if (content.length() >= 2 && content.charAt(0) == '"' && content.charAt(content.length() - 1) == '"') {
+            String name = content.substring(1, content.length() - 1);
+            return new Segment(name, index(name));
+        }
+        int index = index(content);
+        if (index < 0) {
+            throw invalid(path, start, "expected *, an index or a quoted name");
+        }
+        return new Segment(content, index);
+    }
+
+    private static int index(String name) {
+        if (name.isEmpty() || name.length() > 9) {
+            return -1;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(name);
+    }
+
+    private static HCLParserException invalid(String path, int position, String reason) {
+        return new HCLParserException("Invalid query '" + path + "' at position " + position + ": " + reason);
+    }
+
+    /**
+     * A step of the path: a name, an index or a wildcard
+     */
+    private static final class Segment {
+        static final Segment WILDCARD = new Segment(null, -1);
+
+        // null for the wildcard
+        final String name;
+        // the array index named, -1 if the name is not a number
+        final int index;
+
+        Segment(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        boolean matches(String label) {
+            return name == null || name.equals(label);
+        }
+    }
+}
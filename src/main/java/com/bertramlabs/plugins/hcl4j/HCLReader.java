@@ -0,0 +1,333 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Pull based cursor over a HCL document (StAX style). Each call to {@link #next()} advances the
+ * {@link HCLLexer} just far enough to produce the next token, and {@link #skipChildren()} passes
+ * over a whole block or value without copying any of its text.
+ *
+ * <pre>
+ *     {@code
+ *     HCLReader reader = new HCLReader(new FileReader("main.tf"));
+ *     while (reader.next() != HCLReader.Token.END_DOCUMENT) {
+ *         if (reader.getToken() == HCLReader.Token.BLOCK_START && !reader.getLabels().get(0).equals("provider")) {
+ *             reader.skipChildren();
+ *         }
+ *     }
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public class HCLReader implements Closeable {
+
+    public enum Token {
+        /** A block header, see {@link HCLReader#getLabels()} */
+        BLOCK_START,
+        BLOCK_END,
+        /** An attribute assignment, see {@link HCLReader#getName()}. Its value follows */
+        ATTRIBUTE_NAME,
+        ATTRIBUTE_END,
+        ARRAY_START,
+        ARRAY_END,
+        MAP_START,
+        /** The key of the following map value, see {@link HCLReader#getName()} */
+        MAP_KEY,
+        MAP_END,
+        /** A scalar value, see {@link HCLReader#getValueType()} and {@link HCLReader#getText()} */
+        VALUE,
+        END_DOCUMENT
+    }
+
+    private final HCLLexer lexer;
+
+    // Lexer actions deliver at most a handful of events before suspending, kept in a reused ring
+    private Event[] queue = new Event[8];
+    private int head;
+    private int count;
+    private boolean endOfInput;
+    private int skipDepth;
+
+    private Token token;
+    private List<String> labels;
+    private String name;
+    private String valueType;
+    private String text;
+    private int line;
+    private int column;
+    private int position;
+
+    public HCLReader(String input) {
+        this(new StringReader(input));
+    }
+
+    /**
+     * @param reader the source of the HCL document. It is closed by {@link #close()}.
+     */
+    public HCLReader(Reader reader) {
+        lexer = new HCLLexer(reader, new Events());
+    }
+
+    /**
+     * Advances to the next token of the document
+     *
+     * @return the new current token, {@link Token#END_DOCUMENT} once the input is exhausted
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public Token next() throws HCLParserException, IOException {
+        while (count == 0) {
+            if (endOfInput || lexer.yylex() == null) {
+                endOfInput = true;
+                token = Token.END_DOCUMENT;
+                labels = null;
+                name = valueType = text = null;
+                return token;
+            }
+        }
+        Event event = queue[head];
+        head = (head + 1) % queue.length;
+        count--;
+        token = event.token;
+        labels = event.labels;
+        name = event.name;
+        valueType = event.valueType;
+        text = event.text;
+        line = event.line;
+        column = event.column;
+        position = event.position;
+        event.labels = null;
+        event.name = event.valueType = event.text = null;
+        return token;
+    }
+
+    /**
+     * When positioned on {@link Token#BLOCK_START}, {@link Token#ATTRIBUTE_NAME},
+     * {@link Token#ARRAY_START} or {@link Token#MAP_START}, advances to the matching end token
+     * without reporting or copying anything in between. Does nothing for other tokens.
+     *
+     * @throws HCLParserException
+     *             Any type of parsing errors are returned as this exception if
+     *             the syntax is invalid.
+     * @throws IOException
+     *             In the event the reader is unable to pull from the input
+     *             source this exception is thrown.
+     */
+    public void skipChildren() throws HCLParserException, IOException {
+        if (!isStart(token)) {
+            return;
+        }
+        int depth = 1;
+        // first consume whatever was already queued
+        while (count > 0 && depth > 0) {
+            depth += isStart(next()) ? 1 : isEnd(token) ? -1 : 0;
+        }
+        if (depth == 0) {
+            return;
+        }
+        // the rest is dropped by the handler as the lexer produces it, up to the matching end
+        skipDepth = depth;
+        lexer.discardText = true;
+        try {
+            next();
+        } finally {
+            skipDepth = 0;
+            lexer.discardText = false;
+        }
+    }
+
+    public Token getToken() {
+        return token;
+    }
+
+    /**
+     * @return the block type followed by its labels on {@link Token#BLOCK_START}
+     */
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return the attribute name on {@link Token#ATTRIBUTE_NAME} or the key on {@link Token#MAP_KEY}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return "string", "number" or "boolean" on {@link Token#VALUE}
+     */
+    public String getValueType() {
+        return valueType;
+    }
+
+    /**
+     * @return the text of the value on {@link Token#VALUE}
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the line of the current {@link Token#BLOCK_START} or {@link Token#ATTRIBUTE_NAME}
+     */
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lexer.yyclose();
+    }
+
+    private static boolean isStart(Token token) {
+        return token == Token.BLOCK_START || token == Token.ATTRIBUTE_NAME || token == Token.ARRAY_START
+                || token == Token.MAP_START;
+    }
+
+    private static boolean isEnd(Token token) {
+        return token == Token.BLOCK_END || token == Token.ATTRIBUTE_END || token == Token.ARRAY_END
+                || token == Token.MAP_END;
+    }
+
+    private Event enqueue(Token token) {
+        if (skipDepth > 0) {
+            skipDepth += isStart(token) ? 1 : isEnd(token) ? -1 : 0;
+            if (skipDepth > 0) {
+                return null;
+            }
+        }
+        if (count == queue.length) {
+            Event[] grown = new Event[queue.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = queue[(head + i) % queue.length];
+            }
+            queue = grown;
+            head = 0;
+        }
+        int index = (head + count) % queue.length;
+        if (queue[index] == null) {
+            queue[index] = new Event();
+        }
+        Event event = queue[index];
+        event.token = token;
+        count++;
+        lexer.suspend = true;
+        return event;
+    }
+
+    private static final class Event {
+        Token token;
+        List<String> labels;
+        String name;
+        String valueType;
+        String text;
+        int line;
+        int column;
+        int position;
+    }
+
+    private final class Events implements HCLEventHandler {
+
+        @Override
+        public void startBlock(List<String> labels, int line, int column, int position) {
+            Event event = enqueue(Token.BLOCK_START);
+            if (event != null) {
+                event.labels = labels;
+                event.line = line;
+                event.column = column;
+                event.position = position;
+            }
+        }
+
+        @Override
+        public void endBlock() {
+            enqueue(Token.BLOCK_END);
+        }
+
+        @Override
+        public void startAttribute(String name, int line, int column, int position) {
+            Event event = enqueue(Token.ATTRIBUTE_NAME);
+            if (event != null) {
+                event.name = name;
+                event.line = line;
+                event.column = column;
+                event.position = position;
+            }
+        }
+
+        @Override
+        public void endAttribute() {
+            enqueue(Token.ATTRIBUTE_END);
+        }
+
+        @Override
+        public void startArray() {
+            enqueue(Token.ARRAY_START);
+        }
+
+        @Override
+        public void endArray() {
+            enqueue(Token.ARRAY_END);
+        }
+
+        @Override
+        public void startMap() {
+            enqueue(Token.MAP_START);
+        }
+
+        @Override
+        public void mapKey(String key) {
+            Event event = enqueue(Token.MAP_KEY);
+            if (event != null) {
+                event.name = key;
+            }
+        }
+
+        @Override
+        public void endMap() {
+            enqueue(Token.MAP_END);
+        }
+
+        @Override
+        public void scalar(String type, String value) {
+            Event event = enqueue(Token.VALUE);
+            if (event != null) {
+                event.valueType = type;
+                event.text = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded table of the names and short values read by the lexer, so that every occurrence of
+ * {@code name}, {@code tags} or {@code "t2.micro"} in a configuration refers to one String
+ * instead of a copy per occurrence. Text is looked up straight from the lexer buffer, a String is
+ * only created the first time a text is seen.
+ *
+ * <p>
+ * Every {@link HCLParser} has its own table unless one is given to it, sharing a table between
+ * parsers also shares the strings of the trees they build. Once the table holds
+ * {@code maxEntries} strings new texts are no longer added, they are copied as they would be
+ * without a table. The table is thread safe. Lookups do not lock, so that the threads of
+ * {@link HCLParser#parseDirectory(java.nio.file.Path)} sharing the table of their parser do not
+ * wait for each other on every token: strings are added to empty slots by compare and set, and a
+ * table that grows is copied and replaced under a lock. A string added while the table is copied
+ * may be missed by the copy, it is then added again when it is next seen.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     HCLSymbolTable symbols = new HCLSymbolTable(64 * 1024, 64);
+ *     HCLParseCache cache = new HCLParseCache(new HCLParser(symbols), 1000, 64 * 1024 * 1024);
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public final class HCLSymbolTable {
+
+    public static final int DEFAULT_MAX_ENTRIES = 8192;
+    public static final int DEFAULT_MAX_LENGTH = 32;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int maxEntries;
+    private final int maxLength;
+    // open addressing, replaced by one of twice the size while more than half full so probes stay short
+    private volatile AtomicReferenceArray<String> table;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public HCLSymbolTable() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param maxEntries the maximum number of strings held
+     * @param maxLength texts longer than this are never looked up, they are rarely repeated
+     */
+    public HCLSymbolTable(int maxEntries, int maxLength) {
+        if (maxEntries < 1 || maxLength < 0) {
+            throw new IllegalArgumentException("maxEntries must be positive and maxLength not negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxLength = maxLength;
+        this.table = new AtomicReferenceArray<String>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param text the text to look up
+     * @return the String of the table equal to the text, the text itself if it is too long or the
+     *         table is full
+     */
+    public String intern(String text) {
+        if (text.length() > maxLength) {
+            return text;
+        }
+        return intern(null, text, 0, text.length(), text);
+    }
+
+    /**
+     * @return the String equal to {@code length} characters of the buffer from {@code offset}
+     */
+    String intern(char[] buffer, int offset, int length) {
+        if (length > maxLength) {
+            return new String(buffer, offset, length);
+        }
+        return intern(buffer, null, offset, length, null);
+    }
+
+    /**
+     * @return the String equal to the content of the builder
+     */
+    String intern(CharSequence builder) {
+        if (builder.length() > maxLength) {
+            return builder.toString();
+        }
+        return intern(null, builder, 0, builder.length(), null);
+    }
+
+    /**
+     * @return the number of strings held
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Forgets all strings, trees already built keep the strings they refer to.
+     */
+    public synchronized void clear() {
+        table = new AtomicReferenceArray<String>(INITIAL_CAPACITY);
+        size.set(0);
+    }
+
+    // reads from the buffer when given, from the character sequence otherwise
+    private String intern(char[] buffer, CharSequence chars, int offset, int length, String text) {
+        // the hash of String.hashCode(), which strings cache, so candidates are compared without hashing them again
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + (buffer != null ? buffer[i] : chars.charAt(i));
+        }
+        String result = text;
+        while (true) {
+            AtomicReferenceArray<String> current = table;
+            int mask = current.length() - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            String candidate;
+            int probes = 0;
+            while ((candidate = current.get(slot)) != null && probes++ <= mask) {
+                if (candidate.hashCode() == hash && equal(candidate, buffer, chars, offset, length)) {
+                    return candidate;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (result == null) {
+                result = buffer != null ? new String(buffer, offset, length) : chars.toString();
+            }
+            // a table filled by adds racing with its copy is left as it is
+            if (candidate != null || size.get() >= maxEntries) {
+                return result;
+            }
+            if (current.compareAndSet(slot, null, result)) {
+                if (size.incrementAndGet() * 2 > current.length()) {
+                    grow(current);
+                }
+                return result;
+            }
+            // another thread took the slot, possibly for the same text
+        }
+    }
+
+    private synchronized void grow(AtomicReferenceArray<String> full) {
+        if (table != full) {
+            return;
+        }
+        AtomicReferenceArray<String> larger = new AtomicReferenceArray<String>(full.length() * 2);
+        int mask = larger.length() - 1;
+        int count = 0;
+        for (int i = 0; i < full.length(); i++) {
+            String text = full.get(i);
+            if (text != null) {
+                int hash = text.hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (larger.get(slot) != null) {
+                    slot = (slot + 1) & mask;
+                }
+                larger.set(slot, text);
+                count++;
+            }
+        }
+        table = larger;
+        size.set(count);
+    }
+
+    private static boolean equal(String candidate, char[] buffer, CharSequence chars, int offset, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != (buffer != null ? buffer[offset + i] : chars.charAt(offset + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
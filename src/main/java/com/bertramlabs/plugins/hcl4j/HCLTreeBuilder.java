@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLArray;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLMap;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLNumber;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Event handler building the {@link HCLBlock}/{@link HCLAttribute}/{@link HCLValue} tree. This is
+ * the handler the {@link HCLLexer} uses by default; each completed top level symbol is handed
+ * back through {@link #takeCompleted()}.
+ *
+ * @author jstockall
+ */
+@SuppressWarnings("unchecked")
+public class HCLTreeBuilder implements HCLEventHandler {
+
+    private HCLBlock currentBlock;
+    private HCLAttribute attribute;
+    private HCLValue currentValue;
+    private String currentMapKey;
+    private Symbol completed;
+
+    /**
+     * @return the top level symbol completed by the last event, or null. Each symbol is only
+     *         returned once.
+     */
+    public Symbol takeCompleted() {
+        Symbol result = completed;
+        completed = null;
+        return result;
+    }
+
+    /**
+     * Forgets the symbols of a previous input, including one that ended in an error.
+     */
+    void reset() {
+        currentBlock = null;
+        attribute = null;
+        currentValue = null;
+        currentMapKey = null;
+        completed = null;
+    }
+
+    @Override
+    public void startBlock(List<String> labels, int line, int column, int position) {
+        HCLBlock block = new HCLBlock(labels, currentBlock, line, column, position);
+        if (currentBlock != null) {
+            currentBlock.appendChild(block);
+        }
+        currentBlock = block;
+    }
+
+    @Override
+    public void endBlock() {
+        HCLBlock block = currentBlock;
+        currentBlock = (HCLBlock) block.getParent();
+        if (currentBlock == null) {
+            completed = block;
+        }
+    }
+
+    @Override
+    public void startAttribute(String name, int line, int column, int position) {
+        attribute = new HCLAttribute(name, null, line, column, position);
+    }
+
+    @Override
+    public void endAttribute() {
+        if (currentBlock == null) {
+            completed = attribute;
+        } else {
+            attribute.setParent(currentBlock);
+            currentBlock.appendChild(attribute);
+        }
+        attribute = null;
+    }
+
+    @Override
+    public void startArray() {
+        HCLArray array = new HCLArray();
+        array.parentKey = currentMapKey;
+        open(array);
+    }
+
+    @Override
+    public void endArray() {
+        HCLArray array = (HCLArray) currentValue;
+        List<HCLValue> values = (List<HCLValue>) array.value;
+        if (values.isEmpty()) {
+            close(HCLArray.EMPTY, array.parentKey);
+        } else {
+            ((ArrayList<HCLValue>) values).trimToSize();
+            close(array, array.parentKey);
+        }
+    }
+
+    @Override
+    public void startMap() {
+        HCLMap map = new HCLMap();
+        map.parentKey = currentMapKey;
+        open(map);
+    }
+
+    @Override
+    public void mapKey(String key) {
+        currentMapKey = key;
+    }
+
+    @Override
+    public void endMap() {
+        HCLMap map = (HCLMap) currentValue;
+        close(((Map<String, HCLValue>) map.value).isEmpty() ? HCLMap.EMPTY : map, map.parentKey);
+    }
+
+    @Override
+    public void scalar(String type, String value) {
+        if ("number".equals(type)) {
+            add(HCLNumber.parse(value), currentMapKey);
+        } else if ("boolean".equals(type)) {
+            add(HCLBoolean.valueOf("true".equals(value)), currentMapKey);
+        } else {
+            add(new HCLValue(HCLValue.Type.STRING, value), currentMapKey);
+        }
+        currentMapKey = null;
+    }
+
+    /*
+     * Containers are added to their parent once complete, so that empty ones can be replaced by
+     * the shared instance
+     */
+    private void open(HCLValue container) {
+        container.parent = currentValue;
+        currentValue = container;
+        currentMapKey = null;
+    }
+
+    private void close(HCLValue container, String key) {
+        currentValue = currentValue.parent;
+        currentMapKey = null;
+        add(container, key);
+    }
+
+    private void add(HCLValue value, String key) {
+        if (currentValue == null) {
+            attribute.setValue(value);
+        } else if (currentValue instanceof HCLMap) {
+            ((HCLMap) currentValue).add(key, value);
+        } else {
+            ((HCLArray) currentValue).add(value);
+        }
+    }
+}
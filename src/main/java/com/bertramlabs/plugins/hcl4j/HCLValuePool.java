@@ -0,0 +1,379 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLArray;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLMap;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLNumber;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Pool of canonical attribute values, so that structurally equal values of any number of
+ * configurations, such as the same {@code tags} map or CIDR list repeated in every module, refer
+ * to one frozen instance instead of a copy per occurrence. Values are interned bottom up: the
+ * elements of a map or array are replaced by their canonical values first, so two containers are
+ * equal when their keys are and their elements are the same instances. Maps are only equal with
+ * their entries in the same order, so interned configurations are exported as before.
+ *
+ * <p>
+ * The pool only refers weakly to its values, a value is dropped from it once no configuration
+ * uses it anymore. Interned values are frozen and shared, a shared value keeps the parent of its
+ * first occurrence. The pool is thread safe and counts the bytes it saved, estimated from the
+ * shallow sizes of the instances it replaced on a 64 bit JVM with compressed references.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     HCLValuePool pool = new HCLValuePool();
+ *     HCLParseCache cache = new HCLParseCache(new HCLParser(), pool, 20000, 512 * 1024 * 1024);
+ *     HCLObject shared = pool.intern(new HCLParser().parse(file));
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public final class HCLValuePool {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // shallow sizes on a 64 bit JVM with compressed references, see countReplaced()
+    private static final int VALUE_BYTES = 40;
+    private static final int NUMBER_BYTES = 48;
+    private static final int CONTAINER_BYTES = 40;
+    private static final int UNMODIFIABLE_BYTES = 24;
+    private static final int ARRAY_LIST_BYTES = 24;
+    private static final int LINKED_HASH_MAP_BYTES = 56;
+    private static final int MAP_ENTRY_BYTES = 40;
+    private static final int ARRAY_BYTES = 16;
+    private static final int STRING_BYTES = 24;
+
+    private final ReferenceQueue<HCLValue> collected = new ReferenceQueue<HCLValue>();
+    // chained, as entries are unlinked when their value is collected
+    private Entry[] table = new Entry[INITIAL_CAPACITY];
+    private int size;
+    private long replacedCount;
+    private long savedBytes;
+
+    /**
+     * Replaces the attribute values of a configuration with their canonical values and freezes it.
+     *
+     * @param configuration a configuration that is not frozen yet
+     * @return the frozen configuration, see {@link HCLObject#freeze()}
+     * @throws IllegalArgumentException if the configuration is frozen already, its values can no
+     *             longer be replaced
+     */
+    public HCLObject intern(HCLObject configuration) {
+        if (configuration.isFrozen()) {
+            throw new IllegalArgumentException("A frozen configuration cannot be interned");
+        }
+        for (Symbol root : configuration.getRootBlocks()) {
+            intern(root);
+        }
+        return configuration.freeze();
+    }
+
+    /**
+     * @param value a value, of which the maps and arrays that are not frozen may be changed to
+     *            refer to canonical elements
+     * @return the frozen canonical value equal to the value, the value itself if it is the first
+     *         of its kind
+     */
+    public HCLValue intern(HCLValue value) {
+        if (value == null || value instanceof HCLBoolean || value == HCLArray.EMPTY || value == HCLMap.EMPTY) {
+            return value;
+        }
+        if (value instanceof HCLArray) {
+            value = internElements((HCLArray) value);
+        } else if (value instanceof HCLMap) {
+            value = internEntries((HCLMap) value);
+        }
+        HCLValue canonical = canonical(value, hash(value));
+        if (canonical != value) {
+            countReplaced(value, canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * @return the number of canonical values still in use
+     */
+    public synchronized int size() {
+        expunge();
+        return size;
+    }
+
+    /**
+     * @return the number of values, including elements of maps and arrays, replaced by a canonical
+     *         value
+     */
+    public synchronized long getReplacedCount() {
+        return replacedCount;
+    }
+
+    /**
+     * @return the estimated number of bytes of the values replaced by a canonical value
+     */
+    public synchronized long getSavedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * Forgets all values, configurations already interned keep sharing theirs.
+     */
+    public synchronized void clear() {
+        while (collected.poll() != null) {
+            // entries of the old table need no unlinking
+        }
+        table = new Entry[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("HCLValuePool [size=%s, replaced=%s, savedBytes=%s]", size, replacedCount, savedBytes);
+    }
+
+    private void intern(Symbol symbol) {
+        HCLValue value = symbol.getValue();
+        if (value != null) {
+            HCLValue canonical = intern(value);
+            if (canonical != value) {
+                symbol.setValue(canonical);
+            }
+        }
+        for (Symbol child : symbol.getChildren()) {
+            intern(child);
+        }
+    }
+
+    /* the elements of a frozen array cannot be replaced, it is copied if any of them differs */
+    @SuppressWarnings("unchecked")
+    private HCLValue internElements(HCLArray array) {
+        List<HCLValue> elements = (List<HCLValue>) array.value;
+        List<HCLValue> canonicals = array.isFrozen() ? new ArrayList<HCLValue>(elements.size()) : elements;
+        boolean changed = false;
+        for (int i = 0; i < elements.size(); i++) {
+            HCLValue element = elements.get(i);
+            HCLValue canonical = intern(element);
+            if (canonical != element) {
+                changed = true;
+            }
+            if (canonicals != elements) {
+                canonicals.add(canonical);
+            } else if (canonical != element) {
+                elements.set(i, canonical);
+            }
+        }
+        if (!changed || canonicals == elements) {
+            return array;
+        }
+        HCLArray copy = new HCLArray();
+        copy.parentKey = array.parentKey;
+        for (HCLValue canonical : canonicals) {
+            copy.add(canonical);
+        }
+        return copy;
+    }
+
+    /* as internElements(), the entries keep their order */
+    @SuppressWarnings("unchecked")
+    private HCLValue internEntries(HCLMap map) {
+        Map<String, HCLValue> entries = (Map<String, HCLValue>) map.value;
+        if (!map.isFrozen()) {
+            for (Map.Entry<String, HCLValue> entry : entries.entrySet()) {
+                HCLValue canonical = intern(entry.getValue());
+                if (canonical != entry.getValue()) {
+                    entry.setValue(canonical);
+                }
+            }
+            return map;
+        }
+        HCLMap copy = new HCLMap();
+        copy.parentKey = map.parentKey;
+        boolean changed = false;
+        for (Map.Entry<String, HCLValue> entry : entries.entrySet()) {
+            HCLValue canonical = intern(entry.getValue());
+            changed |= canonical != entry.getValue();
+            copy.add(entry.getKey(), canonical);
+        }
+        return changed ? copy : map;
+    }
+
+    /* looks the value up, adding it if it is the first of its kind */
+    private synchronized HCLValue canonical(HCLValue value, int hash) {
+        expunge();
+        int slot = hash & (table.length - 1);
+        for (Entry entry = table[slot]; entry != null; entry = entry.next) {
+            if (entry.hash == hash) {
+                HCLValue candidate = entry.get();
+                if (candidate != null && equal(candidate, value)) {
+                    return candidate;
+                }
+            }
+        }
+        // frozen before it is handed to another thread
+        value.freeze();
+        table[slot] = new Entry(value, hash, table[slot], collected);
+        if (++size > table.length - (table.length >>> 2)) {
+            grow();
+        }
+        return value;
+    }
+
+    private synchronized void countReplaced(HCLValue value, HCLValue canonical) {
+        replacedCount++;
+        // the elements of a container were counted as they were replaced
+        if (value instanceof HCLArray) {
+            int length = ((List<?>) value.value).size();
+            savedBytes += CONTAINER_BYTES + ARRAY_LIST_BYTES + align(ARRAY_BYTES + 4L * length)
+                    + (value.isFrozen() ? UNMODIFIABLE_BYTES : 0);
+        } else if (value instanceof HCLMap) {
+            int length = ((Map<?, ?>) value.value).size();
+            savedBytes += CONTAINER_BYTES + LINKED_HASH_MAP_BYTES + align(ARRAY_BYTES + 4L * capacity(length))
+                    + (long) MAP_ENTRY_BYTES * length + (value.isFrozen() ? UNMODIFIABLE_BYTES : 0);
+        } else {
+            savedBytes += value instanceof HCLNumber ? NUMBER_BYTES : VALUE_BYTES;
+            if (value.value instanceof String && value.value != canonical.value) {
+                // a text not shared through the symbol table, counted as two bytes per character
+                savedBytes += STRING_BYTES + align(ARRAY_BYTES + 2L * ((String) value.value).length());
+            }
+        }
+    }
+
+    private void expunge() {
+        Object reference;
+        while ((reference = collected.poll()) != null) {
+            Entry collectedEntry = (Entry) reference;
+            int slot = collectedEntry.hash & (table.length - 1);
+            Entry previous = null;
+            for (Entry entry = table[slot]; entry != null; previous = entry, entry = entry.next) {
+                if (entry == collectedEntry) {
+                    if (previous == null) {
+                        table[slot] = entry.next;
+                    } else {
+                        previous.next = entry.next;
+                    }
+                    size--;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void grow() {
+        Entry[] oldTable = table;
+        table = new Entry[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (Entry head : oldTable) {
+            Entry entry = head;
+            while (entry != null) {
+                Entry next = entry.next;
+                int slot = entry.hash & mask;
+                entry.next = table[slot];
+                table[slot] = entry;
+                entry = next;
+            }
+        }
+    }
+
+    /* the elements are canonical already, so they are compared by identity, scalars by their text */
+    @SuppressWarnings("unchecked")
+    private static boolean equal(HCLValue canonical, HCLValue value) {
+        if (canonical.getClass() != value.getClass() || canonical.getType() != value.getType()) {
+            return false;
+        }
+        if (canonical instanceof HCLArray) {
+            List<HCLValue> a = (List<HCLValue>) canonical.value;
+            List<HCLValue> b = (List<HCLValue>) value.value;
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (a.get(i) != b.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (canonical instanceof HCLMap) {
+            Map<String, HCLValue> a = (Map<String, HCLValue>) canonical.value;
+            Map<String, HCLValue> b = (Map<String, HCLValue>) value.value;
+            if (a.size() != b.size()) {
+                return false;
+            }
+            Iterator<Map.Entry<String, HCLValue>> other = b.entrySet().iterator();
+            for (Map.Entry<String, HCLValue> entry : a.entrySet()) {
+                Map.Entry<String, HCLValue> otherEntry = other.next();
+                if (entry.getValue() != otherEntry.getValue() || !entry.getKey().equals(otherEntry.getKey())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return canonical.value == null ? value.value == null : canonical.value.equals(value.value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int hash(HCLValue value) {
+        int hash = value.getType().ordinal();
+        if (value instanceof HCLArray) {
+            for (HCLValue element : (List<HCLValue>) value.value) {
+                hash = 31 * hash + System.identityHashCode(element);
+            }
+        } else if (value instanceof HCLMap) {
+            for (Map.Entry<String, HCLValue> entry : ((Map<String, HCLValue>) value.value).entrySet()) {
+                hash = 31 * (31 * hash + entry.getKey().hashCode()) + System.identityHashCode(entry.getValue());
+            }
+        } else if (value.value != null) {
+            hash = 31 * hash + value.value.hashCode();
+        }
+        // spreads the low bits the table is indexed by
+        return hash ^ (hash >>> 16);
+    }
+
+    /* the table capacity of a LinkedHashMap holding the entries */
+    private static int capacity(int entries) {
+        int capacity = 16;
+        while (capacity * 3 < entries * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static final class Entry extends WeakReference<HCLValue> {
+        final int hash;
+        Entry next;
+
+        Entry(HCLValue value, int hash, Entry next, ReferenceQueue<HCLValue> queue) {
+            super(value, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Writes a configuration as HCL text, in the format of {@link HCL2String}, to an
+ * {@link Appendable}, {@link Writer} or {@link OutputStream}. Output goes through a fixed size
+ * buffer, so memory use does not depend on the size of the configuration.
+ *
+ * <p>
+ * Quotes and line breaks in string values are escaped, except inside {@code ${...}}
+ * interpolations which the lexer reads verbatim.
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     try (HCLWriter writer = new HCLWriter(new FileOutputStream("main.tf"), StandardCharsets.UTF_8)) {
+ *         writer.write(configuration);
+ *     }
+ *     }
+ * </pre>
+ *
+ * @author jstockall
+ */
+public class HCLWriter implements Closeable, Flushable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Appendable out;
+    private final char[] buffer;
+    private int count;
+    private String[] indents = { "", "\t", "\t\t", "\t\t\t", "\t\t\t\t" };
+
+    public HCLWriter(Appendable out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param out receives the text
+     * @param bufferSize the number of characters collected before they are passed on
+     */
+    public HCLWriter(Appendable out, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = new char[bufferSize];
+    }
+
+    public HCLWriter(OutputStream out, Charset cs) {
+        this(new OutputStreamWriter(out, cs), DEFAULT_BUFFER_SIZE);
+    }
+
+    public HCLWriter(OutputStream out, Charset cs, int bufferSize) {
+        this(new OutputStreamWriter(out, cs), bufferSize);
+    }
+
+    /**
+     * Writes every root block and attribute of a configuration. The text may stay in the buffer
+     * until {@link #flush()} or {@link #close()}.
+     *
+     * @param configuration HCL block tree
+     * @return this writer
+     *
+     * @throws HCLParserException
+     *             If a value cannot be exported, e.g. a malformed number
+     * @throws IOException
+     *             If the underlying output fails
+     */
+    public HCLWriter write(HCLObject configuration) throws HCLParserException, IOException {
+        for (Symbol root : configuration.getRootBlocks()) {
+            write(root);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a single top level block or attribute
+     *
+     * @param root the symbol to write
+     * @return this writer
+     *
+     * @throws HCLParserException
+     *             If a value cannot be exported, e.g. a malformed number
+     * @throws IOException
+     *             If the underlying output fails
+     */
+    public HCLWriter write(Symbol root) throws HCLParserException, IOException {
+        if (root instanceof HCLBlock) {
+            writeBlock((HCLBlock) root, 0);
+        } else if (root instanceof HCLAttribute) {
+            writeAttribute((HCLAttribute) root, 1);
+        }
+        return this;
+    }
+
+    /**
+     * Passes the buffered text on and flushes the output, if it is {@link Flushable}
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    /**
+     * Flushes and closes the output, if it is {@link Closeable}
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (out instanceof Closeable) {
+            ((Closeable) out).close();
+        }
+    }
+
+    private void writeBlock(HCLBlock block, int indent) throws HCLParserException, IOException {
+        for (int counter = 0, size = block.blockNames.size(); counter < size; counter++) {
+            String blockName = block.blockNames.get(counter);
+            if (counter == 0) {
+                write(indent(indent));
+                write(blockName);
+                write(size == 1 ? "  {\n" : " ");
+                indent++;
+            } else {
+                write('"');
+                write(blockName);
+                write(counter == size - 1 ? "\" {\n" : "\" ");
+            }
+        }
+
+        for (Symbol child : block.getChildren()) {
+            if (child instanceof HCLAttribute) {
+                writeAttribute((HCLAttribute) child, indent);
+            } else if (child instanceof HCLBlock) {
+                writeBlock((HCLBlock) child, indent);
+            }
+        }
+        indent--;
+        write(indent(indent));
+        write("}\n\n");
+    }
+
+    private void writeAttribute(HCLAttribute attribute, int indent) throws HCLParserException, IOException {
+        write(indent(indent));
+        write(attribute.getName());
+        write(" = ");
+        writeValue(attribute.getValue());
+        write('\n');
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(HCLValue value) throws HCLParserException, IOException {
+        if (value.getType() == null) {
+            throw new HCLParserException("HCL Attribute value not recognized by parser (not implemented yet).");
+        }
+        switch (value.getType()) {
+        case STRING:
+            writeQuoted(String.valueOf(value.value));
+            break;
+        case BOOLEAN:
+            boolean booleanValue = value instanceof HCLBoolean ? ((HCLBoolean) value).booleanValue()
+                    : "true".equals(value.value);
+            write(booleanValue ? "true" : "false");
+            break;
+        case NUMBER:
+            write(Double.toString(value.numberValue().doubleValue()));
+            break;
+        case ARRAY:
+            write('[');
+            boolean first = true;
+            for (HCLValue element : (List<HCLValue>) value.value) {
+                if (!first) {
+                    write(", ");
+                }
+                first = false;
+                writeValue(element);
+            }
+            write(']');
+            break;
+        default:
+            write('{');
+            first = true;
+            for (Map.Entry<String, HCLValue> entry : ((Map<String, HCLValue>) value.value).entrySet()) {
+                if (!first) {
+                    write(", ");
+                }
+                first = false;
+                write(entry.getKey());
+                write('=');
+                writeValue(entry.getValue());
+            }
+            write('}');
+        }
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        write('"');
+        int start = 0;
+        int interpolationDepth = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (interpolationDepth > 0) {
+                if (c == '{') {
+                    interpolationDepth++;
+                } else if (c == '}') {
+                    interpolationDepth--;
+                }
+                continue;
+            }
+            String escape = null;
+            if (c == '$' && i + 1 < length && (value.charAt(i + 1) == '$' || value.charAt(i + 1) == '{')) {
+                // "$$" is an escaped dollar sign, "${" starts an interpolation
+                interpolationDepth = value.charAt(i + 1) == '{' ? 1 : 0;
+                i++;
+            } else if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            }
+            if (escape != null) {
+                write(value, start, i);
+                write(escape);
+                start = i + 1;
+            }
+        }
+        write(value, start, value.length());
+        write('"');
+    }
+
+    private String indent(int indent) {
+        if (indent >= indents.length) {
+            String[] grown = Arrays.copyOf(indents, indent * 2);
+            for (int i = indents.length; i < grown.length; i++) {
+                grown[i] = grown[i - 1] + '\t';
+            }
+            indents = grown;
+        }
+        return indents[indent];
+    }
+
+    private void write(char c) throws IOException {
+        if (count == buffer.length) {
+            drain();
+        }
+        buffer[count++] = c;
+    }
+
+    private void write(String s) throws IOException {
+        write(s, 0, s.length());
+    }
+
+    private void write(String s, int start, int end) throws IOException {
+        int length = end - start;
+        if (length > buffer.length - count) {
+            drain();
+            if (length > buffer.length) {
+                out.append(s, start, end);
+                return;
+            }
+        }
+        s.getChars(start, end, buffer, count);
+        count += length;
+    }
+
+    private void drain() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (out instanceof Writer) {
+            ((Writer) out).write(buffer, 0, count);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(buffer, 0, count);
+        } else {
+            out.append(CharBuffer.wrap(buffer, 0, count));
+        }
+        count = 0;
+    }
+}
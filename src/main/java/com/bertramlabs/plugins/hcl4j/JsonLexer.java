@@ -0,0 +1,483 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Reads the JSON syntax of terraform configurations ({@code .tf.json} files) in a single pass,
+ * delivering the same {@link HCLEventHandler} events as the {@link HCLLexer} does for the
+ * equivalent HCL, so that both build the same symbol tree.
+ *
+ * <p>
+ * Properties of the root object naming a known block type are read as blocks, with as many levels
+ * of nested objects as the block type has labels, e.g. {@code "resource": {"aws_instance":
+ * {"web": {...}}}} is the block {@code resource "aws_instance" "web"}. An array of objects at any
+ * of these levels declares a block for each of them. The properties of a block body and any other
+ * properties of the root object are read as attributes, as nested blocks cannot be told apart
+ * from map values without the schema of the block. Properties named {@code "//"} are comments
+ * and skipped. Null values are skipped too, properties and array elements alike, as the symbol
+ * tree has no null value and terraform treats an argument set to null as unset.
+ * </p>
+ *
+ * @author jstockall
+ */
+final class JsonLexer {
+
+    private static final int BUFFER_SIZE = 16384;
+
+    /** The number of labels of the terraform block types */
+    private static final Map<String, Integer> BLOCK_LABELS = new HashMap<String, Integer>();
+
+    static {
+        BLOCK_LABELS.put("resource", 2);
+        BLOCK_LABELS.put("data", 2);
+        BLOCK_LABELS.put("variable", 1);
+        BLOCK_LABELS.put("output", 1);
+        BLOCK_LABELS.put("module", 1);
+        BLOCK_LABELS.put("provider", 1);
+        BLOCK_LABELS.put("check", 1);
+        BLOCK_LABELS.put("locals", 0);
+        BLOCK_LABELS.put("terraform", 0);
+        BLOCK_LABELS.put("moved", 0);
+        BLOCK_LABELS.put("import", 0);
+    }
+
+    /** Receives the events of skipped comment values */
+    private static final HCLEventHandler DISCARD = new HCLEventAdapter();
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    // the number of characters read before the start of the buffer
+    private int offset;
+    private int line;
+    private int lineStart;
+    private final StringBuilder string = new StringBuilder();
+    private final ArrayList<String> labels = new ArrayList<String>();
+
+    /* builds the symbol tree, null when the events go to a handler of the caller */
+    private final HCLTreeBuilder builder;
+    HCLEventHandler handler;
+    HCLSymbolTable symbols;
+
+    JsonLexer(Reader in) {
+        this.in = in;
+        this.builder = new HCLTreeBuilder();
+        this.handler = builder;
+    }
+
+    JsonLexer(Reader in, HCLEventHandler handler) {
+        this.in = in;
+        this.builder = null;
+        this.handler = handler;
+    }
+
+    /**
+     * Reads the whole input
+     *
+     * @return the top level symbols, empty when the events go to a handler of the caller
+     */
+    List<Symbol> parse() throws HCLParserException, IOException {
+        List<Symbol> roots = new ArrayList<Symbol>();
+        expect('{');
+        if (!consume('}')) {
+            do {
+                skipWhitespace();
+                int keyLine = line;
+                int keyColumn = column();
+                int keyPosition = position();
+                String key = readKey();
+                Integer labelCount = BLOCK_LABELS.get(key);
+                if ("//".equals(key) || nextIsNull()) {
+                    skipValue();
+                } else if (labelCount == null) {
+                    handler.startAttribute(key, keyLine, keyColumn, keyPosition);
+                    readValue();
+                    handler.endAttribute();
+                    completed(roots);
+                } else {
+                    labels.clear();
+                    labels.add(key);
+                    readBlocks(labelCount, keyLine, keyColumn, keyPosition, roots);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        skipWhitespace();
+        if (peek() >= 0) {
+            throw unexpected();
+        }
+        return roots;
+    }
+
+    /* the character position just after the last character read */
+    int tokenEnd() {
+        return position();
+    }
+
+    /*
+     * Reads the objects of the remaining labels of a block down to its body, or an array of them
+     */
+    private void readBlocks(int remaining, int blockLine, int blockColumn, int blockPosition, List<Symbol> roots)
+            throws HCLParserException, IOException {
+        if (consume('[')) {
+            if (!consume(']')) {
+                do {
+                    readBlocks(remaining, blockLine, blockColumn, blockPosition, roots);
+                } while (consume(','));
+                expect(']');
+            }
+            return;
+        }
+        expect('{');
+        if (remaining == 0) {
+            handler.startBlock(new ArrayList<String>(labels), blockLine, blockColumn, blockPosition);
+            if (!consume('}')) {
+                do {
+                    skipWhitespace();
+                    int keyLine = line;
+                    int keyColumn = column();
+                    int keyPosition = position();
+                    String key = readKey();
+                    if ("//".equals(key) || nextIsNull()) {
+                        skipValue();
+                    } else {
+                        handler.startAttribute(key, keyLine, keyColumn, keyPosition);
+                        readValue();
+                        handler.endAttribute();
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            handler.endBlock();
+            completed(roots);
+            return;
+        }
+        if (!consume('}')) {
+            do {
+                skipWhitespace();
+                int keyLine = line;
+                int keyColumn = column();
+                int keyPosition = position();
+                String key = readKey();
+                if ("//".equals(key) || nextIsNull()) {
+                    skipValue();
+                } else {
+                    labels.add(key);
+                    readBlocks(remaining - 1, keyLine, keyColumn, keyPosition, roots);
+                    labels.remove(labels.size() - 1);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+    }
+
+    private void completed(List<Symbol> roots) {
+        if (builder != null) {
+            Symbol root = builder.takeCompleted();
+            // top level symbols know their full extent, up to and including the last character read
+            root.setLength(position() - root.getPosition());
+            roots.add(root);
+        }
+    }
+
+    private void readValue() throws HCLParserException, IOException {
+        skipWhitespace();
+        int c = peek();
+        switch (c) {
+        case '{':
+            pos++;
+            handler.startMap();
+            if (!consume('}')) {
+                do {
+                    String key = readKey();
+                    if (nextIsNull()) {
+                        skipValue();
+                    } else {
+                        handler.mapKey(key);
+                        readValue();
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            handler.endMap();
+            break;
+        case '[':
+            pos++;
+            handler.startArray();
+            if (!consume(']')) {
+                do {
+                    readValue();
+                } while (consume(','));
+                expect(']');
+            }
+            handler.endArray();
+            break;
+        case '"':
+            handler.scalar("string", readString());
+            break;
+        case 't':
+            readWord("true");
+            handler.scalar("boolean", "true");
+            break;
+        case 'f':
+            readWord("false");
+            handler.scalar("boolean", "false");
+            break;
+        case 'n':
+            // skipped, whether an array element or a property checked with nextIsNull()
+            readWord("null");
+            break;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                handler.scalar("number", readNumber());
+            } else {
+                throw unexpected();
+            }
+        }
+    }
+
+    /* whether the next value is null, which is skipped rather than read */
+    private boolean nextIsNull() throws IOException {
+        skipWhitespace();
+        return peek() == 'n';
+    }
+
+    private void skipValue() throws HCLParserException, IOException {
+        HCLEventHandler target = handler;
+        handler = DISCARD;
+        try {
+            readValue();
+        } finally {
+            handler = target;
+        }
+    }
+
+    /* a property name and the colon following it */
+    private String readKey() throws HCLParserException, IOException {
+        skipWhitespace();
+        if (peek() != '"') {
+            throw unexpected();
+        }
+        String key = readString();
+        expect(':');
+        return key;
+    }
+
+    /*
+     * Strings without escapes are taken straight from the buffer, others are collected in the
+     * string builder
+     */
+    private String readString() throws HCLParserException, IOException {
+        pos++;
+        int start = pos;
+        boolean collected = false;
+        string.setLength(0);
+        while (true) {
+            if (pos == limit) {
+                string.append(buffer, start, pos - start);
+                collected = true;
+                if (!fill()) {
+                    throw unexpected();
+                }
+                start = pos;
+            }
+            char c = buffer[pos];
+            if (c == '"') {
+                String result;
+                if (collected) {
+                    string.append(buffer, start, pos - start);
+                    result = symbols != null ? symbols.intern(string) : string.toString();
+                } else {
+                    result = symbols != null ? symbols.intern(buffer, start, pos - start)
+                            : new String(buffer, start, pos - start);
+                }
+                pos++;
+                return result;
+            } else if (c == '\\') {
+                string.append(buffer, start, pos - start);
+                collected = true;
+                pos++;
+                string.append(readEscape());
+                start = pos;
+            } else if (c < ' ') {
+                throw unexpected();
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private char readEscape() throws HCLParserException, IOException {
+        int c = read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(read(), 16);
+                if (digit < 0) {
+                    pos--;
+                    throw unexpected();
+                }
+                value = value << 4 | digit;
+            }
+            return (char) value;
+        default:
+            pos--;
+            throw unexpected();
+        }
+    }
+
+    /* the text of a number, checked against the JSON number syntax */
+    private String readNumber() throws HCLParserException, IOException {
+        string.setLength(0);
+        if (peek() == '-') {
+            string.append(buffer[pos++]);
+        }
+        readDigits();
+        if (peek() == '.') {
+            string.append(buffer[pos++]);
+            readDigits();
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            string.append(buffer[pos++]);
+            if (peek() == '+' || peek() == '-') {
+                string.append(buffer[pos++]);
+            }
+            readDigits();
+        }
+        return string.toString();
+    }
+
+    private void readDigits() throws HCLParserException, IOException {
+        int c = peek();
+        if (c < '0' || c > '9') {
+            throw unexpected();
+        }
+        do {
+            string.append(buffer[pos++]);
+            c = peek();
+        } while (c >= '0' && c <= '9');
+    }
+
+    private void readWord(String word) throws HCLParserException, IOException {
+        for (int i = 0; i < word.length(); i++) {
+            if (peek() != word.charAt(i)) {
+                throw unexpected();
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char c) throws HCLParserException, IOException {
+        if (!consume(c)) {
+            throw unexpected();
+        }
+    }
+
+    /* skips white space, then the character if it is next */
+    private boolean consume(char c) throws IOException {
+        skipWhitespace();
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c == '\n') {
+                line++;
+                lineStart = position() + 1;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /* the next character, -1 at the end of input */
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private int read() throws HCLParserException, IOException {
+        int c = peek();
+        if (c < 0) {
+            throw unexpected();
+        }
+        pos++;
+        return c;
+    }
+
+    /* replaces the consumed buffer with the next characters of the input */
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private int position() {
+        return offset + pos;
+    }
+
+    private int column() {
+        return position() - lineStart;
+    }
+
+    private HCLParserException unexpected() {
+        String found = pos < limit ? "character <" + buffer[pos] + ">" : "end of input";
+        return new HCLParserException("Unexpected " + found + " in JSON configuration on line: " + (line + 1)
+                + " col: " + (column() + 1));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.List;
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * A top level block read by {@link HCLParser#parseLazy(String)}, of which only the header is
+ * known until its children are first asked for. The children are then lexed from the retained
+ * source text of the block.
+ *
+ * @author jstockall
+ */
+final class LazyBlock extends HCLBlock {
+
+    private String source;
+    private HCLSymbolTable symbols;
+    private volatile boolean materialized;
+
+    LazyBlock(List<String> blockNames, int line, int column, int position, String source, HCLSymbolTable symbols) {
+        super(blockNames, null, line, column, position);
+        this.source = source;
+        this.symbols = symbols;
+    }
+
+    @Override
+    public Collection<Symbol> getChildren() {
+        if (!materialized) {
+            materialize();
+        }
+        return super.getChildren();
+    }
+
+    /**
+     * @return whether the children have been lexed
+     */
+    boolean isMaterialized() {
+        return materialized;
+    }
+
+    private synchronized void materialize() {
+        if (materialized) {
+            return;
+        }
+        int start = getPosition();
+        HCLLexer lexer = new HCLLexer(new SliceReader(source, start, start + getLength()));
+        lexer.setLocation(getLine(), getColumn(), start);
+        lexer.symbols = symbols;
+        try {
+            Symbol parsed = lexer.yylex();
+            for (Symbol child : parsed.getChildren()) {
+                child.setParent(this);
+                appendChild(child);
+            }
+        } catch (HCLParserException | IOException ex) {
+            // the whole text was lexed once already when the header was read
+            throw new IllegalStateException("Unable to read the children of " + blockNames, ex);
+        }
+        source = null;
+        symbols = null;
+        materialized = true;
+    }
+
+    /**
+     * Reads part of a string, without copying it
+     */
+    private static final class SliceReader extends Reader {
+        private final String text;
+        private final int end;
+        private int next;
+
+        SliceReader(String text, int start, int end) {
+            this.text = text;
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (next >= end) {
+                return -1;
+            }
+            int count = Math.min(len, end - next);
+            text.getChars(next, next + count, cbuf, off);
+            next += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
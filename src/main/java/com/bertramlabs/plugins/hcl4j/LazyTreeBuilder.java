@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Event handler of {@link HCLParser#parseLazy(String)}. Top level blocks become
+ * {@link LazyBlock}s holding their header and extent, while the text of their bodies is scanned
+ * without being copied. Top level attributes are built as usual.
+ *
+ * @author jstockall
+ */
+final class LazyTreeBuilder implements HCLEventHandler {
+
+    private final String source;
+    private final HCLTreeBuilder attributes = new HCLTreeBuilder();
+    private final List<Symbol> roots = new ArrayList<>();
+    private HCLLexer lexer;
+    private LazyBlock block;
+    private int depth;
+
+    LazyTreeBuilder(String source) {
+        this.source = source;
+    }
+
+    void setLexer(HCLLexer lexer) {
+        this.lexer = lexer;
+    }
+
+    List<Symbol> getRoots() {
+        return roots;
+    }
+
+    @Override
+    public void startBlock(List<String> labels, int line, int column, int position) {
+        if (depth++ == 0) {
+            block = new LazyBlock(labels, line, column, position, source, lexer.symbols);
+            lexer.discardText = true;
+        }
+    }
+
+    @Override
+    public void endBlock() {
+        if (--depth == 0) {
+            block.setLength(lexer.tokenEnd() - block.getPosition());
+            roots.add(block);
+            block = null;
+            lexer.discardText = false;
+        }
+    }
+
+    @Override
+    public void startAttribute(String name, int line, int column, int position) {
+        if (depth == 0) {
+            attributes.startAttribute(name, line, column, position);
+        }
+    }
+
+    @Override
+    public void endAttribute() {
+        if (depth == 0) {
+            attributes.endAttribute();
+            Symbol attribute = attributes.takeCompleted();
+            attribute.setLength(lexer.tokenEnd() - attribute.getPosition());
+            roots.add(attribute);
+        }
+    }
+
+    @Override
+    public void startArray() {
+        if (depth == 0) {
+            attributes.startArray();
+        }
+    }
+
+    @Override
+    public void endArray() {
+        if (depth == 0) {
+            attributes.endArray();
+        }
+    }
+
+    @Override
+    public void startMap() {
+        if (depth == 0) {
+            attributes.startMap();
+        }
+    }
+
+    @Override
+    public void mapKey(String key) {
+        if (depth == 0) {
+            attributes.mapKey(key);
+        }
+    }
+
+    @Override
+    public void endMap() {
+        if (depth == 0) {
+            attributes.endMap();
+        }
+    }
+
+    @Override
+    public void scalar(String type, String value) {
+        if (depth == 0) {
+            attributes.scalar(type, value);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j;
+
+import java.util.List;
+
+/**
+ * Passes the events of a lexer on to its handler, counting them and timing the handler, for
+ * {@link HCLMetrics}. Only used while a {@link HCLMetricsListener} is set.
+ *
+ * <p>
+ * Reading the clock costs about as much as handling an event, so only a random sample of one
+ * event in {@link #SAMPLE} on average is timed, less the time of a clock read taken right after
+ * it, and the build time is estimated from the mean time of the sampled events. The first event
+ * is always timed.
+ * </p>
+ *
+ * @author jstockall
+ */
+final class MeasuringEventHandler implements HCLEventHandler {
+
+    /** The mean number of events per timed event */
+    static final int SAMPLE = 32;
+
+    private final HCLEventHandler handler;
+    private final HCLMetrics metrics;
+    private int depth;
+    // the events left until the next timed one, and the state of the generator of the gaps
+    private int untilSample = 1;
+    private int random = 0x2545f491;
+    private long sampleStart;
+    private long sampledNanos;
+    private long samples;
+
+    MeasuringEventHandler(HCLEventHandler handler, HCLMetrics metrics) {
+        this.handler = handler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the estimated build time of the metrics from the events timed so far
+     */
+    void finish() {
+        metrics.buildNanos = samples == 0 ? 0 : Math.max(0, sampledNanos) * metrics.tokens / samples;
+    }
+
+    @Override
+    public void startBlock(List<String> labels, int line, int column, int position) throws HCLParserException {
+        boolean timed = opened();
+        handler.startBlock(labels, line, column, position);
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void endBlock() throws HCLParserException {
+        boolean timed = closed();
+        handler.endBlock();
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void startAttribute(String name, int line, int column, int position) throws HCLParserException {
+        metrics.symbols++;
+        boolean timed = event();
+        handler.startAttribute(name, line, column, position);
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void endAttribute() throws HCLParserException {
+        boolean timed = event();
+        handler.endAttribute();
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void startArray() throws HCLParserException {
+        boolean timed = opened();
+        handler.startArray();
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void endArray() throws HCLParserException {
+        boolean timed = closed();
+        handler.endArray();
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void startMap() throws HCLParserException {
+        boolean timed = opened();
+        handler.startMap();
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void mapKey(String key) throws HCLParserException {
+        boolean timed = event();
+        handler.mapKey(key);
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void endMap() throws HCLParserException {
+        boolean timed = closed();
+        handler.endMap();
+        if (timed) {
+            timed();
+        }
+    }
+
+    @Override
+    public void scalar(String type, String value) throws HCLParserException {
+        metrics.symbols++;
+        boolean timed = event();
+        handler.scalar(type, value);
+        if (timed) {
+            timed();
+        }
+    }
+
+    private boolean opened() {
+        metrics.symbols++;
+        if (++depth > metrics.maxDepth) {
+            metrics.maxDepth = depth;
+        }
+        return event();
+    }
+
+    private boolean closed() {
+        depth--;
+        return event();
+    }
+
+    /* counts the event, and starts timing it if it is sampled */
+    private boolean event() {
+        metrics.tokens++;
+        if (--untilSample > 0) {
+            return false;
+        }
+        // xorshift, for gaps from 1 to 2 * SAMPLE - 1 that do not line up with repeated structure
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        untilSample = 1 + (random >>> 1) % (2 * SAMPLE - 1);
+        sampleStart = System.nanoTime();
+        return true;
+    }
+
+    private void timed() {
+        long end = System.nanoTime();
+        // a clock read timed alongside, so that it is as warm as those timing the event
+        long clock = System.nanoTime() - end;
+        sampledNanos += end - sampleStart - clock;
+        samples++;
+    }
+}
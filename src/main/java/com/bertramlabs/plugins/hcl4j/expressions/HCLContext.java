@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.expressions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.HCLParserException;
+
+/**
+ * The variables and functions interpolations are evaluated against. Names not found in a context
+ * are looked up in its parent, so the values shared by many evaluations can be set once:
+ *
+ * <pre>
+ *     {@code
+ *     HCLContext shared = new HCLContext().setVariable("path", paths);
+ *     for (Map<String, Object> vars : variableSets) {
+ *         Object name = value.evaluate(new HCLContext(shared).setVariable("var", vars));
+ *     }
+ *     }
+ * </pre>
+ *
+ * The standard functions (concat, element, join, length, lookup, lower, split and upper) are
+ * available in every context. A context is not thread safe while it is being changed.
+ *
+ * @author jstockall
+ */
+public class HCLContext {
+
+    private final HCLContext parent;
+    private final Map<String, Object> variables = new HashMap<>();
+    private final Map<String, HCLFunction> functions = new HashMap<>();
+
+    public HCLContext() {
+        this(null);
+    }
+
+    /**
+     * @param parent the context consulted for names this one does not define
+     */
+    public HCLContext(HCLContext parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @param name the root name of the variable, e.g. "var" for {@code ${var.region}}
+     * @param value a string, number, boolean, list or map
+     * @return this context
+     */
+    public HCLContext setVariable(String name, Object value) {
+        variables.put(name, value);
+        return this;
+    }
+
+    /**
+     * @param name the name the function is called by, replacing any standard function
+     * @param function the function
+     * @return this context
+     */
+    public HCLContext setFunction(String name, HCLFunction function) {
+        functions.put(name, function);
+        return this;
+    }
+
+    /**
+     * @param name the root name of the variable
+     * @return its value
+     *
+     * @throws HCLParserException
+     *             If neither this context nor its parents define the variable
+     */
+    public Object getVariable(String name) throws HCLParserException {
+        for (HCLContext context = this; context != null; context = context.parent) {
+            Object value = context.variables.get(name);
+            if (value != null || context.variables.containsKey(name)) {
+                return value;
+            }
+        }
+        throw new HCLParserException("Unknown variable '" + name + "'");
+    }
+
+    /**
+     * @param name the name of the function
+     * @return the function
+     *
+     * @throws HCLParserException
+     *             If neither this context, its parents nor the standard functions define it
+     */
+    public HCLFunction getFunction(String name) throws HCLParserException {
+        for (HCLContext context = this; context != null; context = context.parent) {
+            HCLFunction function = context.functions.get(name);
+            if (function != null) {
+                return function;
+            }
+        }
+        HCLFunction function = HCLFunctions.STANDARD.get(name);
+        if (function == null) {
+            throw new HCLParserException("Unknown function '" + name + "'");
+        }
+        return function;
+    }
+}
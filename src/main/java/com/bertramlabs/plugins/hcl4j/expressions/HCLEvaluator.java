@@ -0,0 +1,513 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.expressions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.bertramlabs.plugins.hcl4j.HCLObject;
+import com.bertramlabs.plugins.hcl4j.HCLParserException;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock;
+import com.bertramlabs.plugins.hcl4j.symbols.Symbol;
+
+/**
+ * Evaluates the interpolations of a whole configuration against a set of input variables. Every
+ * variable, local value, resource, data source, module and output is a node of a dependency
+ * graph, linked to the nodes its interpolations refer to. Nodes are evaluated on a
+ * {@link ForkJoinPool} as soon as the nodes they depend on are done, so independent blocks are
+ * evaluated concurrently. Circular references are reported before anything is evaluated.
+ *
+ * <p>
+ * The result holds the evaluated nodes the way interpolations address them:
+ * </p>
+ *
+ * <pre>
+ *     {@code
+ *     Map<String, Object> result = new HCLEvaluator().evaluate(configuration, variables);
+ *     result.get("var")            // variable name -> value
+ *     result.get("local")          // local name -> value
+ *     result.get("aws_instance")   // resource name -> map of evaluated attributes
+ *     result.get("data")           // data source type -> name -> map of evaluated attributes
+ *     result.get("output")         // output name -> evaluated value attribute
+ *     }
+ * </pre>
+ *
+ * <p>
+ * Other root blocks and attributes, such as providers, are not evaluated. An evaluator may be
+ * used by several threads at once.
+ * </p>
+ *
+ * @author jstockall
+ */
+public class HCLEvaluator {
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Evaluates on a pool shared by all evaluators created this way, with one thread per processor
+     */
+    public HCLEvaluator() {
+        this(SharedPool.POOL);
+    }
+
+    /**
+     * @param pool the pool evaluating the nodes
+     */
+    public HCLEvaluator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param configuration the configuration to evaluate
+     * @param variables the values of the input variables by name, taking precedence over their
+     *            defaults
+     * @return the evaluated nodes by address
+     *
+     * @throws HCLParserException
+     *             If an interpolation is malformed or cannot be evaluated, a variable has no value or
+     *             nodes refer to each other in a cycle
+     */
+    public Map<String, Object> evaluate(HCLObject configuration, Map<String, Object> variables)
+            throws HCLParserException {
+        return evaluate(configuration, variables, null);
+    }
+
+    /**
+     * @param configuration the configuration to evaluate
+     * @param variables the values of the input variables by name, taking precedence over their
+     *            defaults
+     * @param parent context providing further variables, e.g. "path", and functions; may be null
+     * @return the evaluated nodes by address
+     *
+     * @throws HCLParserException
+     *             If an interpolation is malformed or cannot be evaluated, a variable has no value or
+     *             nodes refer to each other in a cycle
+     */
+    public Map<String, Object> evaluate(HCLObject configuration, Map<String, Object> variables, HCLContext parent)
+            throws HCLParserException {
+        Evaluation evaluation = new Evaluation(variables, parent);
+        for (Symbol root : configuration.getRootBlocks()) {
+            if (root instanceof HCLBlock) {
+                evaluation.addNodes((HCLBlock) root);
+            }
+        }
+        evaluation.link();
+        evaluation.checkCycles();
+        return evaluation.run();
+    }
+
+    private enum Kind {
+        VARIABLE, LOCAL, OUTPUT, BLOCK
+    }
+
+    /**
+     * The graph and intermediate results of one evaluation
+     */
+    private final class Evaluation {
+        private final Map<String, Object> variables;
+        private final HCLContext context;
+        private final List<Node> nodes = new ArrayList<>();
+        private final Map<String, Node> nodesByAddress = new HashMap<>();
+        // the nodes under each namespace, e.g. every aws_instance for "aws_instance"
+        private final Map<String, List<Node>> nodesByNamespace = new HashMap<>();
+        // the namespaces interpolations read, filled concurrently as nodes complete
+        private final Map<String, Map<String, Object>> namespaces = new HashMap<>();
+        // the first HCLParserException, or Error, of any node
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private CountDownLatch remaining;
+
+        Evaluation(Map<String, Object> variables, HCLContext parent) {
+            this.variables = variables;
+            this.context = new HCLContext(parent);
+            Map<String, Object> var = namespace(Arrays.asList("var"));
+            for (Map.Entry<String, Object> variable : variables.entrySet()) {
+                if (variable.getValue() != null) {
+                    var.put(variable.getKey(), variable.getValue());
+                }
+            }
+        }
+
+        void addNodes(HCLBlock block) throws HCLParserException {
+            List<String> names = block.blockNames;
+            String type = names.get(0);
+            if ("locals".equals(type)) {
+                // map values written as "name = { ... }" are parsed as blocks
+                for (Symbol child : block.getChildren()) {
+                    add(new Node(Kind.LOCAL, Arrays.asList("local", child.getName()), child));
+                }
+            } else if ("variable".equals(type) && names.size() == 2) {
+                add(new Node(Kind.VARIABLE, Arrays.asList("var", names.get(1)), block));
+            } else if ("output".equals(type) && names.size() == 2) {
+                add(new Node(Kind.OUTPUT, names, block));
+            } else if ("resource".equals(type) && names.size() == 3) {
+                add(new Node(Kind.BLOCK, names.subList(1, 3), block));
+            } else if (("data".equals(type) && names.size() == 3) || ("module".equals(type) && names.size() == 2)) {
+                add(new Node(Kind.BLOCK, names, block));
+            }
+        }
+
+        private void add(Node node) throws HCLParserException {
+            if (nodesByAddress.put(node.address, node) != null) {
+                throw new HCLParserException("Duplicate definition of " + node.address);
+            }
+            nodes.add(node);
+            namespace(node.path.subList(0, node.path.size() - 1));
+            StringBuilder key = new StringBuilder();
+            for (String name : node.path.subList(0, node.path.size() - 1)) {
+                if (key.length() > 0) {
+                    key.append('.');
+                }
+                List<Node> members = nodesByNamespace.get(key.append(name).toString());
+                if (members == null) {
+                    members = new ArrayList<>();
+                    nodesByNamespace.put(key.toString(), members);
+                }
+                members.add(node);
+            }
+        }
+
+        /**
+         * Links every node to the nodes its interpolations refer to
+         */
+        void link() throws HCLParserException {
+            List<List<String>> references = new ArrayList<>();
+            Set<Node> dependencies = new LinkedHashSet<>();
+            for (Node node : nodes) {
+                references.clear();
+                dependencies.clear();
+                node.collectReferences(node.symbol, references);
+                for (List<String> reference : references) {
+                    resolve(reference, dependencies);
+                }
+                for (Node dependency : dependencies) {
+                    dependency.dependents.add(node);
+                }
+                node.dependencies = dependencies.size();
+                node.pending.set(node.dependencies);
+            }
+        }
+
+        /**
+         * Adds the node a reference reads, or every node under the namespace it stops at, e.g. all
+         * of aws_instance for {@code aws_instance.*.id} or {@code aws_instance[var.name]}
+         */
+        private void resolve(List<String> reference, Set<Node> dependencies) {
+            StringBuilder address = new StringBuilder(reference.get(0));
+            for (int length = 2; length <= Math.min(3, reference.size()); length++) {
+                address.append('.').append(reference.get(length - 1));
+                Node node = nodesByAddress.get(address.toString());
+                if (node != null) {
+                    dependencies.add(node);
+                    return;
+                }
+            }
+            List<Node> members = nodesByNamespace.get(address.toString());
+            if (members != null) {
+                dependencies.addAll(members);
+            }
+        }
+
+        /**
+         * Removes the nodes without dependencies from the graph until none are left, reporting a
+         * cycle among the remaining ones if there are any
+         */
+        void checkCycles() throws HCLParserException {
+            Map<Node, Integer> unresolved = new HashMap<>();
+            List<Node> ready = new ArrayList<>();
+            for (Node node : nodes) {
+                if (node.dependencies == 0) {
+                    ready.add(node);
+                } else {
+                    unresolved.put(node, node.dependencies);
+                }
+            }
+            while (!ready.isEmpty()) {
+                Node node = ready.remove(ready.size() - 1);
+                for (Node dependent : node.dependents) {
+                    int count = unresolved.get(dependent) - 1;
+                    if (count == 0) {
+                        unresolved.remove(dependent);
+                        ready.add(dependent);
+                    } else {
+                        unresolved.put(dependent, count);
+                    }
+                }
+            }
+            if (unresolved.isEmpty()) {
+                return;
+            }
+            // every unresolved node depends on another unresolved one, following them leads into a
+            // cycle
+            Map<Node, Node> next = new HashMap<>();
+            for (Node node : unresolved.keySet()) {
+                for (Node dependent : node.dependents) {
+                    if (unresolved.containsKey(dependent)) {
+                        next.put(dependent, node);
+                    }
+                }
+            }
+            Node node = unresolved.keySet().iterator().next();
+            Map<Node, Integer> visited = new LinkedHashMap<>();
+            while (!visited.containsKey(node)) {
+                visited.put(node, visited.size());
+                node = next.get(node);
+            }
+            List<Node> path = new ArrayList<>(visited.keySet());
+            StringBuilder cycle = new StringBuilder();
+            for (Node member : path.subList(visited.get(node), path.size())) {
+                cycle.append(member.address).append(" -> ");
+            }
+            throw new HCLParserException("Cycle between references: " + cycle.append(node.address));
+        }
+
+        Map<String, Object> run() throws HCLParserException {
+            for (Map.Entry<String, Map<String, Object>> namespace : namespaces.entrySet()) {
+                if (namespace.getKey().indexOf('.') < 0) {
+                    context.setVariable(namespace.getKey(), namespace.getValue());
+                }
+            }
+            remaining = new CountDownLatch(nodes.size());
+            for (Node node : nodes) {
+                if (node.dependencies == 0) {
+                    pool.execute(node);
+                }
+            }
+            try {
+                remaining.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new HCLParserException("Evaluation interrupted", ex);
+            }
+            Throwable failed = failure.get();
+            if (failed instanceof Error) {
+                throw (Error) failed;
+            } else if (failed != null) {
+                throw (HCLParserException) failed;
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Node node : nodes) {
+                Map<String, Object> target = result;
+                for (String name : node.path.subList(0, node.path.size() - 1)) {
+                    target = nested(target, name);
+                }
+                target.put(node.path.get(node.path.size() - 1), node.value);
+            }
+            return result;
+        }
+
+        /**
+         * @return the map holding the values of the nodes whose address starts with the path,
+         *         created along with its parents on first use
+         */
+        private Map<String, Object> namespace(List<String> path) {
+            StringBuilder key = new StringBuilder();
+            Map<String, Object> parent = null;
+            Map<String, Object> namespace = null;
+            for (String name : path) {
+                if (key.length() > 0) {
+                    key.append('.');
+                }
+                key.append(name);
+                namespace = namespaces.get(key.toString());
+                if (namespace == null) {
+                    namespace = new ConcurrentHashMap<>();
+                    namespaces.put(key.toString(), namespace);
+                    if (parent != null) {
+                        parent.put(name, namespace);
+                    }
+                }
+                parent = namespace;
+            }
+            return namespace;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> nested(Map<String, Object> map, String name) {
+            Map<String, Object> nested = (Map<String, Object>) map.get(name);
+            if (nested == null) {
+                nested = new LinkedHashMap<>();
+                map.put(name, nested);
+            }
+            return nested;
+        }
+
+        /**
+         * A variable, local value, output or block evaluated as a task once its dependencies are
+         */
+        private final class Node extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final Kind kind;
+            // where the value is found in the result, e.g. [aws_instance, web]
+            final List<String> path;
+            final String address;
+            final Symbol symbol;
+            final List<Node> dependents = new ArrayList<>();
+            final AtomicInteger pending = new AtomicInteger();
+            int dependencies;
+            volatile Object value;
+
+            Node(Kind kind, List<String> path, Symbol symbol) {
+                this.kind = kind;
+                this.path = path;
+                this.symbol = symbol;
+                StringBuilder address = new StringBuilder();
+                for (String name : path) {
+                    if (address.length() > 0) {
+                        address.append('.');
+                    }
+                    address.append(name);
+                }
+                this.address = address.toString();
+            }
+
+            void collectReferences(Symbol symbol, List<List<String>> references) throws HCLParserException {
+                if (symbol.getValue() != null) {
+                    symbol.getValue().getExpression().collectReferences(references);
+                }
+                for (Symbol child : symbol.getChildren()) {
+                    collectReferences(child, references);
+                }
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    if (failure.get() == null) {
+                        value = evaluate();
+                        if (value != null) {
+                            namespace(path.subList(0, path.size() - 1)).put(path.get(path.size() - 1), value);
+                        }
+                    }
+                } catch (HCLParserException ex) {
+                    failure.compareAndSet(null, new HCLParserException("Error evaluating " + address + ": "
+                            + ex.getMessage(), ex));
+                } catch (Throwable ex) {
+                    fail(ex);
+                } finally {
+                    release();
+                }
+            }
+
+            /* an evaluation is awaited until every node counted down, whether it ran, failed or never ran */
+            private void release() {
+                try {
+                    for (Node dependent : dependents) {
+                        if (dependent.pending.decrementAndGet() == 0) {
+                            try {
+                                if (ForkJoinTask.inForkJoinPool()) {
+                                    dependent.fork();
+                                } else {
+                                    pool.execute(dependent);
+                                }
+                            } catch (Throwable ex) {
+                                fail(ex);
+                                // the dependent never runs, so neither do the nodes waiting for it
+                                dependent.release();
+                            }
+                        }
+                    }
+                } finally {
+                    remaining.countDown();
+                }
+            }
+
+            /* errors are rethrown as they are, as the evaluation cannot be trusted to continue */
+            private void fail(Throwable ex) {
+                failure.compareAndSet(null, ex instanceof Exception
+                        ? new HCLParserException("Error evaluating " + address, (Exception) ex) : ex);
+            }
+
+            private Object evaluate() throws HCLParserException {
+                switch (kind) {
+                case LOCAL:
+                    return symbol instanceof HCLBlock ? body((HCLBlock) symbol) : symbol.getValue().evaluate(context);
+                case VARIABLE:
+                    String name = path.get(1);
+                    if (variables.get(name) != null) {
+                        return variables.get(name);
+                    }
+                    Object defaultValue = attribute((HCLBlock) symbol, "default");
+                    if (defaultValue == null) {
+                        throw new HCLParserException("No value for variable '" + name + "'");
+                    }
+                    return defaultValue;
+                case OUTPUT:
+                    return attribute((HCLBlock) symbol, "value");
+                default:
+                    return body((HCLBlock) symbol);
+                }
+            }
+
+            private Object attribute(HCLBlock block, String name) throws HCLParserException {
+                for (Symbol child : block.getChildren()) {
+                    if (name.equals(child.getName())) {
+                        return child instanceof HCLBlock ? body((HCLBlock) child) : child.getValue().evaluate(context);
+                    }
+                }
+                return null;
+            }
+
+            /**
+             * @return the evaluated attributes and nested blocks, repeated blocks as a list
+             */
+            @SuppressWarnings("unchecked")
+            private Map<String, Object> body(HCLBlock block) throws HCLParserException {
+                Map<String, Object> result = new LinkedHashMap<>();
+                for (Symbol child : block.getChildren()) {
+                    if (child instanceof HCLAttribute) {
+                        result.put(child.getName(), child.getValue().evaluate(context));
+                    } else if (child instanceof HCLBlock) {
+                        Object nested = body((HCLBlock) child);
+                        Object previous = result.get(child.getName());
+                        if (previous instanceof List) {
+                            ((List<Object>) previous).add(nested);
+                        } else if (previous != null) {
+                            List<Object> list = new ArrayList<>();
+                            list.add(previous);
+                            list.add(nested);
+                            result.put(child.getName(), list);
+                        } else {
+                            result.put(child.getName(), nested);
+                        }
+                    }
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Created on first use of the default constructor
+     */
+    private static final class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+}
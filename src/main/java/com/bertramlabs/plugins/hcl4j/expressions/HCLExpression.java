@@ -0,0 +1,591 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.expressions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.HCLParserException;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean;
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue;
+
+/**
+ * A compiled attribute value whose {@code ${...}} interpolations can be evaluated against an
+ * {@link HCLContext}. Interpolations support variables and their attributes ({@code var.region},
+ * {@code aws_instance.web.*.id}), indexes ({@code var.images[var.region]}), function calls,
+ * arithmetic, comparison, logical operators and conditionals.
+ *
+ * <p>
+ * Expressions are immutable and may be evaluated concurrently. Evaluation results are strings,
+ * numbers as {@link Long} or {@link Double}, booleans, lists and maps. A string holding a single
+ * interpolation evaluates to its value without conversion to a string.
+ * </p>
+ *
+ * @author jstockall
+ * @see HCLValue#evaluate(HCLContext)
+ */
+public abstract class HCLExpression {
+
+    HCLExpression() {
+    }
+
+    /**
+     * @param context the variables and functions to evaluate against
+     * @return the value of the expression
+     *
+     * @throws HCLParserException
+     *             If a variable or function is unknown or a value has the wrong type
+     */
+    public abstract Object evaluate(HCLContext context) throws HCLParserException;
+
+    /**
+     * Adds the variables the expression refers to, each as its root name followed by the
+     * attribute names after it, e.g. [aws_instance, web, id] for {@code aws_instance.web.id}
+     *
+     * @param references receives the references
+     */
+    void collectReferences(List<List<String>> references) {
+    }
+
+    static void collectReferences(HCLExpression[] expressions, List<List<String>> references) {
+        for (HCLExpression expression : expressions) {
+            expression.collectReferences(references);
+        }
+    }
+
+    /**
+     * @param template a string value, which may contain interpolations
+     * @return the compiled template
+     *
+     * @throws HCLParserException
+     *             If an interpolation is malformed
+     */
+    public static HCLExpression compile(String template) throws HCLParserException {
+        if (template.indexOf('$') < 0) {
+            return new Literal(template);
+        }
+        return new HCLExpressionParser(template).parseTemplate();
+    }
+
+    /**
+     * Compiles a value, usually through {@link HCLValue#getExpression()} which caches the result
+     *
+     * @param value an attribute value
+     * @return the compiled value, arrays and maps evaluating to lists and maps of their evaluated
+     *         elements
+     *
+     * @throws HCLParserException
+     *             If an interpolation or a number is malformed
+     */
+    @SuppressWarnings("unchecked")
+    public static HCLExpression compile(HCLValue value) throws HCLParserException {
+        if (value.getType() == null) {
+            throw new HCLParserException("HCL Attribute value not recognized by parser (not implemented yet).");
+        }
+        switch (value.getType()) {
+        case STRING:
+            return compile(String.valueOf(value.value));
+        case BOOLEAN:
+            return new Literal(value instanceof HCLBoolean ? ((HCLBoolean) value).booleanValue()
+                    : "true".equals(value.value));
+        case NUMBER:
+            return new Literal(value.numberValue());
+        case ARRAY:
+            List<HCLValue> elements = (List<HCLValue>) value.value;
+            HCLExpression[] compiled = new HCLExpression[elements.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = elements.get(i).getExpression();
+            }
+            return new ListExpression(compiled);
+        default:
+            Map<String, HCLValue> entries = (Map<String, HCLValue>) value.value;
+            String[] keys = new String[entries.size()];
+            HCLExpression[] values = new HCLExpression[entries.size()];
+            int i = 0;
+            for (Map.Entry<String, HCLValue> entry : entries.entrySet()) {
+                keys[i] = entry.getKey();
+                values[i++] = entry.getValue().getExpression();
+            }
+            return new MapExpression(keys, values);
+        }
+    }
+
+    static Object normalize(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return (long) value;
+        }
+        return value;
+    }
+
+    static Number toNumber(Object value) throws HCLParserException {
+        if (value instanceof Long || value instanceof Double) {
+            return (Number) value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            String text = ((String) value).trim();
+            try {
+                return text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0
+                        ? (Number) Long.parseLong(text) : (Number) Double.parseDouble(text);
+            } catch (NumberFormatException ex) {
+                throw new HCLParserException("Cannot convert '" + value + "' to a number", ex);
+            }
+        }
+        throw new HCLParserException("Cannot convert " + describe(value) + " to a number");
+    }
+
+    static boolean toBoolean(Object value) throws HCLParserException {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if ("true".equals(value)) {
+            return true;
+        }
+        if ("false".equals(value)) {
+            return false;
+        }
+        throw new HCLParserException("Cannot convert " + describe(value) + " to a boolean");
+    }
+
+    static String toText(Object value) throws HCLParserException {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Double) {
+            return String.valueOf(normalize((Double) value));
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value);
+        }
+        throw new HCLParserException("Cannot convert " + describe(value) + " to a string");
+    }
+
+    static String describe(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Collection) {
+            return "a list";
+        }
+        if (value instanceof Map) {
+            return "a map";
+        }
+        return "'" + value + "'";
+    }
+
+    /**
+     * A value known when compiling
+     */
+    static final class Literal extends HCLExpression {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) {
+            return value;
+        }
+    }
+
+    /**
+     * Literal text and interpolations concatenated into a string
+     */
+    static final class Template extends HCLExpression {
+        private final HCLExpression[] parts;
+
+        Template(HCLExpression[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            StringBuilder sb = new StringBuilder();
+            for (HCLExpression part : parts) {
+                sb.append(toText(part.evaluate(context)));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            collectReferences(parts, references);
+        }
+    }
+
+    /**
+     * The root of a variable, e.g. "var" in {@code var.region}
+     */
+    static final class Variable extends HCLExpression {
+        private final String name;
+
+        Variable(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            return context.getVariable(name);
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            references.add(Collections.singletonList(name));
+        }
+    }
+
+    /**
+     * Attribute, index and splat steps applied to a value
+     */
+    static final class Traversal extends HCLExpression {
+        private final HCLExpression source;
+        // a String for an attribute, an HCLExpression for an index, null for a splat
+        private final Object[] steps;
+
+        Traversal(HCLExpression source, Object[] steps) {
+            this.source = source;
+            this.steps = steps;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            return traverse(source.evaluate(context), 0, context);
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            if (source instanceof Variable) {
+                List<String> reference = new ArrayList<>();
+                reference.add(((Variable) source).name);
+                for (int step = 0; step < steps.length && steps[step] instanceof String; step++) {
+                    reference.add((String) steps[step]);
+                }
+                references.add(reference);
+            } else {
+                source.collectReferences(references);
+            }
+            for (Object step : steps) {
+                if (step instanceof HCLExpression) {
+                    ((HCLExpression) step).collectReferences(references);
+                }
+            }
+        }
+
+        private Object traverse(Object value, int step, HCLContext context) throws HCLParserException {
+            for (; step < steps.length; step++) {
+                if (steps[step] == null) {
+                    List<Object> results = new ArrayList<>();
+                    if (value instanceof Collection) {
+                        for (Object element : (Collection<?>) value) {
+                            results.add(traverse(element, step + 1, context));
+                        }
+                    } else if (value instanceof Map) {
+                        for (Object element : ((Map<?, ?>) value).values()) {
+                            results.add(traverse(element, step + 1, context));
+                        }
+                    } else if (value != null) {
+                        results.add(traverse(value, step + 1, context));
+                    }
+                    return results;
+                }
+                Object key = steps[step] instanceof HCLExpression ? ((HCLExpression) steps[step]).evaluate(context)
+                        : steps[step];
+                value = get(value, key);
+            }
+            return value;
+        }
+
+        private static Object get(Object value, Object key) throws HCLParserException {
+            if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                String name = toText(key);
+                Object result = map.get(name);
+                if (result == null && !map.containsKey(name)) {
+                    throw new HCLParserException("Unknown key '" + name + "'");
+                }
+                return result;
+            }
+            if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                Number index = toNumber(key);
+                if (!(index instanceof Long) || (Long) index < 0 || (Long) index >= list.size()) {
+                    throw new HCLParserException("Index " + key + " out of range for a list of " + list.size());
+                }
+                return list.get(((Long) index).intValue());
+            }
+            throw new HCLParserException("Cannot get '" + key + "' of " + describe(value));
+        }
+    }
+
+    /**
+     * A call of a function of the context
+     */
+    static final class Call extends HCLExpression {
+        private final String name;
+        private final HCLExpression[] arguments;
+
+        Call(String name, HCLExpression[] arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            HCLFunction function = context.getFunction(name);
+            List<Object> values = new ArrayList<>(arguments.length);
+            for (HCLExpression argument : arguments) {
+                values.add(argument.evaluate(context));
+            }
+            return function.call(values);
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            collectReferences(arguments, references);
+        }
+    }
+
+    /**
+     * Negation, "-" or "!"
+     */
+    static final class Unary extends HCLExpression {
+        private final char operator;
+        private final HCLExpression operand;
+
+        Unary(char operator, HCLExpression operand) {
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            Object value = operand.evaluate(context);
+            if (operator == '!') {
+                return !toBoolean(value);
+            }
+            Number number = toNumber(value);
+            return number instanceof Long ? (Object) (-number.longValue()) : (Object) (-number.doubleValue());
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            operand.collectReferences(references);
+        }
+    }
+
+    /**
+     * The binary operators, from the lowest to the highest precedence level
+     */
+    enum Operator {
+        OR("||", 0), AND("&&", 1), EQUAL("==", 2), NOT_EQUAL("!=", 2), LESS_EQUAL("<=", 3), GREATER_EQUAL(">=", 3),
+        LESS("<", 3), GREATER(">", 3), ADD("+", 4), SUBTRACT("-", 4), MULTIPLY("*", 5), DIVIDE("/", 5),
+        MODULO("%", 5);
+
+        static final int LEVELS = 6;
+
+        final String symbol;
+        final int level;
+
+        Operator(String symbol, int level) {
+            this.symbol = symbol;
+            this.level = level;
+        }
+    }
+
+    /**
+     * A binary operation, "||" and "&&" only evaluating their right operand when needed
+     */
+    static final class Binary extends HCLExpression {
+        private final Operator operator;
+        private final HCLExpression left;
+        private final HCLExpression right;
+
+        Binary(Operator operator, HCLExpression left, HCLExpression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            Object first = left.evaluate(context);
+            switch (operator) {
+            case OR:
+                return toBoolean(first) || toBoolean(right.evaluate(context));
+            case AND:
+                return toBoolean(first) && toBoolean(right.evaluate(context));
+            case EQUAL:
+                return same(first, right.evaluate(context));
+            case NOT_EQUAL:
+                return !same(first, right.evaluate(context));
+            default:
+                return arithmetic(toNumber(first), toNumber(right.evaluate(context)));
+            }
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            left.collectReferences(references);
+            right.collectReferences(references);
+        }
+
+        private static boolean same(Object first, Object second) {
+            if (first instanceof Number && second instanceof Number) {
+                return ((Number) first).doubleValue() == ((Number) second).doubleValue();
+            }
+            return first == null ? second == null : first.equals(second);
+        }
+
+        private Object arithmetic(Number first, Number second) throws HCLParserException {
+            if (first instanceof Long && second instanceof Long) {
+                long a = first.longValue();
+                long b = second.longValue();
+                switch (operator) {
+                case LESS_EQUAL:
+                    return a <= b;
+                case GREATER_EQUAL:
+                    return a >= b;
+                case LESS:
+                    return a < b;
+                case GREATER:
+                    return a > b;
+                case ADD:
+                    return a + b;
+                case SUBTRACT:
+                    return a - b;
+                case MULTIPLY:
+                    return a * b;
+                default:
+                    if (b == 0) {
+                        throw new HCLParserException("Division by zero");
+                    }
+                    return operator == Operator.DIVIDE ? a / b : a % b;
+                }
+            }
+            double a = first.doubleValue();
+            double b = second.doubleValue();
+            switch (operator) {
+            case LESS_EQUAL:
+                return a <= b;
+            case GREATER_EQUAL:
+                return a >= b;
+            case LESS:
+                return a < b;
+            case GREATER:
+                return a > b;
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return a / b;
+            default:
+                return a % b;
+            }
+        }
+    }
+
+    /**
+     * {@code condition ? whenTrue : whenFalse}
+     */
+    static final class Conditional extends HCLExpression {
+        private final HCLExpression condition;
+        private final HCLExpression whenTrue;
+        private final HCLExpression whenFalse;
+
+        Conditional(HCLExpression condition, HCLExpression whenTrue, HCLExpression whenFalse) {
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            return toBoolean(condition.evaluate(context)) ? whenTrue.evaluate(context) : whenFalse.evaluate(context);
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            condition.collectReferences(references);
+            whenTrue.collectReferences(references);
+            whenFalse.collectReferences(references);
+        }
+    }
+
+    /**
+     * An array value or a list literal of an interpolation
+     */
+    static final class ListExpression extends HCLExpression {
+        private final HCLExpression[] elements;
+
+        ListExpression(HCLExpression[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            List<Object> values = new ArrayList<>(elements.length);
+            for (HCLExpression element : elements) {
+                values.add(element.evaluate(context));
+            }
+            return values;
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            collectReferences(elements, references);
+        }
+    }
+
+    /**
+     * A map value
+     */
+    static final class MapExpression extends HCLExpression {
+        private final String[] keys;
+        private final HCLExpression[] values;
+
+        MapExpression(String[] keys, HCLExpression[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public Object evaluate(HCLContext context) throws HCLParserException {
+            Map<String, Object> map = new LinkedHashMap<>(keys.length * 4 / 3 + 1);
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], values[i].evaluate(context));
+            }
+            return map;
+        }
+
+        @Override
+        void collectReferences(List<List<String>> references) {
+            collectReferences(values, references);
+        }
+    }
+}
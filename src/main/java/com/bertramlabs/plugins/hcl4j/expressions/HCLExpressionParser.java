@@ -0,0 +1,330 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.expressions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bertramlabs.plugins.hcl4j.HCLParserException;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Binary;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Call;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Conditional;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.ListExpression;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Literal;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Operator;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Template;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Traversal;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Unary;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression.Variable;
+
+/**
+ * Recursive descent parser compiling a string value and its interpolations into an
+ * {@link HCLExpression}
+ *
+ * @author jstockall
+ */
+final class HCLExpressionParser {
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private final String source;
+    private final int length;
+    private int position;
+
+    HCLExpressionParser(String source) {
+        this.source = source;
+        this.length = source.length();
+    }
+
+    /**
+     * @return the whole source compiled as a template
+     */
+    HCLExpression parseTemplate() throws HCLParserException {
+        return template(false);
+    }
+
+    /**
+     * Literal text and interpolations up to the end of the source, or the closing quote of a
+     * string within an interpolation. Only strings within interpolations have escapes, those of
+     * the value itself were resolved by the lexer.
+     */
+    private HCLExpression template(boolean quoted) throws HCLParserException {
+        List<HCLExpression> parts = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            if (position >= length) {
+                if (quoted) {
+                    throw error("unterminated string");
+                }
+                break;
+            }
+            char c = source.charAt(position);
+            if (quoted && c == '"') {
+                position++;
+                break;
+            }
+            if (source.startsWith("$${", position)) {
+                text.append("${");
+                position += 3;
+            } else if (source.startsWith("${", position)) {
+                position += 2;
+                if (text.length() > 0) {
+                    parts.add(new Literal(text.toString()));
+                    text.setLength(0);
+                }
+                parts.add(expression());
+                expect('}');
+            } else if (quoted && c == '\\' && position + 1 < length) {
+                text.append(escaped(source.charAt(position + 1)));
+                position += 2;
+            } else {
+                text.append(c);
+                position++;
+            }
+        }
+        if (text.length() > 0 || parts.isEmpty()) {
+            parts.add(new Literal(text.toString()));
+        }
+        // a single interpolation keeps the type of its value
+        return parts.size() == 1 ? parts.get(0) : new Template(parts.toArray(new HCLExpression[parts.size()]));
+    }
+
+    private HCLExpression expression() throws HCLParserException {
+        HCLExpression condition = binary(0);
+        skipSpace();
+        if (accept('?')) {
+            HCLExpression whenTrue = expression();
+            expect(':');
+            HCLExpression whenFalse = expression();
+            return new Conditional(condition, whenTrue, whenFalse);
+        }
+        return condition;
+    }
+
+    private HCLExpression binary(int level) throws HCLParserException {
+        if (level == Operator.LEVELS) {
+            return unary();
+        }
+        HCLExpression left = binary(level + 1);
+        while (true) {
+            skipSpace();
+            Operator operator = operatorAt(level);
+            if (operator == null) {
+                return left;
+            }
+            position += operator.symbol.length();
+            left = new Binary(operator, left, binary(level + 1));
+        }
+    }
+
+    private Operator operatorAt(int level) {
+        for (Operator operator : OPERATORS) {
+            if (operator.level == level && source.startsWith(operator.symbol, position)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    private HCLExpression unary() throws HCLParserException {
+        skipSpace();
+        if (accept('-')) {
+            return new Unary('-', unary());
+        }
+        if (position + 1 < length && source.charAt(position) == '!' && source.charAt(position + 1) != '=') {
+            position++;
+            return new Unary('!', unary());
+        }
+        return postfix(primary());
+    }
+
+    private HCLExpression postfix(HCLExpression source) throws HCLParserException {
+        List<Object> steps = new ArrayList<>();
+        while (position < length) {
+            char c = this.source.charAt(position);
+            if (c == '.') {
+                position++;
+                if (accept('*')) {
+                    steps.add(null);
+                } else if (position < length && isDigit(this.source.charAt(position))) {
+                    int start = position;
+                    while (position < length && isDigit(this.source.charAt(position))) {
+                        position++;
+                    }
+                    steps.add(this.source.substring(start, position));
+                } else {
+                    steps.add(identifier());
+                }
+            } else if (c == '[') {
+                position++;
+                skipSpace();
+                if (accept('*')) {
+                    steps.add(null);
+                } else {
+                    HCLExpression index = expression();
+                    steps.add(index instanceof Literal ? ((Literal) index).value : index);
+                }
+                expect(']');
+            } else {
+                break;
+            }
+        }
+        return steps.isEmpty() ? source : new Traversal(source, steps.toArray());
+    }
+
+    private HCLExpression primary() throws HCLParserException {
+        if (position >= length) {
+            throw error("expression expected");
+        }
+        char c = source.charAt(position);
+        if (c == '(') {
+            position++;
+            HCLExpression expression = expression();
+            expect(')');
+            return expression;
+        }
+        if (c == '"') {
+            position++;
+            return template(true);
+        }
+        if (isDigit(c)) {
+            return number();
+        }
+        if (c == '[') {
+            position++;
+            return new ListExpression(list(']'));
+        }
+        if (isIdentifierStart(c)) {
+            String name = identifier();
+            if ("true".equals(name) || "false".equals(name)) {
+                return new Literal("true".equals(name));
+            }
+            if (accept('(')) {
+                return new Call(name, list(')'));
+            }
+            return new Variable(name);
+        }
+        throw error("unexpected '" + c + "'");
+    }
+
+    /**
+     * @return the comma separated expressions up to the closing character, which is consumed
+     */
+    private HCLExpression[] list(char close) throws HCLParserException {
+        List<HCLExpression> elements = new ArrayList<>();
+        skipSpace();
+        while (!accept(close)) {
+            elements.add(expression());
+            skipSpace();
+            if (!accept(',')) {
+                expect(close);
+                break;
+            }
+            skipSpace();
+        }
+        return elements.toArray(new HCLExpression[elements.size()]);
+    }
+
+    private HCLExpression number() throws HCLParserException {
+        int start = position;
+        boolean integral = true;
+        while (position < length && isDigit(source.charAt(position))) {
+            position++;
+        }
+        if (position + 1 < length && source.charAt(position) == '.' && isDigit(source.charAt(position + 1))) {
+            integral = false;
+            position++;
+            while (position < length && isDigit(source.charAt(position))) {
+                position++;
+            }
+        }
+        if (position < length && (source.charAt(position) == 'e' || source.charAt(position) == 'E')) {
+            integral = false;
+            position++;
+            if (position < length && (source.charAt(position) == '+' || source.charAt(position) == '-')) {
+                position++;
+            }
+            while (position < length && isDigit(source.charAt(position))) {
+                position++;
+            }
+        }
+        String text = source.substring(start, position);
+        try {
+            return new Literal(integral ? (Object) Long.parseLong(text) : (Object) Double.parseDouble(text));
+        } catch (NumberFormatException ex) {
+            throw error("malformed number " + text);
+        }
+    }
+
+    private String identifier() throws HCLParserException {
+        int start = position;
+        if (position >= length || !isIdentifierStart(source.charAt(position))) {
+            throw error("name expected");
+        }
+        while (position < length && (isIdentifierStart(source.charAt(position)) || isDigit(source.charAt(position))
+                || source.charAt(position) == '-')) {
+            position++;
+        }
+        return source.substring(start, position);
+    }
+
+    private void skipSpace() {
+        while (position < length && Character.isWhitespace(source.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean accept(char c) {
+        if (position < length && source.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws HCLParserException {
+        skipSpace();
+        if (!accept(c)) {
+            throw error("'" + c + "' expected");
+        }
+    }
+
+    private HCLParserException error(String reason) {
+        String shown = source.length() > 100 ? source.substring(0, 100) + "..." : source;
+        return new HCLParserException("Invalid interpolation at position " + position + " of '" + shown + "': " + reason);
+    }
+
+    private static char escaped(char c) {
+        switch (c) {
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        default:
+            return c;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+}
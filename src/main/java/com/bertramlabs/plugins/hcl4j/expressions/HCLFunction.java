@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.expressions;
+
+import java.util.List;
+
+import com.bertramlabs.plugins.hcl4j.HCLParserException;
+
+/**
+ * A function that interpolations can call, registered with {@link HCLContext#setFunction}
+ *
+ * @author jstockall
+ */
+public interface HCLFunction {
+
+    /**
+     * @param arguments the evaluated arguments: strings, numbers as {@link Long} or {@link Double},
+     *            booleans, lists and maps
+     * @return the result, of one of the argument types
+     *
+     * @throws HCLParserException
+     *             If the arguments are not valid for the function
+     */
+    Object call(List<Object> arguments) throws HCLParserException;
+}
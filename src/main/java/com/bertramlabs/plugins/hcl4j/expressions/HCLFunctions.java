@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.expressions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.bertramlabs.plugins.hcl4j.HCLParserException;
+
+/**
+ * The functions available in every {@link HCLContext}
+ *
+ * @author jstockall
+ */
+final class HCLFunctions {
+
+    static final Map<String, HCLFunction> STANDARD;
+
+    static {
+        Map<String, HCLFunction> functions = new HashMap<>();
+        functions.put("concat", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                List<Object> result = new ArrayList<>();
+                for (Object argument : arguments) {
+                    result.addAll(list("concat", argument));
+                }
+                return result;
+            }
+        });
+        functions.put("element", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                check("element", arguments, 2, 2);
+                List<?> list = list("element", arguments.get(0));
+                if (list.isEmpty()) {
+                    throw new HCLParserException("element: the list is empty");
+                }
+                long index = HCLExpression.toNumber(arguments.get(1)).longValue();
+                return list.get((int) (Math.abs(index) % list.size()));
+            }
+        });
+        functions.put("join", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                check("join", arguments, 2, Integer.MAX_VALUE);
+                String separator = HCLExpression.toText(arguments.get(0));
+                StringBuilder sb = new StringBuilder();
+                for (Object argument : arguments.subList(1, arguments.size())) {
+                    for (Object element : list("join", argument)) {
+                        if (sb.length() > 0) {
+                            sb.append(separator);
+                        }
+                        sb.append(HCLExpression.toText(element));
+                    }
+                }
+                return sb.toString();
+            }
+        });
+        functions.put("length", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                check("length", arguments, 1, 1);
+                Object value = arguments.get(0);
+                if (value instanceof Collection) {
+                    return (long) ((Collection<?>) value).size();
+                }
+                if (value instanceof Map) {
+                    return (long) ((Map<?, ?>) value).size();
+                }
+                return (long) HCLExpression.toText(value).length();
+            }
+        });
+        functions.put("lookup", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                check("lookup", arguments, 2, 3);
+                if (!(arguments.get(0) instanceof Map)) {
+                    throw new HCLParserException("lookup: " + HCLExpression.describe(arguments.get(0)) + " is not a map");
+                }
+                Map<?, ?> map = (Map<?, ?>) arguments.get(0);
+                String key = HCLExpression.toText(arguments.get(1));
+                if (map.containsKey(key)) {
+                    return map.get(key);
+                }
+                if (arguments.size() == 3) {
+                    return arguments.get(2);
+                }
+                throw new HCLParserException("lookup: unknown key '" + key + "'");
+            }
+        });
+        functions.put("lower", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                check("lower", arguments, 1, 1);
+                return HCLExpression.toText(arguments.get(0)).toLowerCase(Locale.ENGLISH);
+            }
+        });
+        functions.put("split", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                check("split", arguments, 2, 2);
+                String separator = HCLExpression.toText(arguments.get(0));
+                String text = HCLExpression.toText(arguments.get(1));
+                List<Object> result = new ArrayList<>();
+                if (separator.isEmpty()) {
+                    for (int i = 0; i < text.length(); i++) {
+                        result.add(String.valueOf(text.charAt(i)));
+                    }
+                    return result;
+                }
+                int start = 0;
+                for (int end; (end = text.indexOf(separator, start)) >= 0; start = end + separator.length()) {
+                    result.add(text.substring(start, end));
+                }
+                result.add(text.substring(start));
+                return result;
+            }
+        });
+        functions.put("upper", new HCLFunction() {
+            @Override
+            public Object call(List<Object> arguments) throws HCLParserException {
+                check("upper", arguments, 1, 1);
+                return HCLExpression.toText(arguments.get(0)).toUpperCase(Locale.ENGLISH);
+            }
+        });
+        STANDARD = Collections.unmodifiableMap(functions);
+    }
+
+    private HCLFunctions() {
+    }
+
+    private static void check(String name, List<Object> arguments, int min, int max) throws HCLParserException {
+        if (arguments.size() < min || arguments.size() > max) {
+            throw new HCLParserException(name + ": " + arguments.size() + " arguments given, expected "
+                    + (min == max ? String.valueOf(min) : max == Integer.MAX_VALUE ? min + " or more" : min + " to " + max));
+        }
+    }
+
+    private static List<?> list(String name, Object value) throws HCLParserException {
+        if (value instanceof List) {
+            return (List<?>) value;
+        }
+        throw new HCLParserException(name + ": " + HCLExpression.describe(value) + " is not a list");
+    }
+}
@@ -15,32 +15,41 @@
  */
 package com.bertramlabs.plugins.hcl4j.symbols;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Collections;
+import java.util.List;
 
 public abstract class GenericSymbol implements Symbol {
-	private Integer line;
-	private Integer column;
-	private Integer position;
-	private Integer length;
+	// -1 while unknown, reported as null
+	private int line = -1;
+	private int column = -1;
+	private int position = -1;
+	private int length = -1;
+	// offsets applied to this symbol and everything below it, see shift()
+	private int positionShift;
+	private int lineShift;
 
 	private String name;
 	private HCLValue value;
 
-	private Set<Symbol> children = new LinkedHashSet<Symbol>();
-	private Set<Symbol> attributes = new LinkedHashSet<Symbol>();
+	// created on first use, as most symbols never have children or attributes
+	private List<Symbol> children;
+	private List<Symbol> attributes;
 	private Symbol parent;
+	private boolean frozen;
 
 	public String getName() {
 		return name;
 	}
 
 	public void setName(String name) {
+		checkNotFrozen();
 		this.name = name;
 	}
 
 	public void setValue(HCLValue value) {
+		checkNotFrozen();
 		this.value = value;
 	}
 
@@ -50,31 +59,57 @@ public abstract class GenericSymbol implements Symbol {
 
 
 	public Integer getLine() {
-		return line;
+		return line < 0 ? null : line + inheritedShift(true);
 	}
 
 	public Integer getLength() {
-		return length;
+		return length < 0 ? null : length;
 	}
 
 	public void setLength(Integer length) {
-		this.length = length;
+		checkNotFrozen();
+		this.length = unknownIfNull(length);
 	}
 
 	public Integer getColumn() {
-		return column;
+		return column < 0 ? null : column;
 	}
 
 	public Integer getPosition() {
-		return position;
+		return position < 0 ? null : position + inheritedShift(false);
 	}
 
+	/**
+	 * Moves this symbol and all of its descendants by the given number of characters and lines,
+	 * without visiting the descendants. Used when text is inserted or removed ahead of the symbol.
+	 */
+	public void shift(int characters, int lines) {
+		checkNotFrozen();
+		positionShift += characters;
+		lineShift += lines;
+	}
+
+	private int inheritedShift(boolean lines) {
+		int shift = 0;
+		for(Symbol symbol = this; symbol instanceof GenericSymbol; symbol = symbol.getParent()) {
+			shift += lines ? ((GenericSymbol) symbol).lineShift : ((GenericSymbol) symbol).positionShift;
+		}
+		return shift;
+	}
+
+	/**
+	 * @return the children in the order they were appended, an empty immutable list until the
+	 *         first is appended
+	 */
 	public Collection<Symbol> getChildren() {
-		return children;
+		return children == null ? Collections.<Symbol>emptyList() : children;
 	}
 
+	/**
+	 * @return the attributes in the order they were appended, see {@link #getChildren()}
+	 */
 	public Collection<Symbol> getAttributes() {
-		return attributes;
+		return attributes == null ? Collections.<Symbol>emptyList() : attributes;
 	}
 
 	public Symbol getParent() {
@@ -82,22 +117,80 @@ public abstract class GenericSymbol implements Symbol {
 	}
 
 	public void setParent(Symbol symbol) {
+		checkNotFrozen();
 		this.parent = symbol;
 	}
 
 	public void appendChild(Symbol symbol) {
+		checkNotFrozen();
+		if(children == null) {
+			children = new ArrayList<Symbol>(4);
+		}
 		children.add(symbol);
 	}
 
 	public void appendAttribute(Symbol symbol) {
+		checkNotFrozen();
+		if(attributes == null) {
+			attributes = new ArrayList<Symbol>(4);
+		}
 		attributes.add(symbol);
 	}
 
+	/**
+	 * Makes this symbol, its value and everything below it read only. Setters then throw an
+	 * {@link UnsupportedOperationException} and the collections returned cannot be modified, so
+	 * the symbols can be read by any number of threads without locking once they were handed over
+	 * safely, e.g. through a final field or a concurrent collection. The public fields of the
+	 * symbols and their values are left to the caller not to change.
+	 */
+	public void freeze() {
+		if(frozen) {
+			return;
+		}
+		// children may be read on first access, which has to happen before they are fixed
+		for(Symbol child : getChildren()) {
+			freeze(child);
+		}
+		for(Symbol attribute : getAttributes()) {
+			freeze(attribute);
+		}
+		if(children != null) {
+			children = Collections.unmodifiableList(children);
+		}
+		if(attributes != null) {
+			attributes = Collections.unmodifiableList(attributes);
+		}
+		if(value != null) {
+			value.freeze();
+		}
+		frozen = true;
+	}
+
+	/**
+	 * @return whether this symbol is read only, see {@link #freeze()}
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private static void freeze(Symbol symbol) {
+		if(symbol instanceof GenericSymbol) {
+			((GenericSymbol) symbol).freeze();
+		}
+	}
+
+	protected void checkNotFrozen() {
+		if(frozen) {
+			throw new UnsupportedOperationException(getSymbolName() + " " + name + " is frozen");
+		}
+	}
+
 	public GenericSymbol(String name) {
 		this.name = name;
 	}
 
-	public GenericSymbol(String name,HCLValue value,Integer line, Integer column,Integer position) {
+	public GenericSymbol(String name,HCLValue value,int line, int column,int position) {
 		this.name = name;
 		this.value = value;
 		this.line = line;
@@ -105,10 +198,23 @@ public abstract class GenericSymbol implements Symbol {
 		this.position = position;
 	}
 
+	/**
+	 * @param line the line, null if it is not known
+	 * @param column the column, null if it is not known
+	 * @param position the character offset, null if it is not known
+	 */
+	public GenericSymbol(String name,HCLValue value,Integer line, Integer column,Integer position) {
+		this(name,value,unknownIfNull(line),unknownIfNull(column),unknownIfNull(position));
+	}
+
+	static int unknownIfNull(Integer value) {
+		return value == null ? -1 : value;
+	}
+
     @Override
     public String toString() {
         return String.format(
                 "%s [line=%s, column=%s, position=%s, length=%s, name=%s, value=%s, children=%s, attributes=%s]",
-                getSymbolName(), line, column, position, length, name, value, children, attributes);
+                getSymbolName(), getLine(), getColumn(), getPosition(), getLength(), name, value, getChildren(), getAttributes());
     }
 }
@@ -16,32 +16,59 @@
 package com.bertramlabs.plugins.hcl4j.symbols;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class HCLArray extends HCLValue {
+	/**
+	 * The shared empty array, which cannot be added to
+	 */
+	public static final HCLArray EMPTY = new HCLArray(Collections.<HCLValue>emptyList());
+
+	static {
+		EMPTY.freeze();
+	}
+
 	public String parentKey;
 
 	public HCLArray() {
-		super("array",null);
+		super(Type.ARRAY,null);
 
 		this.value = new ArrayList<HCLValue>();
 	}
 
 	public HCLArray(HCLArray parent) {
-		super("array",null);
+		super(Type.ARRAY,null);
 		this.parent = parent;
 		parent.add(this);
 		this.value = new ArrayList<HCLValue>();
 	}
 
 	public HCLArray(HCLMap parentMap, String parentKey) {
-		super("array",null);
+		super(Type.ARRAY,null);
 		this.parent = parentMap;
 		this.parentKey = parentKey;
 		parentMap.add(parentKey,this);
 		this.value = new ArrayList<HCLValue>();
 	}
 
+	private HCLArray(List<HCLValue> values) {
+		super(Type.ARRAY,values);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void freeze() {
+		if(isFrozen()) {
+			return;
+		}
+		for(HCLValue element : ((List<HCLValue>)value)) {
+			element.freeze();
+		}
+		value = Collections.unmodifiableList((List<HCLValue>)value);
+		super.freeze();
+	}
+
 	@SuppressWarnings("unchecked")
     public void add(HCLValue val) {
 		((List<HCLValue>)value).add(val);
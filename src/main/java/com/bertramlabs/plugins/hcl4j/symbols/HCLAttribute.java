@@ -18,11 +18,15 @@ package com.bertramlabs.plugins.hcl4j.symbols;
 public class HCLAttribute  extends GenericSymbol {
 
 
-	public HCLAttribute(String name, HCLValue value, Integer line, Integer column,Integer position) {
+	public HCLAttribute(String name, HCLValue value, int line, int column,int position) {
 		super(name,value,line,column,position);
 		this.value = value;
 	}
 
+	public HCLAttribute(String name, HCLValue value, Integer line, Integer column,Integer position) {
+		this(name,value,unknownIfNull(line),unknownIfNull(column),unknownIfNull(position));
+	}
+
 	public String getSymbolName() {
 		return "Attribute";
 	}
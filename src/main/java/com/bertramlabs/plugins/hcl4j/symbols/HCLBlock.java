@@ -15,20 +15,33 @@
  */
 package com.bertramlabs.plugins.hcl4j.symbols;
 
+import java.util.Collections;
 import java.util.List;
 
 public class HCLBlock extends GenericSymbol {
 
-	public HCLBlock(List<String> blockNames, Symbol parent,Integer line, Integer column,Integer position) {
+	public HCLBlock(List<String> blockNames, Symbol parent,int line, int column,int position) {
 		super(blockNames.get(0),null,line,column,position);
 		this.blockNames = blockNames;
 		this.setParent(parent);
 	}
 
+	public HCLBlock(List<String> blockNames, Symbol parent,Integer line, Integer column,Integer position) {
+		this(blockNames,parent,unknownIfNull(line),unknownIfNull(column),unknownIfNull(position));
+	}
+
 	public String getSymbolName() {
 		return "Block";
 	}
 
+	@Override
+	public void freeze() {
+		if(!isFrozen()) {
+			blockNames = Collections.unmodifiableList(blockNames);
+		}
+		super.freeze();
+	}
+
 	public List<String> blockNames;
 
 
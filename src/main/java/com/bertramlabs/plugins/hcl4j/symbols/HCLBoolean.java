@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.symbols;
+
+/**
+ * The two boolean values. They are shared by every document and frozen, so their parent is never
+ * set and their public fields must not be assigned.
+ */
+public final class HCLBoolean extends HCLValue {
+	public static final HCLBoolean TRUE = new HCLBoolean(true);
+	public static final HCLBoolean FALSE = new HCLBoolean(false);
+
+	static {
+		TRUE.freeze();
+		FALSE.freeze();
+	}
+
+	private final boolean booleanValue;
+
+	private HCLBoolean(boolean booleanValue) {
+		super(Type.BOOLEAN,booleanValue ? "true" : "false");
+		this.booleanValue = booleanValue;
+	}
+
+	public static HCLBoolean valueOf(boolean booleanValue) {
+		return booleanValue ? TRUE : FALSE;
+	}
+
+	public boolean booleanValue() {
+		return booleanValue;
+	}
+}
@@ -15,33 +15,60 @@
  */
 package com.bertramlabs.plugins.hcl4j.symbols;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class HCLMap extends HCLValue {
+	/**
+	 * The shared empty map, which cannot be added to
+	 */
+	public static final HCLMap EMPTY = new HCLMap(Collections.<String,HCLValue>emptyMap());
+
+	static {
+		EMPTY.freeze();
+	}
+
 	public String parentKey;
 
 	public HCLMap() {
-		super("map",null);
+		super(Type.MAP,null);
 
 		this.value = new LinkedHashMap<String,HCLValue>();
 	}
 
 	public HCLMap(HCLArray parentArray) {
-		super("map",null);
+		super(Type.MAP,null);
 		this.parent = parentArray;
 
 		parentArray.add(this);
 		this.value = new LinkedHashMap<String,HCLValue>();
 	}
 	public HCLMap(HCLMap parent, String parentKey) {
-		super("map",null);
+		super(Type.MAP,null);
 		this.parent = parent;
 		this.parentKey = parentKey;
 		parent.add(parentKey,this);
 		this.value = new LinkedHashMap<String,HCLValue>();
 	}
 
+	private HCLMap(Map<String,HCLValue> values) {
+		super(Type.MAP,values);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void freeze() {
+		if(isFrozen()) {
+			return;
+		}
+		for(HCLValue element : ((Map<String,HCLValue>)value).values()) {
+			element.freeze();
+		}
+		value = Collections.unmodifiableMap((Map<String,HCLValue>)value);
+		super.freeze();
+	}
+
 	@SuppressWarnings("unchecked")
     public void add(String key, HCLValue val) {
 		((Map<String,HCLValue>)value).put(key,val);
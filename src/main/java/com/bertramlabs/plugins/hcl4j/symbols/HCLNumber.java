@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bertramlabs.plugins.hcl4j.symbols;
+
+/**
+ * A number, parsed once when it is read. Integral numbers are kept as a long and all others as
+ * a double, sharing the same field. The text of the number stays in {@link #value}.
+ */
+public class HCLNumber extends HCLValue {
+	private final long bits;
+	private final boolean integral;
+
+	public HCLNumber(long value) {
+		this(Long.toString(value),value);
+	}
+
+	public HCLNumber(double value) {
+		this(Double.toString(value),value);
+	}
+
+	private HCLNumber(String text, long value) {
+		super(Type.NUMBER,text);
+		this.bits = value;
+		this.integral = true;
+	}
+
+	private HCLNumber(String text, double value) {
+		super(Type.NUMBER,text);
+		this.bits = Double.doubleToRawLongBits(value);
+		this.integral = false;
+	}
+
+	/**
+	 * @param text the number as written in the document
+	 * @return the parsed number, or a plain number value holding the text if it is not a valid
+	 *         number, which fails once it is exported as it always did
+	 */
+	public static HCLValue parse(String text) {
+		if(text.indexOf('.') < 0) {
+			try {
+				return new HCLNumber(text,Long.parseLong(text));
+			} catch(NumberFormatException ex) {
+				// out of range for a long, or malformed
+			}
+		}
+		try {
+			return new HCLNumber(text,Double.parseDouble(text));
+		} catch(NumberFormatException ex) {
+			return new HCLValue(Type.NUMBER,text);
+		}
+	}
+
+	public boolean isIntegral() {
+		return integral;
+	}
+
+	public long longValue() {
+		return integral ? bits : (long) Double.longBitsToDouble(bits);
+	}
+
+	public double doubleValue() {
+		return integral ? bits : Double.longBitsToDouble(bits);
+	}
+
+	@Override
+	public Number numberValue() {
+		return integral ? (Number) Long.valueOf(bits) : (Number) Double.valueOf(Double.longBitsToDouble(bits));
+	}
+}
@@ -15,23 +15,125 @@
  */
 package com.bertramlabs.plugins.hcl4j.symbols;
 
+import java.util.Locale;
+
+import com.bertramlabs.plugins.hcl4j.HCLParserException;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLContext;
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression;
+
 /**
  * A Class representation of an attributes value. This could be a generic type like a "string", "number", "boolean", "array" (see {@link HCLArray}, or "map" (see {@link HCLMap}).
  * This is an internal parser lexer class and should not be needed externally.
  * @author David Estes
  */
 public class HCLValue {
+
+	/**
+	 * The kind of a value, which exports dispatch on
+	 */
+	public enum Type {
+		STRING, NUMBER, BOOLEAN, ARRAY, MAP;
+
+		private final String typeName = name().toLowerCase(Locale.ENGLISH);
+
+		/**
+		 * @return the lower case name used by the parser events, e.g. "string"
+		 */
+		public String getTypeName() {
+			return typeName;
+		}
+
+		/**
+		 * @return the type with the given lower case name, or null if there is none
+		 */
+		public static Type forName(String typeName) {
+			for(Type type : values()) {
+				if(type.typeName.equals(typeName)) {
+					return type;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @deprecated the type name the value was created with, use {@link #getType()}
+	 */
+	@Deprecated
 	public String type;
 	public Object value;
 	public HCLValue parent;
+	private final Type valueType;
+	// compiled on the first evaluation
+	private volatile HCLExpression expression;
+	private boolean frozen;
+
+	public HCLValue(Type type, Object value) {
+		this.valueType = type;
+		this.type = type == null ? null : type.getTypeName();
+		this.value = value;
+	}
 
 	public HCLValue(String type, Object value) {
+		this(Type.forName(type), value);
 		this.type = type;
-		this.value = value;
+	}
+
+	public Type getType() {
+		return valueType;
+	}
+
+	/**
+	 * @return the number the text of this value stands for, a Long if it is integral and a Double
+	 *         otherwise
+	 * @throws HCLParserException if the value is not a valid number
+	 */
+	public Number numberValue() throws HCLParserException {
+		HCLValue number = value instanceof String ? HCLNumber.parse((String) value) : null;
+		if(number instanceof HCLNumber) {
+			return number.numberValue();
+		}
+		throw new HCLParserException("Error Parsing Numerical Value in HCL Attribute ", new NumberFormatException("For input string: \"" + value + "\""));
+	}
+
+	/**
+	 * Makes the elements of an array or map value, and their values, read only. See
+	 * {@link GenericSymbol#freeze()}.
+	 */
+	public void freeze() {
+		frozen = true;
+	}
+
+	/**
+	 * @return whether this value is read only, see {@link #freeze()}
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * @return the value compiled with its interpolations, once for the lifetime of the value
+	 * @throws HCLParserException if an interpolation or a number is malformed
+	 */
+	public HCLExpression getExpression() throws HCLParserException {
+		HCLExpression result = expression;
+		if(result == null) {
+			expression = result = HCLExpression.compile(this);
+		}
+		return result;
+	}
+
+	/**
+	 * @param context the variables and functions the interpolations refer to
+	 * @return the value with its interpolations resolved, see {@link HCLExpression}
+	 * @throws HCLParserException if an interpolation is malformed or cannot be evaluated
+	 */
+	public Object evaluate(HCLContext context) throws HCLParserException {
+		return getExpression().evaluate(context);
 	}
 
     @Override
     public String toString() {
-        return String.format("HCLValue [type=%s, value=%s]", type, value);
+        return String.format("HCLValue [type=%s, value=%s]", valueType == null ? type : valueType.getTypeName(), value);
     }
-}
\ No newline at end of file
+}
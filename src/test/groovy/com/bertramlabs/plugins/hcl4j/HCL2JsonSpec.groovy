@@ -0,0 +1,76 @@
+package com.bertramlabs.plugins.hcl4j
+
+import groovy.json.JsonSlurper
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCL2JsonSpec extends Specification {
+
+	static final String HCL = '''
+region = "us-east-1"
+ports = [80, 443]
+
+resource "aws_instance" "web" {
+  ami = "ami-1"
+  count = -2
+  ratio = 0.25
+  enabled = true
+  name = "quote \\" tab \\t ${var.x}"
+  tags = {Name: "web", nested: [1, {a: []}], empty: {}}
+  user_data = <<EOF
+echo "hi"
+EOF
+  ebs_block_device {
+    volume_size = 10
+  }
+  ebs_block_device {
+    volume_size = 20
+  }
+}
+
+resource "aws_instance" "db" {
+  ami = "ami-2"
+}
+
+resource "aws_instance" "web" {
+  tags "extra" {
+    Owner = "ops"
+  }
+}
+'''
+
+	void "should write the structure of the map export"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		when:
+		String json = new HCL2Json().toJson(configuration)
+		then:
+		new JsonSlurper().parseText(json) == new HCL2Map().toMap(configuration)
+		json.contains('"count":-2,"ratio":0.25,"enabled":true')
+		json.contains('"ebs_block_device":[{"volume_size":10},{"volume_size":20}]')
+		json.contains('"user_data":"echo \\"hi\\"\\n"')
+	}
+
+	void "should write to a stream as UTF-8"() {
+		given:
+		HCLObject configuration = new HCLParser().parse('name = "ünïcode\\u0001"\n')
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+		when:
+		new HCL2Json().toJson(configuration, bytes)
+		then:
+		new String(bytes.toByteArray(), 'UTF-8') == new HCL2Json().toJson(configuration)
+		new JsonSlurper().parseText(bytes.toString('UTF-8')) == new HCL2Map().toMap(configuration)
+	}
+
+	void "should report blocks that cannot be merged like the map export"() {
+		given:
+		HCLObject configuration = new HCLParser().parse('a = "x"\na "b" {\n  c = 1\n}\n')
+		when:
+		new HCL2Json().toJson(configuration)
+		then:
+		HCLParserException ex = thrown()
+		ex.message == 'HCL Block expression scope traverses an object value'
+	}
+}
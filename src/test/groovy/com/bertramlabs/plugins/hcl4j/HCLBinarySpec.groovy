@@ -0,0 +1,164 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLMap
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.channels.Channels
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * @author jstockall
+ */
+class HCLBinarySpec extends Specification {
+
+	static final String HCL = '''
+region = "us-east-1"
+
+resource "aws_instance" "web" {
+  ami = "ami-1"
+  count = -2
+  ratio = 0.25
+  enabled = true
+  name = "ünïcode ${var.x}"
+  tags = {Name: "web", ports: [80, 443, {a: []}], empty: {}}
+  user_data = <<EOF
+echo "hi"
+EOF
+  ebs_block_device {
+    volume_size = 10
+  }
+}
+'''
+
+	void "should read back the configuration it wrote"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+		when:
+		HCLBinary.write(configuration, Channels.newChannel(bytes))
+		HCLObject result = HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))
+		def block = result.rootBlocks[1]
+		then:
+		new HCL2Map().toMap(result) == new HCL2Map().toMap(configuration)
+		new HCL2String().toHcl(result) == new HCL2String().toHcl(configuration)
+		block.blockNames == ['resource', 'aws_instance', 'web']
+		[block.line, block.column, block.position, block.length] == [3, 0, 23, HCL.length() - 24]
+		block.children*.line == configuration.rootBlocks[1].children*.line
+		block.children*.position == configuration.rootBlocks[1].children*.position
+		block.children.every { it.parent.is(block) }
+		block.children[1].value.longValue() == -2L
+		block.children[2].value.doubleValue() == 0.25d
+		block.children[5].value.value.ports.parent.is(block.children[5].value)
+		block.children[5].value.value.ports.parentKey == 'ports'
+		block.children[5].value.value.empty.is(HCLMap.EMPTY)
+		block.children[7].children[0].parent.is(block.children[7])
+	}
+
+	void "should keep the source files of a merged configuration"() {
+		given:
+		Path directory = Files.createTempDirectory('hcl4j')
+		Path first = directory.resolve('a.tf')
+		Path second = directory.resolve('b.tf')
+		first.text = 'a "x" {\n  v = 1\n}\n'
+		second.text = 'b = "y"\n'
+		Path binary = directory.resolve('module.bin')
+		HCLObject configuration = new HCLParser().parseDirectory(directory)
+		when:
+		HCLBinary.write(configuration, binary)
+		HCLObject result = HCLBinary.read(binary)
+		then:
+		result.files*.source == [first, second]
+		result.getSource(result.rootBlocks[1]) == second
+		when:
+		HCLBinary.write(new HCLParser().parse(first), binary)
+		then:
+		HCLBinary.read(binary).source == first
+		cleanup:
+		directory.toFile().deleteDir()
+	}
+
+	void "should reject data it did not write"() {
+		given:
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+		HCLBinary.write(new HCLParser().parse(HCL), Channels.newChannel(bytes))
+		byte[] data = bytes.toByteArray()
+		byte[] newer = data.clone()
+		newer[4] = (byte) (HCLBinary.VERSION + 1)
+		when:
+		HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(HCL.bytes)))
+		then:
+		HCLParserException ex = thrown()
+		ex.message == 'Not an HCL binary configuration'
+		when:
+		HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(newer)))
+		then:
+		ex = thrown(HCLParserException)
+		ex.message == "Unsupported HCL binary version ${HCLBinary.VERSION + 1}, expected ${HCLBinary.VERSION}".toString()
+		when:
+		HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 3))))
+		then:
+		thrown(EOFException)
+	}
+
+	@Unroll
+	void "should fail on corrupt counts and lengths (#description) without allocating them"() {
+		given:
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+		bytes.write('HCLB'.bytes)
+		([HCLBinary.VERSION] + header).each { long value -> varint(bytes, value) }
+		when:
+		HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))
+		then:
+		Exception ex = thrown()
+		ex.class == expected
+		where:
+		description                 | header                     | expected
+		'string table of MAX_INT'   | [Integer.MAX_VALUE]        | EOFException
+		'negative string table'     | [-1L]                      | HCLParserException
+		'string of 1e9 bytes'       | [1, 1000000000]            | EOFException
+		'negative string length'    | [1, -2L]                   | HCLParserException
+		'1e9 files'                 | [0, 1000000000]            | EOFException
+		'1e9 symbols'               | [0, 1, 0, 1000000000]      | EOFException
+		'1e9 labels'                | [0, 1, 0, 1, 1, 1000000000] | EOFException
+	}
+
+	void "should read back numbers with the text they were written with"() {
+		given:
+		HCLObject configuration = new HCLParser().parse('a = 1.50\nb = 007\nc = -0\nd = 2.0\ne = 42\nf = 0.5\n')
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+		when:
+		HCLBinary.write(configuration, Channels.newChannel(bytes))
+		HCLObject result = HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))
+		then:
+		result.rootBlocks*.value*.value == ['1.50', '007', '-0', '2.0', '42', '0.5']
+		result.rootBlocks*.value*.numberValue() == configuration.rootBlocks*.value*.numberValue()
+	}
+
+	void "should fail on data nested without end rather than exhaust the stack"() {
+		given:
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+		bytes.write('HCLB'.bytes)
+		// no strings, one file without source holding one attribute
+		[HCLBinary.VERSION, 0, 1, 0, 1, 2, 0, 0, 0, 0, 0].each { long value -> varint(bytes, value) }
+		100000.times {
+			// an array of one array
+			varint(bytes, 7)
+			varint(bytes, 1)
+		}
+		when:
+		HCLBinary.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))
+		then:
+		HCLParserException ex = thrown()
+		ex.message == "Corrupt HCL binary configuration: nested deeper than ${HCLBinary.MAX_DEPTH} levels".toString()
+	}
+
+	private static void varint(ByteArrayOutputStream bytes, long value) {
+		while ((value & ~0x7FL) != 0) {
+			bytes.write((int) ((value & 0x7F) | 0x80))
+			value >>>= 7
+		}
+		bytes.write((int) value)
+	}
+}
@@ -0,0 +1,103 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLDiffSpec extends Specification {
+
+	static final String HCL = '''
+region = "us-east-1"
+
+resource "aws_instance" "web" {
+  ami = "ami-1"
+  count = 2
+  tags = {Name: "web", Owner: "ops"}
+  ports = [80, 443]
+  ebs_block_device {
+    volume_size = 10
+  }
+  ebs_block_device {
+    volume_size = 20
+  }
+}
+
+resource "aws_instance" "db" {
+  ami = "ami-2"
+}
+'''
+
+	void "should list the changed paths with their positions"() {
+		given:
+		HCLObject before = new HCLParser().parse(HCL)
+		HCLObject after = new HCLParser().parse('''
+resource "aws_instance" "web" {
+  count = 2.0
+  ami = "ami-3"
+  tags = {Name: "web", "a.b": "c"}
+  ports = [80, 8443]
+  ebs_block_device {
+    volume_size = 10
+  }
+  ebs_block_device {
+    volume_size = 30
+  }
+  monitoring = true
+}
+
+region = "us-east-1"
+
+output "ip" {
+  value = "x"
+}
+''')
+		when:
+		List<HCLDiff.Change> changes = new HCLDiff().diff(before, after)
+		then:
+		changes*.toString() == [
+			'CHANGED resource.aws_instance.web.ami [line=3, column=2]',
+			'ADDED resource.aws_instance.web.tags["a.b"] [line=4, column=2]',
+			'REMOVED resource.aws_instance.web.tags.Owner [line=4, column=2]',
+			'CHANGED resource.aws_instance.web.ports[1] [line=5, column=2]',
+			'CHANGED resource.aws_instance.web.ebs_block_device.volume_size [line=10, column=4]',
+			'ADDED resource.aws_instance.web.monitoring [line=12, column=2]',
+			'ADDED output.ip [line=17, column=0]',
+			'REMOVED resource.aws_instance.db [line=16, column=0]'
+		]
+		changes[0].before.value == 'ami-1'
+		changes[0].after.value == 'ami-3'
+	}
+
+	void "should find no changes between revisions of the same content"() {
+		expect:
+		new HCLDiff().diff(new HCLParser().parse(HCL), new HCLParser().parse(HCL)).isEmpty()
+		new HCLDiff().hash(new HCLParser().parse(HCL).rootBlocks[1]) == new HCLDiff().hash(new HCLParser().parse(HCL).rootBlocks[1])
+		new HCLDiff().hash(new HCLParser().parse(HCL).rootBlocks[1]) != new HCLDiff().hash(new HCLParser().parse(HCL).rootBlocks[2])
+	}
+
+	void "should only compare what differs from a frozen revision"() {
+		given:
+		HCLDiff diff = new HCLDiff()
+		HCLObject before = new HCLParser().parse(HCL).freeze()
+		HCLObject after = before.with('resource.aws_instance.db.ami', new HCLValue('string', 'ami-9'))
+		when:
+		List<HCLDiff.Change> changes = diff.diff(before, after)
+		then:
+		changes*.path == ['resource.aws_instance.db.ami']
+		// only the db blocks, their ami attributes and values were hashed
+		diff.frozenHashes.size() == 6
+		HCLQuery.compile(changes[0].path).selectFirst(after).is(changes[0].after)
+	}
+
+	void "should report changes between strings of colliding hashes"() {
+		given:
+		String hcl = 'resource "aws_instance" "web" {\n  security_group = "sg-AaBB"\n  tags = {Name: "Aa"}\n}\n'
+		String changed = hcl.replace('sg-AaBB', 'sg-BBAa').replace('"Aa"', '"BB"')
+		expect:
+		'Aa'.hashCode() == 'BB'.hashCode()
+		new HCLDiff().diff(new HCLParser().parse(hcl), new HCLParser().parse(changed))*.path == ['resource.aws_instance.web.security_group', 'resource.aws_instance.web.tags.Name']
+		new HCLDiff().diff(new HCLParser().parse(hcl).freeze(), new HCLParser().parse(changed).freeze())*.path == ['resource.aws_instance.web.security_group', 'resource.aws_instance.web.tags.Name']
+	}
+}
@@ -0,0 +1,105 @@
+package com.bertramlabs.plugins.hcl4j
+
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLDocumentSpec extends Specification {
+
+	static final String SOURCE = '''
+variable "region" {
+  default = "us-east-1"
+}
+
+# the instance
+resource "aws_instance" "web" {
+  ami = "ami-123"
+  tags = {
+    Name = "web"
+  }
+}
+
+count = 2
+
+resource "aws_instance" "db" {
+  ami = "ami-456"
+}
+'''
+
+	void "should re-lex only the edited block"() {
+		given:
+		HCLDocument document = new HCLDocument(SOURCE)
+		int offset = SOURCE.indexOf('ami-123')
+		when:
+		HCLObject configuration = document.applyEdit(offset, 8, 'ami-7890"\n  type = "t2.micro"')
+		then:
+		document.text.contains('ami = "ami-7890"\n  type = "t2.micro"\n')
+		// from the end of the variable block to the end of the edited resource
+		document.relexedLength == document.text.indexOf('}\n\ncount') - SOURCE.indexOf('}\n\n# the')
+		configuration.rootBlocks.toString() == fullParse(document.text)
+		new HCL2Map().toMap(configuration).resource.aws_instance.web.type == 't2.micro'
+		configuration.rootBlocks.last().line == 16
+	}
+
+	void "should match a full parse after edits across blocks"() {
+		given:
+		HCLDocument document = new HCLDocument(SOURCE)
+		expect:
+		document.applyEdit(offset, removed, inserted).rootBlocks.toString() == fullParse(document.text)
+		where:
+		offset                           | removed | inserted
+		0                                | 0       | 'a = 1\n'
+		SOURCE.indexOf('# the')          | 14      | ''
+		SOURCE.indexOf('count')          | 9       | 'count = 20'
+		SOURCE.indexOf('}\n\n# the')     | 0       | '  b = true\n'
+		SOURCE.indexOf('}\n\n# the')     | SOURCE.indexOf('  ami = "ami-123"') - offset | 'resource "x" "y" {\n'
+		SOURCE.length()                  | 0       | 'z = [1, 2]\n'
+	}
+
+	void "should recover after an edit that does not parse"() {
+		given:
+		HCLDocument document = new HCLDocument(SOURCE)
+		int offset = SOURCE.indexOf('2\n')
+		when:
+		document.applyEdit(offset, 0, '@')
+		then:
+		thrown(HCLParserException)
+		when:
+		HCLObject configuration = document.applyEdit(offset, 1, '')
+		then:
+		document.text == SOURCE
+		configuration.rootBlocks.toString() == fullParse(SOURCE)
+	}
+
+	void "should keep editing incrementally with comment markers inside strings"() {
+		given:
+		String source = SOURCE + """
+resource "aws_s3_bucket_policy" "logs" {
+  resource = "arn:aws:s3:::bucket/*"
+  policy = <<EOF
+/* not a comment
+EOF
+  path = "\${var.prefix}/*"
+}
+"""
+		HCLDocument document = new HCLDocument(source)
+		int offset = source.indexOf('ami-123')
+		when:
+		HCLObject configuration = document.applyEdit(offset, 7, 'ami-9')
+		then:
+		!HCLDocument.hasOpenComment(source)
+		document.relexedLength < source.length() / 2
+		configuration.rootBlocks.toString() == fullParse(document.text)
+		when:
+		configuration = document.applyEdit(0, 0, '/* open\n')
+		then:
+		HCLDocument.hasOpenComment(document.text)
+		document.relexedLength == document.text.length()
+		configuration.rootBlocks.toString() == fullParse(document.text)
+	}
+
+	private static String fullParse(String text) {
+		new HCLParser().parse(text).rootBlocks.toString()
+	}
+}
@@ -0,0 +1,149 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.expressions.HCLContext
+import com.bertramlabs.plugins.hcl4j.expressions.HCLEvaluator
+import com.bertramlabs.plugins.hcl4j.expressions.HCLFunction
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * @author jstockall
+ */
+class HCLEvaluatorSpec extends Specification {
+
+	static final String HCL = '''
+variable "environment" {}
+
+variable "region" {
+	default = "us-east-1"
+}
+
+locals {
+	prefix = "${var.environment}-${var.region}"
+	tags = {
+		Environment = "${var.environment}"
+	}
+}
+
+resource "aws_instance" "web" {
+	ami = "${data.aws_ami.ubuntu.id}"
+	name = "${local.prefix}-web"
+	ebs_block_device {
+		volume_size = 10
+	}
+}
+
+data "aws_ami" "ubuntu" {
+	id = "ami-${var.region}"
+}
+
+output "web_name" {
+	value = "${aws_instance.web.name} in ${path.module}"
+}
+'''
+
+	ForkJoinPool pool = new ForkJoinPool(4)
+
+	void cleanup() {
+		pool.shutdown()
+	}
+
+	void "should evaluate nodes after the nodes they refer to"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		HCLContext parent = new HCLContext().setVariable('path', [module: '/m'])
+		when:
+		Map<String, Object> result = new HCLEvaluator(pool).evaluate(configuration, [environment: 'prod'], parent)
+		then:
+		result.var == [environment: 'prod', region: 'us-east-1']
+		result.local == [prefix: 'prod-us-east-1', tags: [Environment: 'prod']]
+		result.data.aws_ami.ubuntu == [id: 'ami-us-east-1']
+		result.aws_instance.web == [ami: 'ami-us-east-1', name: 'prod-us-east-1-web', ebs_block_device: [volume_size: 10L]]
+		result.output.web_name == 'prod-us-east-1-web in /m'
+	}
+
+	void "should evaluate many independent configurations the same as one at a time"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		HCLContext parent = new HCLContext().setVariable('path', [module: '/m'])
+		HCLEvaluator evaluator = new HCLEvaluator(pool)
+		when:
+		List<String> names = (1..50).collect { evaluator.evaluate(configuration, [environment: "e${it}".toString()], parent).output.web_name }
+		then:
+		names == (1..50).collect { "e${it}-us-east-1-web in /m".toString() }
+	}
+
+	void "should report cycles before evaluating"() {
+		given:
+		HCLObject configuration = new HCLParser().parse('''
+locals {
+	a = "${local.b}"
+	b = "${local.c}-${var.x}"
+	c = "${local.a}"
+	d = "independent"
+}
+''')
+		when:
+		new HCLEvaluator(pool).evaluate(configuration, [x: 'x'])
+		then:
+		HCLParserException ex = thrown()
+		ex.message.startsWith('Cycle between references: ')
+		['local.a', 'local.b', 'local.c'].every { ex.message.contains(it) }
+		!ex.message.contains('local.d')
+	}
+
+	void "should evaluate references to a whole namespace after every node in it"() {
+		given:
+		String resources = (1..500).collect { """
+resource "aws_instance" "web${it}" {
+	id = "i-${it}"
+}
+""" }.join('')
+		HCLObject configuration = new HCLParser().parse("""
+output "count" {
+	value = "\${length(aws_instance.*.id)}"
+}
+
+output "first" {
+	value = "\${aws_instance[var.name].id}"
+}
+
+variable "name" {
+	default = "web1"
+}
+""" + resources)
+		when:
+		List<Map<String, Object>> results = (1..10).collect { new HCLEvaluator(pool).evaluate(configuration, [:]) }
+		then:
+		results.every { it.output.count == 500L && it.output.first == 'i-1' }
+	}
+
+	void "should report the node that fails"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		when:
+		new HCLEvaluator(pool).evaluate(configuration, [:])
+		then:
+		HCLParserException ex = thrown()
+		ex.message == "Error evaluating var.environment: No value for variable 'environment'"
+	}
+
+	@Timeout(10)
+	void "should report an error of a node to the caller rather than wait for its dependents"() {
+		given:
+		HCLObject configuration = new HCLParser().parse('''
+locals {
+	a = "${deep()}"
+	b = "${local.a}-b"
+	c = "${local.b}-c"
+}
+''')
+		HCLContext parent = new HCLContext().setFunction('deep', { List<Object> arguments -> throw new StackOverflowError() } as HCLFunction)
+		when:
+		new HCLEvaluator(pool).evaluate(configuration, [:], parent)
+		then:
+		thrown(StackOverflowError)
+	}
+}
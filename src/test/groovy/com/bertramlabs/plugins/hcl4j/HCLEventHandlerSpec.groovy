@@ -0,0 +1,76 @@
+package com.bertramlabs.plugins.hcl4j
+
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLEventHandlerSpec extends Specification {
+
+	void "should deliver events in document order"() {
+		given:
+		def hcl = '''
+service "myservice" {
+  description = "test"
+  tags = ["love", 1, [true]]
+  info {
+    meta = {name: "my name", ports: [80, 443]}
+  }
+}
+top = "level"
+'''
+		def events = []
+		def handler = new HCLEventHandler() {
+			void startBlock(List<String> labels, int line, int column, int position) { events << "startBlock ${labels}" }
+			void endBlock() { events << "endBlock" }
+			void startAttribute(String name, int line, int column, int position) { events << "startAttribute ${name}" }
+			void endAttribute() { events << "endAttribute" }
+			void startArray() { events << "startArray" }
+			void endArray() { events << "endArray" }
+			void startMap() { events << "startMap" }
+			void mapKey(String key) { events << "mapKey ${key}" }
+			void endMap() { events << "endMap" }
+			void scalar(String type, String value) { events << "${type} ${value}" }
+		}
+		when:
+		new HCLParser().parse(new StringReader(hcl), handler)
+		then:
+		events*.toString() == [
+			'startBlock [service, myservice]',
+			'startAttribute description', 'string test', 'endAttribute',
+			'startAttribute tags', 'startArray', 'string love', 'number 1', 'startArray', 'boolean true', 'endArray', 'endArray', 'endAttribute',
+			'startBlock [info]',
+			'startAttribute meta', 'startMap', 'mapKey name', 'string my name', 'mapKey ports', 'startArray', 'number 80', 'number 443', 'endArray', 'endMap', 'endAttribute',
+			'endBlock',
+			'endBlock',
+			'startAttribute top', 'string level', 'endAttribute'
+		]
+	}
+
+	void "should build the same tree through the tree builder"() {
+		given:
+		def hcl = '''
+variable "images" {
+	type = "map"
+	default = {
+		us-east-1 = "image-1234"
+	}
+}
+'''
+		HCLTreeBuilder builder = new HCLTreeBuilder()
+		def roots = []
+		def handler = new HCLEventAdapter() {
+			void startBlock(List<String> labels, int line, int column, int position) { builder.startBlock(labels, line, column, position) }
+			void endBlock() { builder.endBlock(); def root = builder.takeCompleted(); if(root) { roots << root } }
+			void startAttribute(String name, int line, int column, int position) { builder.startAttribute(name, line, column, position) }
+			void endAttribute() { builder.endAttribute() }
+			void scalar(String type, String value) { builder.scalar(type, value) }
+		}
+		when:
+		new HCLParser().parse(new StringReader(hcl), handler)
+		def results = new HCL2Map().toMap(new HCLObject(roots))
+		then:
+		results == new HCL2Map().toMap(new HCLParser().parse(hcl))
+		results.variable.images.default['us-east-1'] == 'image-1234'
+	}
+}
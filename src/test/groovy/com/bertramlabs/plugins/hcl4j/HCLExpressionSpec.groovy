@@ -0,0 +1,86 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.expressions.HCLContext
+import com.bertramlabs.plugins.hcl4j.expressions.HCLExpression
+import com.bertramlabs.plugins.hcl4j.expressions.HCLFunction
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * @author jstockall
+ */
+class HCLExpressionSpec extends Specification {
+
+	HCLContext context = new HCLContext()
+		.setVariable('var', [prefix: 'web', subnets: 'a,b,c', region: 'eu', images: [eu: 'ami-1', us: 'ami-2'], zones: ['a', 'b']])
+		.setVariable('count', [index: 1])
+		.setVariable('path', [module: '/m'])
+		.setVariable('aws_instance', [web: [[id: 'i-1'], [id: 'i-2']]])
+
+	@Unroll
+	void "should evaluate #template"() {
+		expect:
+		HCLExpression.compile(template).evaluate(context) == expected
+		where:
+		template                                                                         | expected
+		'plain text'                                                                     | 'plain text'
+		'${var.prefix}-${count.index + 1}'                                               | 'web-2'
+		'${element(split(",", var.subnets), count.index % length(var.subnets))}'         | 'b'
+		'${var.images[var.region]}'                                                      | 'ami-1'
+		'${upper("${path.module}/files")}'                                               | '/M/FILES'
+		'${var.zones}'                                                                   | ['a', 'b']
+		'${var.zones[1]}${var.zones.0}'                                                  | 'ba'
+		'${aws_instance.web.*.id}'                                                       | ['i-1', 'i-2']
+		'${join(",", aws_instance.web[*].id)}'                                           | 'i-1,i-2'
+		'${count.index == 1 ? "one" : "other"}'                                          | 'one'
+		'${!(count.index > 2 || 1 + 2 * 3 != 7) && -count.index < 0}'                    | true
+		'${7 / 2} ${7.0 / 2} ${1.5 + 1.5}'                                               | '3 3.5 3'
+		'${lookup(var.images, "ap", "none")}'                                            | 'none'
+		'$${not.interpolated}'                                                           | '${not.interpolated}'
+	}
+
+	void "should compile a value once and evaluate it against many contexts"() {
+		given:
+		HCLObject configuration = new HCLParser().parse('''
+resource "aws_instance" "web" {
+	name = "${var.prefix}-${count.index}"
+	ports = [80, "${var.port}"]
+}
+''')
+		HCLValue name = HCLQuery.compile('resource.aws_instance.web.name').selectFirst(configuration)
+		HCLValue ports = HCLQuery.compile('resource.aws_instance.web.ports').selectFirst(configuration)
+		HCLContext shared = new HCLContext().setVariable('count', [index: 0])
+		when:
+		List<Object> names = (1..3).collect { name.evaluate(new HCLContext(shared).setVariable('var', [prefix: "p${it}".toString()])) }
+		then:
+		names == ['p1-0', 'p2-0', 'p3-0']
+		name.expression.is(name.expression)
+		ports.evaluate(new HCLContext().setVariable('var', [port: 443])) == [80L, 443]
+	}
+
+	void "should call functions of the context"() {
+		given:
+		context.setFunction('twice', { List<Object> arguments -> arguments[0] * 2 } as HCLFunction)
+		expect:
+		HCLExpression.compile('${twice(var.prefix)}').evaluate(context) == 'webweb'
+	}
+
+	@Unroll
+	void "should report #template"() {
+		when:
+		HCLExpression.compile(template).evaluate(context)
+		then:
+		HCLParserException ex = thrown()
+		ex.message.contains(message)
+		where:
+		template                | message
+		'${var.prefix'          | "'}' expected"
+		'${1 +}'                | "unexpected '}'"
+		'${unknown.x}'          | "Unknown variable 'unknown'"
+		'${nope()}'             | "Unknown function 'nope'"
+		'${var.missing}'        | "Unknown key 'missing'"
+		'${var.zones[5]}'       | 'out of range'
+		'${length()}'           | 'length: 0 arguments given, expected 1'
+	}
+}
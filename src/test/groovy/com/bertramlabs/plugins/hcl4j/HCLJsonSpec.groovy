@@ -0,0 +1,156 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * @author jstockall
+ */
+class HCLJsonSpec extends Specification {
+
+	static final String HCL = '''
+region = "us-east-1"
+
+variable "zones" {
+  default = ["a", "b"]
+}
+
+resource "aws_instance" "web" {
+  ami = "ami-1"
+  count = -2
+  ratio = 0.25
+  enabled = true
+  name = "quote \\" ünïcode ${var.x}"
+  tags = {Name: "web", empty: {}}
+  ebs_block_device {
+    volume_size = 10
+  }
+}
+
+resource "aws_instance" "web" {
+  ami = "ami-2"
+}
+
+locals {
+  a = 1
+}
+'''
+
+	static final String JSON = '''{
+  "//": {"generated": ["by", "a tool"]},
+  "region": "us-east-1",
+  "variable": {"zones": {"default": ["a", "b"]}},
+  "resource": {
+    "aws_instance": {
+      "web": [{
+        "ami": "ami-1",
+        "count": -2,
+        "ratio": 2.5e-1,
+        "enabled": true,
+        "name": "quote \\" \\u00fcn\\u00efcode ${var.x}",
+        "tags": {"Name": "web", "empty": {}},
+        "ebs_block_device": {"volume_size": 10}
+      }, {
+        "//": "the second instance",
+        "ami": "ami-2"
+      }]
+    }
+  },
+  "locals": {"a": 1}
+}'''
+
+	void "should read the JSON syntax in to the symbols of the equivalent HCL"() {
+		when:
+		HCLObject json = new HCLParser().parseJson(new StringReader(JSON))
+		HCLObject hcl = new HCLParser().parse(HCL)
+		List<HCLBlock> blocks = json.rootBlocks.findAll { it instanceof HCLBlock }
+		then:
+		new HCL2Map().toMap(json) == new HCL2Map().toMap(hcl)
+		blocks*.blockNames == [['variable', 'zones'], ['resource', 'aws_instance', 'web'], ['resource', 'aws_instance', 'web'], ['locals']]
+		blocks[1].children*.name == ['ami', 'count', 'ratio', 'enabled', 'name', 'tags', 'ebs_block_device']
+		blocks[1].children[1].value.longValue() == -2L
+		blocks[1].children[2].value.doubleValue() == 0.25d
+		[blocks[1].line, blocks[1].column] == [6, 6]
+		json.rootBlocks[0].name == 'region'
+		json.rootBlocks[0].length == '"region": "us-east-1"'.length()
+	}
+
+	void "should export what it reads back to the same JSON"() {
+		given:
+		HCLObject hcl = new HCLParser().parse(HCL)
+		String json = new HCL2Json().toJson(hcl)
+		expect:
+		new HCL2Json().toJson(new HCLParser().parseJson(new StringReader(json))) == json
+	}
+
+	void "should read strings longer than its buffer"() {
+		given:
+		String value = ('x' * 20000) + '\\n' + ('y' * 20000)
+		when:
+		HCLObject json = new HCLParser().parseJson(new StringReader('{"a": "' + value + '", "b": 1}'))
+		then:
+		json.rootBlocks[0].value.value == 'x' * 20000 + '\n' + 'y' * 20000
+		json.rootBlocks[1].value.longValue() == 1L
+	}
+
+	void "should skip null values"() {
+		given:
+		String text = '''{
+  "owner": null,
+  "variable": {"zones": {"default": ["a", null, "b"], "description": null}, "unset": null},
+  "resource": {"aws_instance": {"web": {"ami": null, "tags": {"Name": null, "Role": "web"}}}}
+}'''
+		when:
+		HCLObject json = new HCLParser().parseJson(new StringReader(text))
+		then:
+		new HCL2Map().toMap(json) == new HCL2Map().toMap(new HCLParser().parse('''
+variable "zones" {
+  default = ["a", "b"]
+}
+
+resource "aws_instance" "web" {
+  tags = {Role: "web"}
+}
+'''))
+		!new HCL2String().toHcl(json).contains('null')
+	}
+
+	void "should dispatch on the file name when parsing files and directories"() {
+		given:
+		Path directory = Files.createTempDirectory('hcl4j')
+		Path hcl = directory.resolve('a.tf')
+		Path json = directory.resolve('b.tf.json')
+		hcl.text = 'a "x" {\n  v = 1\n}\n'
+		json.text = '{"b": "y", "resource": {"t": {"n": {"v": 2}}}}'
+		directory.resolve('c.json').text = 'not included'
+		when:
+		HCLObject configuration = new HCLParser().parseDirectory(directory)
+		then:
+		configuration.files*.source == [hcl, json]
+		new HCL2Map().toMap(configuration) == [a: [x: [v: 1d]], b: 'y', resource: [t: [n: [v: 2d]]]]
+		new HCLParser().parse(json.toFile()).rootBlocks.size() == 2
+		new HCLParser().parse(json.toFile(), 'UTF-8').rootBlocks.size() == 2
+		cleanup:
+		directory.toFile().deleteDir()
+	}
+
+	@Unroll
+	void "should report the invalid JSON '#text'"() {
+		when:
+		new HCLParser().parseJson(new StringReader(text))
+		then:
+		HCLParserException ex = thrown()
+		ex.message == message
+		where:
+		text                 | message
+		'[]'                 | 'Unexpected character <[> in JSON configuration on line: 1 col: 1'
+		'{"a": 1.}'          | 'Unexpected character <}> in JSON configuration on line: 1 col: 9'
+		'{"a":\n  tru}'      | 'Unexpected character <}> in JSON configuration on line: 2 col: 6'
+		'{"a": "b'           | 'Unexpected end of input in JSON configuration on line: 1 col: 9'
+		'{"a": 1} {}'        | 'Unexpected character <{> in JSON configuration on line: 1 col: 10'
+	}
+}
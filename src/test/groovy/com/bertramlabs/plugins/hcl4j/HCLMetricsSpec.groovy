@@ -0,0 +1,97 @@
+package com.bertramlabs.plugins.hcl4j
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * @author jstockall
+ */
+class HCLMetricsSpec extends Specification {
+
+	static final String HCL = 'a "b" {\n  c = [1, {d: "e"}]\n}\nf = "g"\n'
+
+	List<HCLMetrics> parsed = [].asSynchronized()
+	List<HCLMetrics> exported = []
+	HCLMetricsListener listener = new HCLMetricsListener() {
+		void parsed(HCLMetrics metrics) {
+			parsed << metrics
+		}
+
+		void exported(HCLMetrics metrics) {
+			exported << metrics
+		}
+	}
+
+	void "should measure a parse"() {
+		given:
+		HCLParser parser = new HCLParser()
+		parser.metricsListener = listener
+		when:
+		parser.parse(HCL)
+		HCLMetrics metrics = parsed[0]
+		then:
+		parsed.size() == 1
+		metrics.operation == HCLMetrics.Operation.PARSE
+		metrics.source == null
+		metrics.bytes == -1
+		metrics.chars == HCL.length()
+		metrics.tokens == 14
+		metrics.symbols == 8
+		metrics.maxDepth == 3
+		metrics.stateTransitions > metrics.tokens
+		metrics.lexNanos > 0
+		metrics.buildNanos > 0
+		metrics.error == null
+		when:
+		parser.parseLazy(HCL)
+		parser.parseToMap(new StringReader(HCL))
+		then:
+		parsed*.operation == [HCLMetrics.Operation.PARSE, HCLMetrics.Operation.PARSE_LAZY, HCLMetrics.Operation.PARSE_EVENTS]
+		parsed[1..2].every { it.tokens == 14 && it.chars == HCL.length() }
+	}
+
+	void "should report each file and the files that fail"() {
+		given:
+		Path directory = Files.createTempDirectory('hcl4j')
+		Path good = directory.resolve('good.tf')
+		Path bad = directory.resolve('bad.tf')
+		good.text = HCL
+		bad.text = 'a "b" {\n  c = "unterminated\n}\n'
+		HCLParser parser = new HCLParser()
+		parser.metricsListener = listener
+		when:
+		parser.parseDirectory(directory)
+		then:
+		thrown(HCLParserException)
+		parsed.size() == 2
+		parsed.find { it.source == good }.bytes == Files.size(good)
+		parsed.find { it.source == good }.error == null
+		parsed.find { it.source == bad }.error instanceof HCLParserException
+		when:
+		parser.metricsListener = HCLMetricsListener.NONE
+		parser.parse(good)
+		then:
+		parsed.size() == 2
+		cleanup:
+		directory.toFile().deleteDir()
+	}
+
+	void "should measure exports"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		HCL2Map toMap = new HCL2Map()
+		HCL2String toString = new HCL2String()
+		toMap.metricsListener = listener
+		toString.metricsListener = listener
+		when:
+		toMap.toMap(configuration)
+		String text = toString.toHcl(configuration)
+		then:
+		exported*.operation == [HCLMetrics.Operation.TO_MAP, HCLMetrics.Operation.TO_HCL]
+		exported*.symbols == [2L, 2L]
+		exported[1].chars == text.length()
+		exported.every { it.exportNanos > 0 }
+	}
+}
@@ -0,0 +1,131 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLObjectSpec extends Specification {
+
+	static final String HCL = '''
+region = "us-east-1"
+
+resource "aws_instance" "web" {
+  ami = "ami-1"
+  tags = {Name: "web"}
+  ebs_block_device {
+    volume_size = 10
+  }
+  ebs_block_device {
+    volume_size = 20
+  }
+}
+
+resource "aws_instance" "db" {
+  ami = "ami-2"
+}
+'''
+
+	void "should reject changes once frozen"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL).freeze()
+		def block = configuration.rootBlocks[1]
+		when:
+		operation(configuration, block)
+		then:
+		thrown(UnsupportedOperationException)
+		where:
+		operation << [
+			{ c, b -> c.rootBlocks.clear() },
+			{ c, b -> b.appendChild(new HCLAttribute('x', null, 0, 0, 0)) },
+			{ c, b -> b.children.clear() },
+			{ c, b -> b.children[0].setValue(new HCLValue('string', 'ami-3')) },
+			{ c, b -> b.blockNames.add('x') },
+			{ c, b -> b.children[1].value.add('Owner', new HCLValue('string', 'ops')) },
+			{ c, b -> b.children[2].children[0].shift(1, 0) }
+		]
+	}
+
+	void "should copy only the blocks on the path to a changed attribute"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		Map<String, Object> before = new HCL2Map().toMap(configuration)
+		when:
+		HCLObject frozen = configuration.freeze()
+		HCLObject patched = frozen.with('resource.aws_instance.web.ami', new HCLValue('string', 'ami-3'))
+			.with('resource.aws_instance.web.count', new HCLValue('number', '2'))
+			.with('owner', new HCLValue('string', 'ops'))
+		def web = patched.rootBlocks[1]
+		then:
+		new HCL2Map().toMap(frozen) == before
+		new HCL2Map().toMap(patched).resource.aws_instance.web.ami == 'ami-3'
+		new HCL2Map().toMap(patched).resource.aws_instance.web.count == 2d
+		patched.rootBlocks*.name == ['region', 'resource', 'resource', 'owner']
+		patched.frozen
+		web.frozen
+		!web.is(frozen.rootBlocks[1])
+		[web.line, web.position, web.length] == [3, 23, frozen.rootBlocks[1].length]
+		web.children*.name == ['ami', 'tags', 'ebs_block_device', 'ebs_block_device', 'count']
+		web.children[0].line == 4
+		web.children[4].parent.is(web)
+		web.children[1..3].every { it.is(frozen.rootBlocks[1].children[web.children.indexOf(it)]) }
+		patched.rootBlocks[0].is(frozen.rootBlocks[0])
+		patched.rootBlocks[2].is(frozen.rootBlocks[2])
+		HCLQuery.compile('resource.aws_instance.web.ami').selectFirst(patched).value == 'ami-3'
+	}
+
+	void "should remove attributes and blocks"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL).freeze()
+		expect:
+		new HCL2Map().toMap(configuration.without('resource.aws_instance.db')).resource.aws_instance.keySet() == ['web'] as Set
+		new HCL2Map().toMap(configuration.without('resource.aws_instance.web.ebs_block_device')).resource.aws_instance.web.ebs_block_device == [volume_size: 20d]
+		configuration.without('resource.aws_instance.missing').is(configuration)
+	}
+
+	void "should report paths it cannot change"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		when:
+		configuration.with(path, new HCLValue('string', 'x'))
+		then:
+		HCLParserException ex = thrown()
+		ex.message == message
+		where:
+		path                           | message
+		'resource.aws_instance.app.ami'| 'No block [resource, aws_instance, app] to set resource.aws_instance.app.ami in'
+		'resource.*.web.ami'           | "Wildcards cannot be used to change 'resource.*.web.ami'"
+	}
+
+	void "should apply override files"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		HCLObject overrides = new HCLParser().parse('''
+region = "eu-west-1"
+
+resource "aws_instance" "web" {
+  ami = "ami-9"
+  monitoring = true
+  ebs_block_device {
+    volume_size = 30
+  }
+}
+
+output "ip" {
+  value = "x"
+}
+''')
+		when:
+		HCLObject result = configuration.withOverrides(overrides)
+		Map<String, Object> map = new HCL2Map().toMap(result)
+		then:
+		map.region == 'eu-west-1'
+		map.resource.aws_instance.web == [ami: 'ami-9', tags: [Name: 'web'], ebs_block_device: [volume_size: 30d], monitoring: true]
+		map.resource.aws_instance.db == [ami: 'ami-2']
+		map.output == [ip: [value: 'x']]
+		result.rootBlocks[2].is(configuration.freeze().rootBlocks[2])
+		new HCL2Map().toMap(configuration).resource.aws_instance.web.ami == 'ami-1'
+	}
+}
@@ -0,0 +1,91 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLParseCacheSpec extends Specification {
+
+	void "should return the cached configuration until the file changes"() {
+		given:
+		File file = File.createTempFile('hcl4j', '.tf')
+		file.text = 'foo = "bar"\n'
+		HCLParseCache cache = new HCLParseCache(10, 1024 * 1024)
+		when:
+		HCLObject first = cache.parse(file.toPath())
+		HCLObject second = cache.parse(file.toPath())
+		file.text = 'foo = "changed"\n'
+		file.setLastModified(file.lastModified() + 2000)
+		HCLObject third = cache.parse(file.toPath())
+		then:
+		first.is(second)
+		!third.is(first)
+		new HCL2Map().toMap(third).foo == 'changed'
+		cache.hitCount == 1
+		cache.missCount == 2
+		cache.size() == 1
+		cleanup:
+		file.delete()
+	}
+
+	void "should share results for identical content"() {
+		given:
+		HCLParseCache cache = new HCLParseCache(10, 1024 * 1024)
+		when:
+		HCLObject first = cache.parse('variable "a" {\n  default = 1\n}\n')
+		HCLObject second = cache.parse('variable "a" {\n  default = 1\n}\n')
+		first.getRootBlocks().clear()
+		then:
+		first.is(second)
+		thrown(UnsupportedOperationException)
+	}
+
+	void "should freeze the configurations it hands out without a pool"() {
+		given:
+		HCLParseCache cache = new HCLParseCache(10, 1024 * 1024)
+		HCLObject shared = cache.parse('variable "a" {\n  default = 1\n}\n')
+		when:
+		HCLObject patched = shared.with('variable.a.default', new HCLValue('number', '2'))
+		then:
+		shared.isFrozen()
+		new HCL2Map().toMap(cache.parse('variable "a" {\n  default = 1\n}\n')).variable.a.default == 1d
+		new HCL2Map().toMap(patched).variable.a.default == 2d
+		when:
+		shared.rootBlocks[0].children[0].setValue(new HCLValue('number', '3'))
+		then:
+		thrown(UnsupportedOperationException)
+	}
+
+	void "should evict the least recently used entries"() {
+		given:
+		HCLParseCache cache = new HCLParseCache(2, 1024 * 1024)
+		when:
+		cache.parse('a = 1\n')
+		cache.parse('b = 2\n')
+		cache.parse('a = 1\n')
+		cache.parse('c = 3\n')
+		then:
+		cache.size() == 2
+		cache.evictionCount == 1
+		when:
+		cache.parse('a = 1\n')
+		cache.parse('b = 2\n')
+		then:
+		cache.hitCount == 2
+		cache.missCount == 4
+	}
+
+	void "should evict by weight"() {
+		given:
+		HCLParseCache cache = new HCLParseCache(100, 20)
+		when:
+		cache.parse('a = "0123456789"\n')
+		cache.parse('b = "0123456789"\n')
+		then:
+		cache.size() == 1
+		cache.weight() == 17
+		cache.evictionCount == 1
+	}
+}
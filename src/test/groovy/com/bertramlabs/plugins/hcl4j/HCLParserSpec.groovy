@@ -1,5 +1,11 @@
 package com.bertramlabs.plugins.hcl4j
 
+import com.bertramlabs.plugins.hcl4j.symbols.HCLArray
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBoolean
+import com.bertramlabs.plugins.hcl4j.symbols.HCLMap
+import com.bertramlabs.plugins.hcl4j.symbols.HCLNumber
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
 import com.bertramlabs.plugins.hcl4j.symbols.Symbol
 import groovy.json.JsonOutput
 import spock.lang.Specification
@@ -439,4 +445,268 @@ variable "credentials" {
 		results.available_stack_regex['python2.7'] == '^64bit Amazon Linux (.*) Python 2.7$'
 	}
 
+	void "it should parse many sibling blocks without scanning ahead to the final brace"() {
+		given:
+		def hcl = new StringBuilder()
+		2000.times { i ->
+			hcl << """
+resource "aws_instance" "web${i}" {
+  ami = "ami-${i}"
+  count = ${i}
+  tags {
+    Name = "web-${i}"
+  }
+}
+"""
+		}
+		HCLParser parser = new HCLParser();
+		HCL2Map export = new HCL2Map();
+		when:
+		def results = export.toMap(parser.parse(hcl.toString()).getRootBlocks());
+		then:
+		results.resource.aws_instance.size() == 2000
+		results.resource.aws_instance.web1999.ami == 'ami-1999'
+		results.resource.aws_instance.web1999.tags.Name == 'web-1999'
+	}
+
+	void "it should parse a module directory in file name order"() {
+		given:
+		File dir = File.createTempDir()
+		new File(dir, 'b.tf').text = 'resource "aws_instance" "b" {\n  ami = "ami-b"\n}\n'
+		new File(dir, 'a.tf').text = 'resource "aws_instance" "a" {\n  ami = "ami-a"\n}\n'
+		new File(dir, 'notes.txt').text = 'not terraform'
+		HCLParser parser = new HCLParser();
+		when:
+		HCLObject config = parser.parseDirectory(dir.toPath())
+		def results = new HCL2Map().toMap(config)
+		then:
+		config.getRootBlocks()*.blockNames*.get(2) == ['a', 'b']
+		config.getFiles()*.getSource()*.getFileName()*.toString() == ['a.tf', 'b.tf']
+		config.getSource(config.getRootBlocks()[1]).getFileName().toString() == 'b.tf'
+		results.resource.aws_instance.b.ami == 'ami-b'
+		cleanup:
+		dir.deleteDir()
+	}
+
+	void "it should report every file that fails to parse"() {
+		given:
+		File dir = File.createTempDir()
+		new File(dir, 'good.tf').text = 'foo = "bar"\n'
+		new File(dir, 'bad1.tf').text = 'foo {\n  bar = ?\n}\n'
+		new File(dir, 'bad2.tf').text = 'foo {\n  bar = ?\n}\n'
+		HCLParser parser = new HCLParser();
+		when:
+		parser.parseAll([new File(dir, 'good.tf'), new File(dir, 'bad1.tf'), new File(dir, 'bad2.tf')]*.toPath())
+		then:
+		HCLParserException ex = thrown()
+		ex.message.contains('bad1.tf')
+		ex.message.contains('bad2.tf')
+		ex.suppressed.length == 2
+		cleanup:
+		dir.deleteDir()
+	}
+
+	void "it should parse large mapped files the same as strings"() {
+		given:
+		def hcl = new StringBuilder()
+		1000.times { i ->
+			hcl << """
+resource "aws_instance" "web${i}" {
+  description = "caf\u00e9 \u65e5\u672c ${i}"
+  ami = "ami-${i}"
+}
+"""
+		}
+		File file = File.createTempFile('hcl4j', '.tf')
+		file.setText(hcl.toString(), 'UTF-8')
+		HCLParser parser = new HCLParser();
+		HCL2Map export = new HCL2Map();
+		when:
+		HCLObject config = parser.parse(file.toPath())
+		then:
+		file.length() > 64 * 1024
+		config.getSource() == file.toPath()
+		export.toMap(config) == export.toMap(parser.parse(hcl.toString()))
+		export.toMap(config).resource.aws_instance.web999.description == 'caf\u00e9 \u65e5\u672c 999'
+		cleanup:
+		file.delete()
+	}
+
+	void "it should build typed values"() {
+		given:
+		def hcl = '''
+count = 3
+ratio = 0.5
+enabled = true
+zones = []
+nested = [[], {}]
+'''
+		HCLParser parser = new HCLParser();
+		when:
+		def values = parser.parse(hcl).rootBlocks.collectEntries { [(it.name): it.value] }
+		def results = new HCL2Map().toMap(parser.parse(hcl))
+		then:
+		values.count instanceof HCLNumber
+		values.count.integral
+		values.count.longValue() == 3
+		values.count.value == '3'
+		values.count.@type == 'number'
+		values.count.numberValue() == 3L
+		!values.ratio.integral
+		values.ratio.doubleValue() == 0.5d
+		values.ratio.value == '0.5'
+		values.ratio.numberValue() == 0.5d
+		new HCLValue('number', '42').numberValue() == 42L
+		values.enabled.is(HCLBoolean.TRUE)
+		HCLBoolean.TRUE.frozen && HCLBoolean.FALSE.frozen
+		values.zones.is(HCLArray.EMPTY)
+		values.nested.type == HCLValue.Type.ARRAY
+		values.nested.value[0].is(HCLArray.EMPTY)
+		values.nested.value[1].is(HCLMap.EMPTY)
+		results == [count: 3d, ratio: 0.5d, enabled: true, zones: [], nested: [[], [:]]]
+	}
+
+	void "it should parse straight to the same map as HCL2Map"() {
+		given:
+		def hcl = '''
+region = "us-east-1"
+variable "tags" {
+  default = {
+    Name = "web"
+  }
+}
+resource "aws_instance" "web" {
+  count = 2
+  enabled = true
+  zones = ["a", ["b", 1.5], {c: []}]
+  user_data = <<EOF
+#!/bin/bash
+echo "hi"
+EOF
+  lifecycle {
+    ignore_changes = []
+  }
+}
+resource "aws_instance" "web" {
+  ami = "ami-2"
+}
+resource "aws_instance" "web" {
+  ami = "ami-3"
+}
+resource "aws_instance" "db" {
+}
+'''
+		HCLParser parser = new HCLParser();
+		when:
+		def results = parser.parseToMap(new StringReader(hcl))
+		then:
+		results == new HCL2Map().toMap(parser.parse(hcl))
+		results.resource.aws_instance.web.size() == 3
+		results.resource.aws_instance.web[2].ami == 'ami-3'
+		JsonOutput.toJson(results) == JsonOutput.toJson(new HCL2Map().toMap(parser.parse(hcl)))
+		when:
+		parser.parseToMap(new StringReader('a = 1\na "b" {\n}\n'))
+		then:
+		HCLParserException ex = thrown()
+		ex.message == 'HCL Block expression scope traverses an object value'
+	}
+
+	void "it should read the children of lazily parsed blocks on first access"() {
+		given:
+		def hcl = '''
+region = "us-east-1"
+resource "aws_instance" "web" {
+  ami = "ami-1"
+  tags = ["a", {b: 2}]
+  ebs_block_device {
+    volume_size = 10
+  }
+}
+resource "aws_instance" "db" {
+  user_data = <<EOF
+echo "hi"
+EOF
+}
+'''
+		HCLParser parser = new HCLParser();
+		when:
+		HCLObject config = parser.parseLazy(hcl)
+		def blocks = config.rootBlocks.findAll { it instanceof HCLBlock }
+		then:
+		config.rootBlocks.size() == 3
+		config.rootBlocks[0].value.value == 'us-east-1'
+		blocks*.blockNames == [['resource', 'aws_instance', 'web'], ['resource', 'aws_instance', 'db']]
+		blocks.every { !it.materialized }
+		blocks[1].children[0].value.value == 'echo "hi"\n'
+		blocks[1].children[0].line == 10
+		blocks[1].children[0].parent.is(blocks[1])
+		blocks[1].materialized
+		!blocks[0].materialized
+		new HCL2Map().toMap(config) == new HCL2Map().toMap(parser.parse(hcl))
+		new HCL2String().toHcl(parser.parseLazy(hcl)) == new HCL2String().toHcl(parser.parse(hcl))
+		when:
+		parser.parseLazy('a "b" {\n  c = "unterminated\n}\n')
+		then:
+		thrown(HCLParserException)
+	}
+
+	void "it should share the strings of repeated names and short values"() {
+		given:
+		def hcl = '''
+resource "aws_instance" "web" {
+  instance_type = "t2.micro"
+  tags = {Name: "web"}
+}
+resource "aws_instance" "db" {
+  instance_type = "t2.micro"
+  tags = {Name: "a value longer than the maximum length of the table"}
+}
+'''
+		HCLSymbolTable symbols = new HCLSymbolTable(64, 16)
+		when:
+		def first = new HCLParser(symbols).parse(hcl).rootBlocks as List
+		def second = new HCLParser(symbols).parseLazy(hcl).rootBlocks as List
+		def unshared = new HCLParser(null).parse(hcl).rootBlocks as List
+		then:
+		first[0].blockNames[1].is(first[1].blockNames[1])
+		first[0].blockNames[1].is(second[1].blockNames[1])
+		first[0].children[0].name.is(second[1].children[0].name)
+		first[0].children[0].value.value.is(first[1].children[0].value.value)
+		first[0].children[1].value.value.keySet()[0].is(second[1].children[1].value.value.keySet()[0])
+		!first[1].children[1].value.value.Name.value.is(second[1].children[1].value.value.Name.value)
+		!unshared[0].blockNames[1].is(unshared[1].blockNames[1])
+		new HCL2String().toHcl(new HCLObject(first)) == new HCL2String().toHcl(new HCLObject(unshared))
+		when:
+		HCLSymbolTable full = new HCLSymbolTable(2, 16)
+		def bounded = new HCLParser(full).parse(hcl).rootBlocks as List
+		then:
+		full.size() == 2
+		bounded[0].blockNames[0].is(bounded[1].blockNames[0])
+		!bounded[0].children[0].value.value.is(bounded[1].children[0].value.value)
+	}
+
+	void "it should reuse its lexers without carrying state between inputs"() {
+		given:
+		def hcl = '''
+resource "aws_instance" "web" {
+  user_data = <<EOF
+echo "hi"
+EOF
+  tags = {Name: "web", ports: [80, 443]}
+}
+'''
+		HCLParser parser = new HCLParser()
+		def expected = new HCL2Map().toMap(new HCLParser().parse(hcl))
+		when:
+		parser.parse('resource "a" "b" {\n  tags = {Name: ["unterminated\n')
+		then:
+		thrown(HCLParserException)
+		when:
+		def results = (1..3).collect { new HCL2Map().toMap(parser.parse(hcl)) }
+		HCLObject config = parser.parse(hcl)
+		then:
+		results.every { it == expected }
+		config.rootBlocks[0].children[1].line == 5
+		config.rootBlocks[0].position == 1
+	}
 }
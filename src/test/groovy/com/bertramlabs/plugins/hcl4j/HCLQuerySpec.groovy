@@ -0,0 +1,101 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock
+import com.bertramlabs.plugins.hcl4j.symbols.HCLNumber
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * @author jstockall
+ */
+class HCLQuerySpec extends Specification {
+
+	static final String HCL = '''
+region = "us-east-1"
+
+variable "zones" {
+	default = ["a", "b", "c"]
+}
+
+resource "aws_instance" "web" {
+	ami = "ami-1"
+	tags = {
+		Name = "web"
+	}
+}
+
+resource "aws_eip" "ip" {
+	vpc = true
+}
+
+resource "aws_instance" "db" {
+	ami = "ami-2"
+	ebs_block_device {
+		volume_size = 10
+	}
+}
+'''
+
+	@Unroll
+	void "should select #path"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		when:
+		List<Object> results = HCLQuery.compile(path).select(configuration)
+		then:
+		results.collect { it instanceof HCLBlock ? it.blockNames.join('.') : it instanceof HCLNumber ? it.longValue() : ((HCLValue) it).value } == expected
+		where:
+		path                                                | expected
+		'resource.aws_instance[*].ami'                      | ['ami-1', 'ami-2']
+		'resource.aws_instance.db.ami'                      | ['ami-2']
+		'resource.*.*.ami'                                  | ['ami-1', 'ami-2']
+		'resource.aws_instance'                             | ['resource.aws_instance.web', 'resource.aws_instance.db']
+		'resource["aws_instance"].web.tags.Name'            | ['web']
+		'resource.aws_instance.db.ebs_block_device'         | ['ebs_block_device']
+		'resource.aws_instance.db.ebs_block_device.volume_size' | [10L]
+		'variable.zones.default[1]'                         | ['b']
+		'variable.zones.default.*'                          | ['a', 'b', 'c']
+		'region'                                            | ['us-east-1']
+		'*'                                                 | ['us-east-1', 'variable.zones', 'resource.aws_instance.web', 'resource.aws_eip.ip', 'resource.aws_instance.db']
+		'resource.aws_instance.missing.ami'                 | []
+		'variable.zones.default[3]'                         | []
+	}
+
+	void "should reuse the index of a frozen configuration"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL).freeze()
+		HCLQuery query = HCLQuery.compile('resource.aws_eip.ip.vpc')
+		when:
+		query.select(configuration)
+		HCLIndex index = configuration.index
+		then:
+		index != null
+		query.selectFirst(configuration).value == 'true'
+		configuration.index.is(index)
+	}
+
+	void "should see the root elements added to a configuration that is not frozen"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		HCLQuery query = HCLQuery.compile('resource.aws_instance.app.ami')
+		when:
+		List<Object> before = query.select(configuration)
+		configuration.rootBlocks.addAll(new HCLParser().parse('resource "aws_instance" "app" {\n  ami = "ami-3"\n}\n').rootBlocks)
+		List<Object> after = query.select(configuration)
+		then:
+		before.isEmpty()
+		after*.value == ['ami-3']
+		configuration.index == null
+	}
+
+	@Unroll
+	void "should reject the invalid path '#path'"() {
+		when:
+		HCLQuery.compile(path)
+		then:
+		thrown(HCLParserException)
+		where:
+		path << ['', 'resource..ami', 'resource.', 'resource[x]', 'resource[*', 'resource[*]x']
+	}
+}
@@ -0,0 +1,88 @@
+package com.bertramlabs.plugins.hcl4j
+
+import spock.lang.Specification
+
+import static com.bertramlabs.plugins.hcl4j.HCLReader.Token.*
+
+/**
+ * @author jstockall
+ */
+class HCLReaderSpec extends Specification {
+
+	def hcl = '''
+resource "aws_instance" "web" {
+  ami = "ami-1234"
+  tags = {name: "web", ports: [80, 443]}
+  disk {
+    size = 20
+  }
+}
+
+provider "aws" {
+  region = "us-east-1"
+}
+
+top = ["a", ["b"]]
+'''
+
+	void "should return tokens in document order"() {
+		given:
+		HCLReader reader = new HCLReader(hcl)
+		def tokens = []
+		when:
+		while(reader.next() != END_DOCUMENT) {
+			tokens << reader.getToken()
+		}
+		then:
+		tokens == [
+			BLOCK_START,
+			ATTRIBUTE_NAME, VALUE, ATTRIBUTE_END,
+			ATTRIBUTE_NAME, MAP_START, MAP_KEY, VALUE, MAP_KEY, ARRAY_START, VALUE, VALUE, ARRAY_END, MAP_END, ATTRIBUTE_END,
+			BLOCK_START, ATTRIBUTE_NAME, VALUE, ATTRIBUTE_END, BLOCK_END,
+			BLOCK_END,
+			BLOCK_START, ATTRIBUTE_NAME, VALUE, ATTRIBUTE_END, BLOCK_END,
+			ATTRIBUTE_NAME, ARRAY_START, VALUE, ARRAY_START, VALUE, ARRAY_END, ARRAY_END, ATTRIBUTE_END
+		]
+	}
+
+	void "should skip blocks to find the provider"() {
+		given:
+		HCLReader reader = new HCLReader(hcl)
+		def region = null
+		def skipped = []
+		when:
+		while(reader.next() != END_DOCUMENT) {
+			if(reader.getToken() == BLOCK_START && reader.getLabels()[0] != 'provider') {
+				skipped << reader.getLabels()
+				reader.skipChildren()
+				assert reader.getToken() == BLOCK_END
+			} else if(reader.getToken() == ATTRIBUTE_NAME && reader.getName() == 'region') {
+				reader.next()
+				region = reader.getText()
+			}
+		}
+		then:
+		skipped == [['resource', 'aws_instance', 'web']]
+		region == 'us-east-1'
+	}
+
+	void "should skip attribute values and collections"() {
+		given:
+		HCLReader reader = new HCLReader(hcl)
+		def values = []
+		when:
+		while(reader.next() != END_DOCUMENT) {
+			if(reader.getToken() == ATTRIBUTE_NAME && reader.getName() == 'tags') {
+				reader.skipChildren()
+				assert reader.getToken() == ATTRIBUTE_END
+			} else if(reader.getToken() == ARRAY_START && values.contains('a')) {
+				reader.skipChildren()
+				assert reader.getToken() == ARRAY_END
+			} else if(reader.getToken() == VALUE) {
+				values << reader.getText()
+			}
+		}
+		then:
+		values == ['ami-1234', '20', 'us-east-1', 'a']
+	}
+}
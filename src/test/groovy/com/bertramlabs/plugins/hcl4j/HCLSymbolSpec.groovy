@@ -0,0 +1,52 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLAttribute
+import com.bertramlabs.plugins.hcl4j.symbols.HCLBlock
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLSymbolSpec extends Specification {
+
+	void "should report unknown positions as null"() {
+		given:
+		Integer unknown = null
+		HCLBlock block = new HCLBlock(['resource', 'aws_instance', 'web'], null, unknown, unknown, unknown)
+		HCLAttribute attribute = new HCLAttribute('ami', new HCLValue('string', 'ami-1'), unknown, unknown, unknown)
+		HCLAttribute known = new HCLAttribute('ami', new HCLValue('string', 'ami-1'), Integer.valueOf(2), Integer.valueOf(4), Integer.valueOf(30))
+		when:
+		attribute.setLength(null)
+		then:
+		[block.line, block.column, block.position, block.length] == [null, null, null, null]
+		[attribute.line, attribute.column, attribute.position, attribute.length] == [null, null, null, null]
+		[known.line, known.column, known.position] == [2, 4, 30]
+	}
+
+	void "should return an empty immutable list until the first child is appended"() {
+		given:
+		HCLAttribute leaf = new HCLAttribute('ami', new HCLValue('string', 'ami-1'), 1, 0, 10)
+		when:
+		leaf.children.add(leaf)
+		then:
+		thrown(UnsupportedOperationException)
+		leaf.children.isEmpty()
+		leaf.attributes.isEmpty()
+	}
+
+	void "should keep a symbol appended twice"() {
+		given:
+		HCLBlock block = new HCLBlock(['locals'], null, 0, 0, 0)
+		HCLAttribute attribute = new HCLAttribute('a', new HCLValue('string', 'b'), 1, 2, 11)
+		when:
+		block.appendChild(attribute)
+		block.appendChild(attribute)
+		block.appendAttribute(attribute)
+		block.appendAttribute(attribute)
+		then:
+		block.children.size() == 2
+		block.attributes.size() == 2
+		block.children.every { it.is(attribute) }
+	}
+}
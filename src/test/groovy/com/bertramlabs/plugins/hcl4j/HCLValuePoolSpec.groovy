@@ -0,0 +1,92 @@
+package com.bertramlabs.plugins.hcl4j
+
+import com.bertramlabs.plugins.hcl4j.symbols.HCLValue
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLValuePoolSpec extends Specification {
+
+	static final String MODULE = '''
+resource "aws_security_group" "web" {
+	name = "web"
+	cidrs = ["10.0.0.0/16", "10.1.0.0/16"]
+	ingress = [{"port": 443, "cidrs": ["10.0.0.0/16", "10.1.0.0/16"]}]
+}
+
+resource "aws_security_group" "db" {
+	name = "db"
+	cidrs = ["10.0.0.0/16", "10.1.0.0/16"]
+	ingress = [{"port": 443, "cidrs": ["10.0.0.0/16", "10.1.0.0/16"]}]
+}
+'''
+
+	HCLQuery webIngress = HCLQuery.compile('resource.aws_security_group.web.ingress')
+	HCLQuery dbIngress = HCLQuery.compile('resource.aws_security_group.db.ingress')
+
+	void "should share equal values within and across configurations"() {
+		given:
+		HCLValuePool pool = new HCLValuePool()
+		when:
+		HCLObject first = pool.intern(new HCLParser().parse(MODULE))
+		HCLObject second = pool.intern(new HCLParser().parse(MODULE))
+		then:
+		first.frozen
+		webIngress.selectFirst(first).is(dbIngress.selectFirst(first))
+		webIngress.selectFirst(first).is(webIngress.selectFirst(second))
+		HCLQuery.compile('resource.aws_security_group.web.cidrs').selectFirst(first).is(HCLQuery.compile('resource.aws_security_group.db.ingress[0].cidrs').selectFirst(second))
+		!HCLQuery.compile('resource.aws_security_group.web.name').selectFirst(first).is(HCLQuery.compile('resource.aws_security_group.db.name').selectFirst(first))
+		new HCL2Map().toMap(second) == new HCL2Map().toMap(new HCLParser().parse(MODULE))
+		pool.replacedCount == 32
+		pool.size() == 8
+		pool.savedBytes > 0
+	}
+
+	void "should keep the order of map entries"() {
+		given:
+		HCLValuePool pool = new HCLValuePool()
+		when:
+		HCLObject configuration = pool.intern(new HCLParser().parse('a = [{"x": 1, "y": 2}]\nb = [{"y": 2, "x": 1}]\n'))
+		then:
+		!HCLQuery.compile('a').selectFirst(configuration).is(HCLQuery.compile('b').selectFirst(configuration))
+		HCLQuery.compile('a[0].y').selectFirst(configuration).is(HCLQuery.compile('b[0].y').selectFirst(configuration))
+	}
+
+	void "should copy frozen values around their canonical elements"() {
+		given:
+		HCLValuePool pool = new HCLValuePool()
+		HCLObject configuration = pool.intern(new HCLParser().parse(MODULE))
+		HCLValue tags = webIngress.selectFirst(new HCLParser().parse(MODULE).freeze())
+		when:
+		HCLValue canonical = pool.intern(tags)
+		then:
+		canonical.is(webIngress.selectFirst(configuration))
+		pool.intern(new HCLValue('string', 'web')).is(HCLQuery.compile('resource.aws_security_group.web.name').selectFirst(configuration))
+	}
+
+	void "should drop values no configuration uses"() {
+		given:
+		HCLValuePool pool = new HCLValuePool()
+		pool.intern(new HCLParser().parse(MODULE))
+		when:
+		for (int i = 0; i < 20 && pool.size() > 0; i++) {
+			System.gc()
+			Thread.sleep(10)
+		}
+		then:
+		pool.size() == 0
+	}
+
+	void "should intern the configurations of a parse cache"() {
+		given:
+		HCLValuePool pool = new HCLValuePool()
+		HCLParseCache cache = new HCLParseCache(new HCLParser(), pool, 10, 1024 * 1024)
+		when:
+		HCLObject first = cache.parse(MODULE)
+		HCLObject second = cache.parse(MODULE.replace('"db"', '"cache"'))
+		then:
+		first.frozen
+		dbIngress.selectFirst(first).is(HCLQuery.compile('resource.aws_security_group.cache.ingress').selectFirst(second))
+	}
+}
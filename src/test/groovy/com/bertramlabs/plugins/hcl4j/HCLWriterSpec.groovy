@@ -0,0 +1,59 @@
+package com.bertramlabs.plugins.hcl4j
+
+import java.nio.charset.StandardCharsets
+
+import spock.lang.Specification
+
+/**
+ * @author jstockall
+ */
+class HCLWriterSpec extends Specification {
+
+	static final String HCL = '''
+variable "region" {
+	default = "us-east-1"
+}
+
+resource "aws_instance" "web" {
+	ami = "ami-${var.region}"
+	count = 2
+	tags = ["a", "b"]
+	monitoring = true
+	ebs_block_device {
+		volume_size = 10
+	}
+}
+'''
+
+	void "should write the same text as HCL2String through any buffer size"() {
+		given:
+		HCLObject configuration = new HCLParser().parse(HCL)
+		String expected = new HCL2String().toHcl(configuration)
+		StringWriter out = new StringWriter()
+		when:
+		new HCLWriter(out, bufferSize).write(configuration).close()
+		then:
+		out.toString() == expected
+		expected.startsWith('variable "region" {\n\tdefault = "us-east-1"\n}\n\n')
+		expected.contains('\t\tvolume_size = 10.0\n\t}\n\n')
+		where:
+		bufferSize << [1, 7, HCLWriter.DEFAULT_BUFFER_SIZE]
+	}
+
+	void "should escape strings so they parse back to the same value"() {
+		given:
+		HCLObject configuration = new HCLParser().parse('''
+description = <<EOF
+say "hello"
+to ${upper("world")}
+EOF
+''')
+		ByteArrayOutputStream out = new ByteArrayOutputStream()
+		when:
+		new HCLWriter(out, StandardCharsets.UTF_8, 16).write(configuration).close()
+		String text = out.toString('UTF-8')
+		then:
+		text == '\tdescription = "say \\"hello\\"\\nto ${upper("world")}\\n"\n'
+		new HCL2Map().toMap(new HCLParser().parse(text)) == new HCL2Map().toMap(configuration)
+	}
+}